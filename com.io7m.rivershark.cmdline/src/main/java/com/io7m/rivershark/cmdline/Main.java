@@ -21,7 +21,10 @@ import com.io7m.claypot.core.CLPCommandConstructorType;
 import com.io7m.claypot.core.CLPCommandType;
 import com.io7m.claypot.core.Claypot;
 import com.io7m.claypot.core.ClaypotType;
+import com.io7m.rivershark.cmdline.internal.RSCommandBatch;
+import com.io7m.rivershark.cmdline.internal.RSCommandDaemon;
 import com.io7m.rivershark.cmdline.internal.RSCommandInstallBundles;
+import com.io7m.rivershark.cmdline.internal.RSCommandPromoteBundles;
 import com.io7m.rivershark.cmdline.internal.RSCommandVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,7 +57,10 @@ public final class Main implements Runnable
     final List<CLPCommandConstructorType> commands =
       List.of(
         RSCommandVersion::new,
-        RSCommandInstallBundles::new
+        RSCommandInstallBundles::new,
+        RSCommandPromoteBundles::new,
+        RSCommandDaemon::new,
+        RSCommandBatch::new
       );
 
     final var configuration =
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.cmdline.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parser for the operations read by the "batch" command.
+ *
+ * The input contains one operation per line. Blank lines, and lines
+ * starting with {@code #}, are ignored. Fields are separated by whitespace.
+ * A field that contains whitespace can be enclosed in double quotes; within
+ * quotes, a backslash causes the following character to be taken literally.
+ *
+ * <ul>
+ *   <li>{@code install <repository> [channel=<name>] <file>...}</li>
+ *   <li>{@code reindex <repository>}</li>
+ *   <li>{@code verify <repository>}</li>
+ * </ul>
+ */
+
+public final class RSBatchParser
+{
+  private static final String CHANNEL_PREFIX = "channel=";
+
+  private RSBatchParser()
+  {
+
+  }
+
+  /**
+   * Parse all operations, grouping them by repository.
+   *
+   * @param reader The input
+   *
+   * @return The work to be performed, by repository, in the order that each
+   * repository was first named
+   *
+   * @throws IOException On I/O errors, or malformed input
+   */
+
+  public static Map<Path, RSBatchWork> parse(
+    final BufferedReader reader)
+    throws IOException
+  {
+    final var results = new LinkedHashMap<Path, RSBatchWork>();
+
+    int lineNumber = 0;
+    while (true) {
+      final var line = reader.readLine();
+      if (line == null) {
+        break;
+      }
+      ++lineNumber;
+
+      final var trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+
+      final var fields = split(trimmed, lineNumber);
+      if (fields.size() < 2) {
+        throw new IOException(
+          "Line %d: expected an operation and a repository"
+            .formatted(Integer.valueOf(lineNumber)));
+      }
+
+      final var repository =
+        Path.of(fields.get(1)).toAbsolutePath().normalize();
+      final var work =
+        results.computeIfAbsent(repository, k -> new RSBatchWork());
+
+      switch (fields.get(0)) {
+        case "install" -> parseInstall(work, fields.subList(2, fields.size()));
+        case "reindex" -> work.requestReindex();
+        case "verify" -> work.requestVerify();
+        default -> throw new IOException(
+          "Line %d: unrecognized operation '%s'"
+            .formatted(Integer.valueOf(lineNumber), fields.get(0)));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Split a line into fields.
+   *
+   * @param line       The line
+   * @param lineNumber The line number, for error messages
+   *
+   * @return The fields
+   *
+   * @throws IOException If a quoted field is not terminated
+   */
+
+  public static List<String> split(
+    final String line,
+    final int lineNumber)
+    throws IOException
+  {
+    final var fields = new ArrayList<String>();
+    final var field = new StringBuilder();
+    var inField = false;
+    var quoted = false;
+    var escaped = false;
+
+    for (int index = 0; index < line.length(); ++index) {
+      final var c = line.charAt(index);
+      if (escaped) {
+        field.append(c);
+        escaped = false;
+      } else if (quoted) {
+        if (c == '"') {
+          quoted = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else {
+          field.append(c);
+        }
+      } else if (Character.isWhitespace(c)) {
+        if (inField) {
+          fields.add(field.toString());
+          field.setLength(0);
+          inField = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+        inField = true;
+      } else {
+        field.append(c);
+        inField = true;
+      }
+    }
+
+    if (quoted || escaped) {
+      throw new IOException(
+        "Line %d: unterminated quoted field"
+          .formatted(Integer.valueOf(lineNumber)));
+    }
+    if (inField) {
+      fields.add(field.toString());
+    }
+    return fields;
+  }
+
+  private static void parseInstall(
+    final RSBatchWork work,
+    final List<String> arguments)
+  {
+    var channel = "";
+    var files = arguments;
+    if (!files.isEmpty() && files.get(0).startsWith(CHANNEL_PREFIX)) {
+      channel = files.get(0).substring(CHANNEL_PREFIX.length());
+      files = files.subList(1, files.size());
+    }
+
+    work.requestInstall(
+      channel,
+      files.stream()
+        .map(name -> Path.of(name).toAbsolutePath())
+        .toList()
+    );
+  }
+}
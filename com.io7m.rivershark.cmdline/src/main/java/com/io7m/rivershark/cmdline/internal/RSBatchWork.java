@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.cmdline.internal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The work to be performed on a single repository by the "batch" command.
+ * Files to install are grouped by channel; the empty string denotes no
+ * channel.
+ *
+ * @see RSBatchParser
+ */
+
+public final class RSBatchWork
+{
+  private final Map<String, List<Path>> installs;
+  private boolean reindex;
+  private boolean verify;
+
+  /**
+   * Construct empty work.
+   */
+
+  public RSBatchWork()
+  {
+    this.installs = new LinkedHashMap<>();
+  }
+
+  /**
+   * @return The files to install, by channel, in the order they were given
+   */
+
+  public Map<String, List<Path>> installs()
+  {
+    return this.installs;
+  }
+
+  /**
+   * @return {@code true} if a reindex was requested
+   */
+
+  public boolean reindex()
+  {
+    return this.reindex;
+  }
+
+  /**
+   * @return {@code true} if verification was requested
+   */
+
+  public boolean verify()
+  {
+    return this.verify;
+  }
+
+  /**
+   * Add files to install.
+   *
+   * @param channel The channel, or the empty string for no channel
+   * @param files   The files
+   */
+
+  public void requestInstall(
+    final String channel,
+    final List<Path> files)
+  {
+    this.installs.computeIfAbsent(channel, k -> new ArrayList<>())
+      .addAll(files);
+  }
+
+  /**
+   * Request a reindex.
+   */
+
+  public void requestReindex()
+  {
+    this.reindex = true;
+  }
+
+  /**
+   * Request verification.
+   */
+
+  public void requestVerify()
+  {
+    this.verify = true;
+  }
+}
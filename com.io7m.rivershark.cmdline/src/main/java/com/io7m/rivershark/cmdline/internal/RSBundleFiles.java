@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.cmdline.internal;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The discovery of bundle files named on the command line, either directly
+ * or by searching directories.
+ *
+ * A file found in a directory is selected if any include glob matches it
+ * (or {@code *.jar} if no include globs are given), and no exclude glob
+ * matches it. A glob matches a file if it matches either the name of the
+ * file, or the path of the file relative to the directory being searched.
+ * This allows both {@code *.jar} and {@code lib/**.jar} to be used.
+ *
+ * Discovery is not streamed into the installation. The files found in each
+ * directory are collected and sorted before anything is installed, so that
+ * the order of installation (and therefore the staging order and any error
+ * reports) does not depend on the order in which the file system happens to
+ * list directories. This costs one path per discovered file; the contents
+ * of the files are only read when the repository stages them, one at a
+ * time. Nothing would be gained by streaming in any case: a repository
+ * commits an installation as a single change, only after every file has
+ * been staged.
+ */
+
+public final class RSBundleFiles
+{
+  private RSBundleFiles()
+  {
+
+  }
+
+  /**
+   * Find bundle files.
+   *
+   * @param files       The files named directly
+   * @param directories The directories to search
+   * @param recursive   {@code true} if directories are searched recursively
+   * @param includes    The include globs
+   * @param excludes    The exclude globs
+   *
+   * @return The given files, followed by the files discovered in each
+   * directory in sorted order, all as absolute paths
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static List<Path> find(
+    final List<Path> files,
+    final List<Path> directories,
+    final boolean recursive,
+    final List<String> includes,
+    final List<String> excludes)
+    throws IOException
+  {
+    Objects.requireNonNull(files, "files");
+    Objects.requireNonNull(directories, "directories");
+    Objects.requireNonNull(includes, "includes");
+    Objects.requireNonNull(excludes, "excludes");
+
+    final var results = new ArrayList<Path>(files.size());
+    for (final var file : files) {
+      results.add(file.toAbsolutePath());
+    }
+
+    final var includeMatchers =
+      matchersOf(includes.isEmpty() ? List.of("*.jar") : includes);
+    final var excludeMatchers =
+      matchersOf(excludes);
+    final var depth =
+      recursive ? Integer.MAX_VALUE : 1;
+
+    for (final var directory : directories) {
+      final var root = directory.toAbsolutePath();
+      try (var stream = Files.walk(root, depth)) {
+        stream.filter(Files::isRegularFile)
+          .filter(p -> matchesAny(includeMatchers, root, p))
+          .filter(p -> !matchesAny(excludeMatchers, root, p))
+          .sorted()
+          .forEachOrdered(results::add);
+      }
+    }
+    return results;
+  }
+
+  private static List<PathMatcher> matchersOf(
+    final List<String> globs)
+  {
+    final var fileSystem = FileSystems.getDefault();
+    return globs.stream()
+      .map(g -> fileSystem.getPathMatcher("glob:" + g))
+      .toList();
+  }
+
+  private static boolean matchesAny(
+    final List<PathMatcher> matchers,
+    final Path root,
+    final Path file)
+  {
+    final var relative = root.relativize(file);
+    final var name = file.getFileName();
+    return matchers.stream()
+      .anyMatch(m -> m.matches(name) || m.matches(relative));
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.rivershark.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPAbstractCommand;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.rivershark.obrcontrol.RSRepositories;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.rivershark.obrcontrol.api.RSRepositorySource;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The "batch" command.
+ *
+ * The command reads one operation per line, in the format accepted by
+ * {@link RSBatchParser}. All operations are read before any are executed.
+ * Operations are then grouped by repository, and each repository is opened
+ * once: all of the files installed into a repository, whatever their
+ * channels, are installed in a single operation, so the repository is
+ * locked and reindexed once rather than once per line. A requested reindex
+ * is performed after the installations. Verification happens last. A
+ * failure in one repository does not prevent the others from being
+ * processed.
+ */
+
+@Parameters(commandDescription = "Execute many repository operations.")
+public final class RSCommandBatch extends CLPAbstractCommand
+{
+  @Parameter(
+    names = "--file",
+    required = false,
+    description = "The file containing operations (defaults to stdin).")
+  private Path file;
+
+  @Parameter(
+    names = "--name",
+    required = false,
+    description = "The repository title.")
+  private String name;
+
+  @Parameter(
+    names = "--index-parallelism",
+    required = false,
+    description = "The number of bundles to index concurrently.")
+  private int indexParallelism = 1;
+
+  @Parameter(
+    names = "--index-timestamps",
+    required = false,
+    arity = 1,
+    description = "Write volatile timestamps into the index.")
+  private boolean indexTimestamps;
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public RSCommandBatch(
+    final CLPCommandContextType inContext)
+  {
+    super(inContext);
+  }
+
+  @Override
+  protected Status executeActual()
+    throws Exception
+  {
+    final Map<Path, RSBatchWork> work;
+    if (this.file != null) {
+      try (var reader = Files.newBufferedReader(this.file, UTF_8)) {
+        work = RSBatchParser.parse(reader);
+      }
+    } else {
+      work = RSBatchParser.parse(
+        new BufferedReader(new InputStreamReader(System.in, UTF_8)));
+    }
+
+    var failed = false;
+    for (final var entry : work.entrySet()) {
+      try {
+        this.executeFor(entry.getKey(), entry.getValue());
+      } catch (final RSRepositoryException e) {
+        this.logger().error("{}: {}", entry.getKey(), e.getMessage());
+        for (final var suppressed : e.getSuppressed()) {
+          this.logger().error("{}: {}", entry.getKey(), suppressed.getMessage());
+        }
+        failed = true;
+      }
+    }
+    return failed ? FAILURE : SUCCESS;
+  }
+
+  private void executeFor(
+    final Path repository,
+    final RSBatchWork work)
+    throws RSRepositoryException
+  {
+    final var configurationBuilder =
+      RSRepositoryConfiguration.builder(repository);
+
+    if (this.name != null) {
+      configurationBuilder.setName(this.name);
+    }
+    configurationBuilder.setIndexParallelism(this.indexParallelism);
+    configurationBuilder.setIndexTimestamps(this.indexTimestamps);
+
+    final var repositories = new RSRepositories();
+    try (var repos = repositories.open(configurationBuilder.build())) {
+      if (!work.installs().isEmpty()) {
+        final var sources =
+          new LinkedHashMap<String, List<RSRepositorySource>>();
+        var count = 0;
+        for (final var install : work.installs().entrySet()) {
+          sources.put(
+            install.getKey(),
+            install.getValue()
+              .stream()
+              .map(RSRepositorySource::ofFile)
+              .toList()
+          );
+          count += install.getValue().size();
+        }
+
+        this.logger().info(
+          "{}: install {} bundles", repository, Integer.valueOf(count));
+        repos.installIntoChannels(sources);
+      }
+
+      if (work.reindex()) {
+        this.logger().info("{}: reindex", repository);
+        repos.reindex();
+      }
+
+      if (work.verify()) {
+        this.logger().info("{}: verify", repository);
+        repos.verify();
+      }
+    }
+  }
+
+  @Override
+  public String name()
+  {
+    return "batch";
+  }
+}
@@ -22,10 +22,13 @@ import com.io7m.claypot.core.CLPAbstractCommand;
 import com.io7m.claypot.core.CLPCommandContextType;
 import com.io7m.rivershark.obrcontrol.RSRepositories;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import com.io7m.rivershark.obrcontrol.api.RSRepositorySource;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
 
@@ -48,12 +51,71 @@ public final class RSCommandInstallBundles extends CLPAbstractCommand
     description = "The bundle to install.")
   private List<Path> files = new ArrayList<Path>();
 
+  @Parameter(
+    names = "--directory",
+    required = false,
+    description = "A directory containing bundles to install.")
+  private List<Path> directories = new ArrayList<Path>();
+
+  @Parameter(
+    names = "--recursive",
+    required = false,
+    arity = 1,
+    description = "Search directories recursively.")
+  private boolean recursive = true;
+
+  @Parameter(
+    names = "--include",
+    required = false,
+    description = "A glob matching the files to install from directories (defaults to *.jar).")
+  private List<String> includes = new ArrayList<String>();
+
+  @Parameter(
+    names = "--exclude",
+    required = false,
+    description = "A glob matching the files to skip in directories.")
+  private List<String> excludes = new ArrayList<String>();
+
   @Parameter(
     names = "--name",
     required = false,
     description = "The repository title.")
   private String name;
 
+  @Parameter(
+    names = "--channel",
+    required = false,
+    description = "The channel to which the bundles will be added.")
+  private String channel;
+
+  @Parameter(
+    names = "--index-parallelism",
+    required = false,
+    description = "The number of bundles to index concurrently (defaults to 1).")
+  private Integer indexParallelism;
+
+  @Parameter(
+    names = "--index-timestamps",
+    required = false,
+    arity = 1,
+    description = "Write volatile timestamps into the index (defaults to false).")
+  private Boolean indexTimestamps;
+
+  @Parameter(
+    names = "--socket",
+    required = false,
+    description = "The socket of a repository daemon (defaults to obr.socket in the repository).")
+  private Path socket;
+
+  @Parameter(
+    names = "--daemon",
+    required = false,
+    arity = 1,
+    description = "Use a running repository daemon, if one is available. "
+      + "Fails if the daemon was started with a different --name, "
+      + "--index-parallelism, or --index-timestamps.")
+  private boolean daemon = true;
+
   /**
    * Construct a command.
    *
@@ -70,23 +132,68 @@ public final class RSCommandInstallBundles extends CLPAbstractCommand
   protected Status executeActual()
     throws Exception
   {
+    final var bundles =
+      RSBundleFiles.find(
+        this.files,
+        this.directories,
+        this.recursive,
+        this.includes,
+        this.excludes
+      );
+    this.logger().debug("installing {} bundles", bundles.size());
+
+    if (this.daemon) {
+      final var clientOpt =
+        RSDaemonClient.connect(
+          Objects.requireNonNullElse(
+            this.socket,
+            RSDaemonProtocol.socketOf(this.repository))
+        );
+
+      if (clientOpt.isPresent()) {
+        try (var client = clientOpt.get()) {
+          client.checkCompatible(new RSDaemonOptions(
+            this.repository,
+            Optional.ofNullable(this.name),
+            Optional.ofNullable(this.indexParallelism),
+            Optional.ofNullable(this.indexTimestamps)
+          ));
+          client.install(Optional.ofNullable(this.channel), bundles);
+        }
+        return SUCCESS;
+      }
+    }
+
     final var configurationBuilder =
       RSRepositoryConfiguration.builder(this.repository);
 
     if (this.name != null) {
       configurationBuilder.setName(this.name);
     }
+    if (this.indexParallelism != null) {
+      configurationBuilder.setIndexParallelism(
+        this.indexParallelism.intValue());
+    }
+    if (this.indexTimestamps != null) {
+      configurationBuilder.setIndexTimestamps(
+        this.indexTimestamps.booleanValue());
+    }
 
     final var configuration =
       configurationBuilder.build();
 
     final var repositories = new RSRepositories();
     try (var repos = repositories.open(configuration)) {
-      repos.install(
-        this.files.stream()
-          .map(Path::toAbsolutePath)
-          .toList()
-      );
+      final var sources =
+        bundles.stream()
+          .map(RSRepositorySource::ofFile)
+          .toList();
+
+      if (this.channel != null) {
+        repos.installIntoChannel(this.channel, sources);
+      } else {
+        repos.installSources(sources);
+      }
     }
     return SUCCESS;
   }
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPAbstractCommand;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.rivershark.obrcontrol.RSRepositories;
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+
+/**
+ * The "promote-bundles" command.
+ */
+
+@Parameters(commandDescription = "Promote OSGi bundles between OBR channels.")
+public final class RSCommandPromoteBundles extends CLPAbstractCommand
+{
+  @Parameter(
+    names = "--repository",
+    required = true,
+    description = "The repository directory.")
+  private Path repository;
+
+  @Parameter(
+    names = "--from",
+    required = true,
+    description = "The channel from which bundles are promoted.")
+  private String from;
+
+  @Parameter(
+    names = "--to",
+    required = true,
+    description = "The channel to which bundles are promoted.")
+  private String to;
+
+  @Parameter(
+    names = "--bundle",
+    required = true,
+    description = "The bundle to promote (name:version).")
+  private List<String> bundles = new ArrayList<String>();
+
+  @Parameter(
+    names = "--name",
+    required = false,
+    description = "The repository title.")
+  private String name;
+
+  @Parameter(
+    names = "--socket",
+    required = false,
+    description = "The socket of a repository daemon (defaults to obr.socket in the repository).")
+  private Path socket;
+
+  @Parameter(
+    names = "--daemon",
+    required = false,
+    arity = 1,
+    description = "Use a running repository daemon, if one is available. "
+      + "Fails if the daemon was started with a different --name.")
+  private boolean daemon = true;
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public RSCommandPromoteBundles(
+    final CLPCommandContextType inContext)
+  {
+    super(inContext);
+  }
+
+  @Override
+  protected Status executeActual()
+    throws Exception
+  {
+    final var configurationBuilder =
+      RSRepositoryConfiguration.builder(this.repository);
+
+    if (this.name != null) {
+      configurationBuilder.setName(this.name);
+    }
+
+    final var configuration =
+      configurationBuilder.build();
+
+    final var identifiers =
+      this.bundles.stream()
+        .map(RSBundleIdentifier::parse)
+        .toList();
+
+    if (this.daemon) {
+      final var clientOpt =
+        RSDaemonClient.connect(
+          Objects.requireNonNullElse(
+            this.socket,
+            RSDaemonProtocol.socketOf(this.repository))
+        );
+
+      if (clientOpt.isPresent()) {
+        try (var client = clientOpt.get()) {
+          client.checkCompatible(new RSDaemonOptions(
+            this.repository,
+            Optional.ofNullable(this.name),
+            Optional.empty(),
+            Optional.empty()
+          ));
+          client.promote(this.from, this.to, identifiers);
+        }
+        return SUCCESS;
+      }
+    }
+
+    final var repositories = new RSRepositories();
+    try (var repos = repositories.open(configuration)) {
+      repos.promote(this.from, this.to, identifiers);
+    }
+    return SUCCESS;
+  }
+
+  @Override
+  public String name()
+  {
+    return "promote-bundles";
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.rivershark.cmdline.internal;
+
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.rivershark.obrcontrol.api.RSRepositorySource;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryType;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A daemon that serves a single open repository over a Unix domain socket.
+ * Keeping the repository open in a long-running process avoids paying JVM
+ * startup and indexer initialization on every command.
+ *
+ * Each connection is served on its own virtual thread. Operations that
+ * modify or verify the repository are serialized, because the repository
+ * lock is held per process and cannot be acquired twice concurrently.
+ * They are serialized with a {@link ReentrantLock} rather than a monitor so
+ * that a virtual thread waiting for the repository does not pin its carrier
+ * thread.
+ *
+ * @see RSDaemonProtocol
+ */
+
+public final class RSDaemon
+{
+  private final Logger logger;
+  private final RSRepositoryConfiguration configuration;
+  private final RSRepositoryType repository;
+  private final Path socket;
+  private final ReentrantLock repositoryLock;
+  private volatile ServerSocketChannel server;
+
+  /**
+   * Construct a daemon.
+   *
+   * @param inLogger        The logger
+   * @param inConfiguration The configuration with which the repository was
+   *                        opened
+   * @param inRepository    The open repository
+   * @param inSocket        The socket file
+   */
+
+  public RSDaemon(
+    final Logger inLogger,
+    final RSRepositoryConfiguration inConfiguration,
+    final RSRepositoryType inRepository,
+    final Path inSocket)
+  {
+    this.logger =
+      Objects.requireNonNull(inLogger, "logger");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.repository =
+      Objects.requireNonNull(inRepository, "repository");
+    this.socket =
+      Objects.requireNonNull(inSocket, "socket").toAbsolutePath();
+    this.repositoryLock =
+      new ReentrantLock();
+  }
+
+  /**
+   * Serve requests until a {@code stop} request is received.
+   *
+   * @throws IOException On errors
+   */
+
+  public void run()
+    throws IOException
+  {
+    this.removeStaleSocket();
+
+    try (var serverChannel =
+           ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+         var executor =
+           Executors.newVirtualThreadPerTaskExecutor()) {
+      serverChannel.bind(UnixDomainSocketAddress.of(this.socket));
+      this.server = serverChannel;
+      this.logger.info("listening on {}", this.socket);
+
+      while (true) {
+        final SocketChannel client;
+        try {
+          client = serverChannel.accept();
+        } catch (final AsynchronousCloseException e) {
+          break;
+        }
+        executor.execute(() -> this.serve(client));
+      }
+    } finally {
+      Files.deleteIfExists(this.socket);
+    }
+  }
+
+  /**
+   * A socket file left behind by a daemon that did not shut down cleanly
+   * prevents binding, so remove it, but only if nothing is listening on it.
+   */
+
+  private void removeStaleSocket()
+    throws IOException
+  {
+    if (!Files.exists(this.socket)) {
+      return;
+    }
+
+    final var existing = RSDaemonClient.connect(this.socket);
+    if (existing.isPresent()) {
+      existing.get().close();
+      throw new IOException(
+        "A daemon is already listening on %s".formatted(this.socket));
+    }
+    Files.delete(this.socket);
+  }
+
+  private void stop()
+    throws IOException
+  {
+    final var serverChannel = this.server;
+    if (serverChannel != null) {
+      serverChannel.close();
+    }
+  }
+
+  private void serve(
+    final SocketChannel client)
+  {
+    try (client;
+         var reader = new BufferedReader(
+           new InputStreamReader(Channels.newInputStream(client), UTF_8));
+         var writer = new BufferedWriter(
+           new OutputStreamWriter(Channels.newOutputStream(client), UTF_8))) {
+
+      while (true) {
+        final var line = reader.readLine();
+        if (line == null) {
+          return;
+        }
+
+        final var request = RSDaemonProtocol.decode(line);
+        writer.write(this.respond(request));
+        writer.newLine();
+        writer.flush();
+
+        if ("stop".equals(request.get(0))) {
+          this.stop();
+          return;
+        }
+      }
+    } catch (final IOException e) {
+      this.logger.debug("connection: ", e);
+    }
+  }
+
+  private String respond(
+    final List<String> request)
+  {
+    try {
+      final var results = this.execute(request);
+      final var fields = new ArrayList<String>(results.size() + 1);
+      fields.add(RSDaemonProtocol.OK);
+      fields.addAll(results);
+      return RSDaemonProtocol.encode(fields);
+    } catch (final Exception e) {
+      this.logger.error("{}: {}", request.get(0), e.getMessage());
+      return RSDaemonProtocol.encode(List.of(
+        RSDaemonProtocol.ERROR,
+        RSDaemonProtocol.sanitize(messageOf(e))
+      ));
+    }
+  }
+
+  /**
+   * The message of an exception, including the messages of any suppressed
+   * exceptions (as produced when several errors are aggregated).
+   */
+
+  private static String messageOf(
+    final Exception e)
+  {
+    final var text = new StringBuilder();
+    text.append(e.getMessage());
+    for (final var suppressed : e.getSuppressed()) {
+      text.append("; ");
+      text.append(suppressed.getMessage());
+    }
+    return text.toString();
+  }
+
+  private List<String> execute(
+    final List<String> request)
+    throws RSRepositoryException
+  {
+    final var arguments = request.subList(1, request.size());
+    return switch (request.get(0)) {
+      case "install" -> this.executeInstall(arguments);
+      case "promote" -> this.executePromote(arguments);
+      case "verify" -> this.executeVerify();
+      case "query-generation" -> List.of(
+        Long.toString(this.repository.generation()));
+      case "query-configuration" -> List.of(
+        this.configuration.directory().toAbsolutePath().toString(),
+        this.configuration.name(),
+        Integer.toString(this.configuration.indexParallelism()),
+        Boolean.toString(this.configuration.indexTimestamps()));
+      case "query-channels" -> List.copyOf(
+        this.repository.channels());
+      case "query-channel" -> this.repository.channelBundles(
+          argument(arguments, 0))
+        .stream()
+        .map(RSBundleIdentifier::toString)
+        .toList();
+      case "stop" -> List.of();
+      default -> throw new RSRepositoryException(
+        "Unrecognized request '%s'".formatted(request.get(0)));
+    };
+  }
+
+  private List<String> executeInstall(
+    final List<String> arguments)
+    throws RSRepositoryException
+  {
+    final var channel =
+      argument(arguments, 0);
+    final var sources =
+      arguments.subList(1, arguments.size())
+        .stream()
+        .map(Path::of)
+        .map(RSRepositorySource::ofFile)
+        .toList();
+
+    this.repositoryLock.lock();
+    try {
+      if (channel.isEmpty()) {
+        this.repository.installSources(sources);
+      } else {
+        this.repository.installIntoChannel(channel, sources);
+      }
+    } finally {
+      this.repositoryLock.unlock();
+    }
+    return List.of(Long.toString(this.repository.generation()));
+  }
+
+  private List<String> executePromote(
+    final List<String> arguments)
+    throws RSRepositoryException
+  {
+    final var from =
+      argument(arguments, 0);
+    final var to =
+      argument(arguments, 1);
+
+    final List<RSBundleIdentifier> bundles;
+    try {
+      bundles = arguments.subList(2, arguments.size())
+        .stream()
+        .map(RSBundleIdentifier::parse)
+        .toList();
+    } catch (final IllegalArgumentException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+
+    this.repositoryLock.lock();
+    try {
+      this.repository.promote(from, to, bundles);
+    } finally {
+      this.repositoryLock.unlock();
+    }
+    return List.of(Long.toString(this.repository.generation()));
+  }
+
+  private List<String> executeVerify()
+    throws RSRepositoryException
+  {
+    this.repositoryLock.lock();
+    try {
+      this.repository.verify();
+    } finally {
+      this.repositoryLock.unlock();
+    }
+    return List.of();
+  }
+
+  private static String argument(
+    final List<String> arguments,
+    final int index)
+    throws RSRepositoryException
+  {
+    if (index >= arguments.size()) {
+      throw new RSRepositoryException(
+        "Request is missing argument %d".formatted(Integer.valueOf(index)));
+    }
+    return arguments.get(index);
+  }
+}
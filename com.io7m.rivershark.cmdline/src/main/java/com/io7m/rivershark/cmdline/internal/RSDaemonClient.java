@@ -0,0 +1,253 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.rivershark.cmdline.internal;
+
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A client connection to a repository daemon.
+ *
+ * @see RSDaemonProtocol
+ */
+
+public final class RSDaemonClient implements AutoCloseable
+{
+  private final SocketChannel channel;
+  private final BufferedReader reader;
+  private final BufferedWriter writer;
+
+  private RSDaemonClient(
+    final SocketChannel inChannel)
+  {
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.reader =
+      new BufferedReader(
+        new InputStreamReader(Channels.newInputStream(inChannel), UTF_8));
+    this.writer =
+      new BufferedWriter(
+        new OutputStreamWriter(Channels.newOutputStream(inChannel), UTF_8));
+  }
+
+  /**
+   * Connect to the daemon listening on the given socket.
+   *
+   * @param socket The socket file
+   *
+   * @return A connected client, or nothing if no daemon is listening
+   */
+
+  public static Optional<RSDaemonClient> connect(
+    final Path socket)
+  {
+    Objects.requireNonNull(socket, "socket");
+
+    if (!Files.exists(socket)) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(new RSDaemonClient(
+        SocketChannel.open(UnixDomainSocketAddress.of(socket))
+      ));
+    } catch (final IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Install bundles.
+   *
+   * @param targetChannel The channel, if any
+   * @param files         The bundle files
+   *
+   * @throws IOException           On I/O errors
+   * @throws RSRepositoryException If the daemon reports an error
+   */
+
+  public void install(
+    final Optional<String> targetChannel,
+    final Collection<Path> files)
+    throws IOException, RSRepositoryException
+  {
+    final var fields = new ArrayList<String>(files.size() + 2);
+    fields.add("install");
+    fields.add(targetChannel.orElse(""));
+    for (final var file : files) {
+      fields.add(file.toAbsolutePath().toString());
+    }
+    this.request(fields);
+  }
+
+  /**
+   * Promote bundles.
+   *
+   * @param from    The source channel
+   * @param to      The target channel
+   * @param bundles The bundles
+   *
+   * @throws IOException           On I/O errors
+   * @throws RSRepositoryException If the daemon reports an error
+   */
+
+  public void promote(
+    final String from,
+    final String to,
+    final Collection<RSBundleIdentifier> bundles)
+    throws IOException, RSRepositoryException
+  {
+    final var fields = new ArrayList<String>(bundles.size() + 3);
+    fields.add("promote");
+    fields.add(from);
+    fields.add(to);
+    for (final var bundle : bundles) {
+      fields.add(bundle.toString());
+    }
+    this.request(fields);
+  }
+
+  /**
+   * @return The repository generation
+   *
+   * @throws IOException           On I/O errors
+   * @throws RSRepositoryException If the daemon reports an error
+   */
+
+  public long generation()
+    throws IOException, RSRepositoryException
+  {
+    final var results = this.request(List.of("query-generation"));
+    try {
+      return Long.parseLong(results.get(0));
+    } catch (final IndexOutOfBoundsException | NumberFormatException e) {
+      throw new IOException("Malformed response: %s".formatted(results), e);
+    }
+  }
+
+  /**
+   * @return The configuration with which the daemon opened its repository
+   *
+   * @throws IOException           On I/O errors
+   * @throws RSRepositoryException If the daemon reports an error
+   */
+
+  public RSRepositoryConfiguration configuration()
+    throws IOException, RSRepositoryException
+  {
+    final var results = this.request(List.of("query-configuration"));
+    try {
+      return RSRepositoryConfiguration.builder(Path.of(results.get(0)))
+        .setName(results.get(1))
+        .setIndexParallelism(Integer.parseInt(results.get(2)))
+        .setIndexTimestamps(Boolean.parseBoolean(results.get(3)))
+        .build();
+    } catch (final IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Malformed response: %s".formatted(results), e);
+    }
+  }
+
+  /**
+   * Check that the daemon can honour the given options.
+   *
+   * @param options The options requested by the client
+   *
+   * @throws IOException           On I/O errors
+   * @throws RSRepositoryException If the daemon was started with different
+   *                               options
+   * @see RSDaemonOptions#checkCompatible(RSRepositoryConfiguration)
+   */
+
+  public void checkCompatible(
+    final RSDaemonOptions options)
+    throws IOException, RSRepositoryException
+  {
+    options.checkCompatible(this.configuration());
+  }
+
+  /**
+   * Verify the repository.
+   *
+   * @throws IOException           On I/O errors
+   * @throws RSRepositoryException If verification fails
+   */
+
+  public void verify()
+    throws IOException, RSRepositoryException
+  {
+    this.request(List.of("verify"));
+  }
+
+  /**
+   * Send a request and wait for the response.
+   *
+   * @param fields The request fields
+   *
+   * @return The result fields of a successful response
+   *
+   * @throws IOException           On I/O errors
+   * @throws RSRepositoryException If the daemon reports an error
+   */
+
+  public List<String> request(
+    final List<String> fields)
+    throws IOException, RSRepositoryException
+  {
+    this.writer.write(RSDaemonProtocol.encode(fields));
+    this.writer.newLine();
+    this.writer.flush();
+
+    final var line = this.reader.readLine();
+    if (line == null) {
+      throw new IOException("The daemon closed the connection");
+    }
+
+    final var response = RSDaemonProtocol.decode(line);
+    return switch (response.get(0)) {
+      case RSDaemonProtocol.OK -> response.subList(1, response.size());
+      case RSDaemonProtocol.ERROR -> throw new RSRepositoryException(
+        String.join(" ", response.subList(1, response.size())));
+      default -> throw new IOException(
+        "Malformed response: %s".formatted(line));
+    };
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.channel.close();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.cmdline.internal;
+
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The repository options requested on the command line of a client. A
+ * daemon opens its repository once, with its own options, so a client
+ * that asks for different options must not be silently served with the
+ * daemon's.
+ *
+ * @param repository       The repository directory
+ * @param name             The repository title, if one was given
+ * @param indexParallelism The index parallelism, if one was given
+ * @param indexTimestamps  The index timestamp setting, if one was given
+ */
+
+public record RSDaemonOptions(
+  Path repository,
+  Optional<String> name,
+  Optional<Integer> indexParallelism,
+  Optional<Boolean> indexTimestamps)
+{
+  /**
+   * The repository options requested on the command line of a client. A
+   * daemon opens its repository once, with its own options, so a client
+   * that asks for different options must not be silently served with the
+   * daemon's.
+   *
+   * @param repository       The repository directory
+   * @param name             The repository title, if one was given
+   * @param indexParallelism The index parallelism, if one was given
+   * @param indexTimestamps  The index timestamp setting, if one was given
+   */
+
+  public RSDaemonOptions
+  {
+    Objects.requireNonNull(repository, "repository");
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(indexParallelism, "indexParallelism");
+    Objects.requireNonNull(indexTimestamps, "indexTimestamps");
+  }
+
+  /**
+   * Check that a daemon serving a repository with the given configuration
+   * can honour these options. Options that were not given are accepted
+   * whatever the daemon's configuration.
+   *
+   * @param daemon The configuration of the daemon's repository
+   *
+   * @throws RSRepositoryException If any option differs
+   */
+
+  public void checkCompatible(
+    final RSRepositoryConfiguration daemon)
+    throws RSRepositoryException
+  {
+    Objects.requireNonNull(daemon, "daemon");
+
+    final var differences = new ArrayList<String>();
+    final var requested =
+      this.repository.toAbsolutePath().normalize();
+    final var served =
+      daemon.directory().toAbsolutePath().normalize();
+
+    if (!requested.equals(served)) {
+      differences.add(
+        "repository %s (daemon: %s)".formatted(requested, served));
+    }
+    if (this.name.isPresent()
+        && !this.name.get().equals(daemon.name())) {
+      differences.add(
+        "--name '%s' (daemon: '%s')"
+          .formatted(this.name.get(), daemon.name()));
+    }
+    if (this.indexParallelism.isPresent()
+        && this.indexParallelism.get().intValue() != daemon.indexParallelism()) {
+      differences.add(
+        "--index-parallelism %s (daemon: %d)"
+          .formatted(
+            this.indexParallelism.get(),
+            Integer.valueOf(daemon.indexParallelism())));
+    }
+    if (this.indexTimestamps.isPresent()
+        && this.indexTimestamps.get().booleanValue() != daemon.indexTimestamps()) {
+      differences.add(
+        "--index-timestamps %s (daemon: %s)"
+          .formatted(
+            this.indexTimestamps.get(),
+            Boolean.valueOf(daemon.indexTimestamps())));
+    }
+
+    if (!differences.isEmpty()) {
+      throw new RSRepositoryException(
+        ("The repository daemon was started with different options: %s. "
+         + "Restart the daemon with matching options, or stop it.")
+          .formatted(String.join(", ", differences))
+      );
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.rivershark.cmdline.internal;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * The line protocol spoken between the repository daemon and its clients.
+ *
+ * Each request and each response is a single line of UTF-8 text consisting
+ * of tab-separated fields. The first field of a request names the operation:
+ *
+ * <ul>
+ *   <li>{@code install <channel> <file>...}: install bundles (an empty
+ *   channel field installs without a channel)</li>
+ *   <li>{@code promote <from> <to> <name:version>...}: promote bundles</li>
+ *   <li>{@code query-generation}: return the repository generation</li>
+ *   <li>{@code query-configuration}: return the repository directory,
+ *   title, index parallelism, and whether index timestamps are written</li>
+ *   <li>{@code query-channels}: return the channel names</li>
+ *   <li>{@code query-channel <channel>}: return the channel members</li>
+ *   <li>{@code verify}: verify the repository contents</li>
+ *   <li>{@code stop}: stop the daemon</li>
+ * </ul>
+ *
+ * The first field of a response is either {@code ok}, followed by any
+ * results, or {@code error}, followed by a message. A connection may carry
+ * any number of requests.
+ */
+
+public final class RSDaemonProtocol
+{
+  /**
+   * The separator between fields.
+   */
+
+  public static final String SEPARATOR = "\t";
+
+  /**
+   * The first field of a successful response.
+   */
+
+  public static final String OK = "ok";
+
+  /**
+   * The first field of a failed response.
+   */
+
+  public static final String ERROR = "error";
+
+  private static final Pattern UNSAFE =
+    Pattern.compile("[\\t\\r\\n]");
+
+  private RSDaemonProtocol()
+  {
+
+  }
+
+  /**
+   * The default socket of the daemon serving the given repository.
+   *
+   * @param repository The repository directory
+   *
+   * @return The socket file
+   */
+
+  public static Path socketOf(
+    final Path repository)
+  {
+    return repository.toAbsolutePath().resolve("obr.socket");
+  }
+
+  /**
+   * Encode the given fields as a line.
+   *
+   * @param fields The fields
+   *
+   * @return The encoded line (without a line terminator)
+   *
+   * @throws IllegalArgumentException If a field contains a tab or newline
+   */
+
+  public static String encode(
+    final List<String> fields)
+  {
+    Objects.requireNonNull(fields, "fields");
+
+    for (final var field : fields) {
+      if (UNSAFE.matcher(field).find()) {
+        throw new IllegalArgumentException(
+          "Field '%s' must not contain tabs or newlines".formatted(field));
+      }
+    }
+    return String.join(SEPARATOR, fields);
+  }
+
+  /**
+   * Replace any tabs or newlines in free text (such as error messages) so
+   * that it can be carried in a single field.
+   *
+   * @param text The text
+   *
+   * @return The sanitized text
+   */
+
+  public static String sanitize(
+    final String text)
+  {
+    return UNSAFE.matcher(Objects.requireNonNullElse(text, ""))
+      .replaceAll(" ");
+  }
+
+  /**
+   * Decode a line into fields.
+   *
+   * @param line The line
+   *
+   * @return The fields
+   */
+
+  public static List<String> decode(
+    final String line)
+  {
+    return List.of(line.split(SEPARATOR, -1));
+  }
+}
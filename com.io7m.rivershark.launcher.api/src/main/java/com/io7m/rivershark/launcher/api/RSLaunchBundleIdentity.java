@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import com.io7m.verona.core.Version;
+import com.io7m.verona.core.VersionException;
+import com.io7m.verona.core.VersionParser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * The identity of an OSGi bundle, as declared by its manifest.
+ *
+ * @param symbolicName The bundle symbolic name
+ * @param version      The bundle version
+ */
+
+public record RSLaunchBundleIdentity(
+  String symbolicName,
+  String version)
+{
+  private static final Version DEFAULT_VERSION =
+    Version.of(0, 0, 0);
+
+  /**
+   * The identity of an OSGi bundle, as declared by its manifest.
+   *
+   * @param symbolicName The bundle symbolic name
+   * @param version      The bundle version
+   */
+
+  public RSLaunchBundleIdentity
+  {
+    Objects.requireNonNull(symbolicName, "symbolicName");
+    Objects.requireNonNull(version, "version");
+  }
+
+  /**
+   * Read the identity of the given bundle. This is used both when compiling
+   * launch plans and when checking bundles before launching, so that a file
+   * is judged the same way by both, and it follows the same rules as the
+   * repository tools: a bundle must have a manifest that declares a
+   * non-empty {@code Bundle-SymbolicName}, and a bundle that does not
+   * declare a {@code Bundle-Version} has version {@code 0.0.0}, as
+   * specified by OSGi. Versions are returned in their normalized form, so
+   * {@code 1.0} is {@code 1.0.0}.
+   *
+   * @param file The bundle file
+   *
+   * @return The bundle identity
+   *
+   * @throws IOException If the file cannot be read as a jar file, or is not
+   *                     a bundle with a valid identity
+   */
+
+  public static RSLaunchBundleIdentity of(
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+
+    final Manifest manifest;
+    try (var jar = new JarFile(file.toFile(), false)) {
+      manifest = jar.getManifest();
+    } catch (final IOException e) {
+      throw new IOException(
+        "%s: Unreadable jar file: %s".formatted(file, e.getMessage()), e);
+    }
+
+    if (manifest == null) {
+      throw new IOException(
+        "%s: Not an OSGi bundle (no manifest)".formatted(file));
+    }
+
+    final var attributes =
+      manifest.getMainAttributes();
+    final var symbolicNameValue =
+      attributes.getValue("Bundle-SymbolicName");
+
+    if (symbolicNameValue == null) {
+      throw new IOException(
+        "%s: Not an OSGi bundle (no Bundle-SymbolicName)".formatted(file));
+    }
+
+    final var symbolicName =
+      symbolicNameValue.split(";", 2)[0].trim();
+
+    if (symbolicName.isEmpty()) {
+      throw new IOException(
+        "%s: Bundle declares an empty Bundle-SymbolicName".formatted(file));
+    }
+
+    return new RSLaunchBundleIdentity(
+      symbolicName,
+      versionOf(file, attributes.getValue("Bundle-Version"))
+    );
+  }
+
+  /**
+   * OSGi allows the minor and micro components of a version to be omitted,
+   * but the version parser requires all three.
+   */
+
+  private static String padded(
+    final String text)
+  {
+    final var components = text.split("\\.", -1).length;
+    if (components >= 3) {
+      return text;
+    }
+    return text + ".0".repeat(3 - components);
+  }
+
+  private static String versionOf(
+    final Path file,
+    final String versionValue)
+    throws IOException
+  {
+    if (versionValue == null || versionValue.isBlank()) {
+      return DEFAULT_VERSION.toString();
+    }
+
+    try {
+      return VersionParser.parseOSGi(padded(versionValue.trim())).toString();
+    } catch (final VersionException e) {
+      throw new IOException(
+        "%s: Bundle declares an unparseable Bundle-Version '%s': %s"
+          .formatted(file, versionValue, e.getMessage()),
+        e
+      );
+    }
+  }
+}
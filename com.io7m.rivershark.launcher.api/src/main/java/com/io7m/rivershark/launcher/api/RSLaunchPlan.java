@@ -0,0 +1,374 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import com.io7m.jdeferthrow.core.ExceptionTracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A compiled launch plan. A plan is a configuration in which every module
+ * and bundle has been checked to exist, has been hashed, and (for bundles)
+ * has had its identity read from its manifest. Plans are cached in the
+ * runtime directory, keyed by the digest of the configuration file, so
+ * that subsequent launches with an unchanged configuration and unchanged
+ * files do not need to read any module or bundle.
+ *
+ * @param configurationDigest The SHA-256 digest of the configuration file
+ * @param configuration       The configuration
+ * @param modules             The Java modules, in configuration order
+ * @param bundles             The OSGi bundles, in configuration order
+ */
+
+public record RSLaunchPlan(
+  String configurationDigest,
+  RSLauncherConfiguration configuration,
+  List<RSLaunchPlanFile> modules,
+  List<RSLaunchPlanBundle> bundles)
+{
+  /**
+   * The name of the plan cache file in the runtime directory.
+   */
+
+  public static final String CACHE_FILE_NAME = "launch-plan.properties";
+
+  /**
+   * A compiled launch plan.
+   *
+   * @param configurationDigest The SHA-256 digest of the configuration file
+   * @param configuration       The configuration
+   * @param modules             The Java modules, in configuration order
+   * @param bundles             The OSGi bundles, in configuration order
+   */
+
+  public RSLaunchPlan
+  {
+    Objects.requireNonNull(configurationDigest, "configurationDigest");
+    Objects.requireNonNull(configuration, "configuration");
+    modules = List.copyOf(modules);
+    bundles = List.copyOf(bundles);
+
+    final var modulePaths =
+      modules.stream()
+        .map(RSLaunchPlanFile::file)
+        .toList();
+    final var bundlePaths =
+      bundles.stream()
+        .map(b -> b.file().file())
+        .toList();
+
+    if (!modulePaths.equals(normalized(configuration.javaModules()))
+        || !bundlePaths.equals(normalized(configuration.osgiBundles()))) {
+      throw new IllegalArgumentException(
+        "The plan files do not match the configuration.");
+    }
+  }
+
+  private static List<Path> normalized(
+    final List<Path> paths)
+  {
+    return paths.stream()
+      .map(p -> p.toAbsolutePath().normalize())
+      .toList();
+  }
+
+  /**
+   * @return {@code true} if every file in the plan is apparently unchanged
+   *
+   * @see RSLaunchPlanFile#isUnchanged()
+   */
+
+  public boolean isUnchanged()
+  {
+    for (final var module : this.modules) {
+      if (!module.isUnchanged()) {
+        return false;
+      }
+    }
+    for (final var bundle : this.bundles) {
+      if (!bundle.file().isUnchanged()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param file The file
+   *
+   * @return The plan metadata for the given module or bundle file, if any
+   */
+
+  public Optional<RSLaunchPlanFile> fileOf(
+    final Path file)
+  {
+    final var absolute = file.toAbsolutePath().normalize();
+    for (final var module : this.modules) {
+      if (module.file().equals(absolute)) {
+        return Optional.of(module);
+      }
+    }
+    for (final var bundle : this.bundles) {
+      if (bundle.file().file().equals(absolute)) {
+        return Optional.of(bundle.file());
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @param configuration The configuration
+   *
+   * @return The file in which the plan for the given configuration is cached
+   */
+
+  public static Path cacheFileOf(
+    final RSLauncherConfiguration configuration)
+  {
+    return configuration.runtimeDirectory()
+      .toAbsolutePath()
+      .resolve(CACHE_FILE_NAME);
+  }
+
+  /**
+   * Load the plan for the given configuration file from the cache in the
+   * runtime directory if the configuration file and every referenced file
+   * are unchanged, or compile (and cache) a new plan otherwise.
+   *
+   * @param configurationFile The configuration file
+   *
+   * @return A plan
+   *
+   * @throws IOException On errors, including every validation failure
+   */
+
+  public static RSLaunchPlan loadOrCompile(
+    final Path configurationFile)
+    throws IOException
+  {
+    Objects.requireNonNull(configurationFile, "configurationFile");
+
+    final var bytes =
+      Files.readAllBytes(configurationFile);
+    final var digest =
+      HexFormat.of().formatHex(createDigest().digest(bytes));
+
+    final var properties = new Properties();
+    properties.load(new ByteArrayInputStream(bytes));
+
+    final var configuration =
+      RSLauncherConfiguration.parseProperties(
+        configurationFile.getFileSystem(),
+        properties
+      );
+
+    final var cacheFile = cacheFileOf(configuration);
+    final var cached =
+      RSLaunchPlanCache.read(cacheFile, digest, configuration);
+
+    if (cached.isPresent() && cached.get().isUnchanged()) {
+      return cached.get();
+    }
+
+    final var plan = compile(digest, configuration);
+    RSLaunchPlanCache.write(cacheFile, plan);
+    return plan;
+  }
+
+  /**
+   * Compile a plan for the given configuration. Every module and bundle is
+   * read, and all problems are reported together.
+   *
+   * @param configurationDigest The digest of the configuration
+   * @param configuration       The configuration
+   *
+   * @return A plan
+   *
+   * @throws IOException On errors, including every validation failure
+   */
+
+  public static RSLaunchPlan compile(
+    final String configurationDigest,
+    final RSLauncherConfiguration configuration)
+    throws IOException
+  {
+    return compile(configurationDigest, configuration, Map.of());
+  }
+
+  /**
+   * Compile a plan for the given configuration. Every module and bundle is
+   * read, and all problems are reported together. Files are read in
+   * parallel. A file that has an expected hash must have exactly that
+   * hash.
+   *
+   * @param configurationDigest The digest of the configuration
+   * @param configuration       The configuration
+   * @param expectedSha256      The expected lowercase hex SHA-256 hashes of
+   *                            files, by absolute path
+   *
+   * @return A plan
+   *
+   * @throws IOException On errors, including every validation failure
+   */
+
+  public static RSLaunchPlan compile(
+    final String configurationDigest,
+    final RSLauncherConfiguration configuration,
+    final Map<Path, String> expectedSha256)
+    throws IOException
+  {
+    Objects.requireNonNull(configurationDigest, "configurationDigest");
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(expectedSha256, "expectedSha256");
+
+    final var exceptions =
+      new ExceptionTracker<IOException>();
+
+    final var threads =
+      Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    final var moduleTasks = new ArrayList<Future<RSLaunchPlanFile>>();
+    final var bundleTasks = new ArrayList<Future<RSLaunchPlanBundle>>();
+    final var threadFactory =
+      Thread.ofPlatform()
+        .name("com.io7m.rivershark.launcher.plan-", 0L)
+        .factory();
+
+    try (var executor = Executors.newFixedThreadPool(threads, threadFactory)) {
+      for (final var module : configuration.javaModules()) {
+        moduleTasks.add(executor.submit(() -> {
+          return checked(module, expectedSha256);
+        }));
+      }
+      for (final var bundle : configuration.osgiBundles()) {
+        bundleTasks.add(executor.submit(() -> {
+          return identify(checked(bundle, expectedSha256));
+        }));
+      }
+    }
+
+    final var modules = new ArrayList<RSLaunchPlanFile>();
+    for (final var task : moduleTasks) {
+      awaitInto(task, modules, exceptions);
+    }
+
+    final var bundles = new ArrayList<RSLaunchPlanBundle>();
+    for (final var task : bundleTasks) {
+      awaitInto(task, bundles, exceptions);
+    }
+
+    final var identities = new HashMap<String, Path>();
+    for (final var bundle : bundles) {
+      final var file =
+        bundle.file().file();
+      final var identity =
+        bundle.symbolicName() + " " + bundle.version();
+      final var existing =
+        identities.putIfAbsent(identity, file);
+
+      if (existing != null) {
+        exceptions.addException(new IOException(
+          "%s: Bundle %s is also provided by %s"
+            .formatted(file, identity, existing)));
+      }
+    }
+
+    exceptions.throwIfNecessary();
+    return new RSLaunchPlan(
+      configurationDigest,
+      configuration,
+      modules,
+      bundles
+    );
+  }
+
+  private static RSLaunchPlanFile checked(
+    final Path file,
+    final Map<Path, String> expectedSha256)
+    throws IOException
+  {
+    final var planFile = RSLaunchPlanFile.of(file);
+    final var expected = expectedSha256.get(planFile.file());
+    if (expected != null && !expected.equalsIgnoreCase(planFile.sha256())) {
+      throw new IOException(
+        "%s: Hash mismatch (expected SHA-256 %s, received %s)"
+          .formatted(planFile.file(), expected, planFile.sha256()));
+    }
+    return planFile;
+  }
+
+  private static <T> void awaitInto(
+    final Future<T> task,
+    final List<T> results,
+    final ExceptionTracker<IOException> exceptions)
+  {
+    try {
+      results.add(task.get());
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof final IOException cause) {
+        exceptions.addException(cause);
+      } else {
+        exceptions.addException(new IOException(e.getCause()));
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      exceptions.addException(new IOException(e));
+    }
+  }
+
+  private static RSLaunchPlanBundle identify(
+    final RSLaunchPlanFile file)
+    throws IOException
+  {
+    final var identity = RSLaunchBundleIdentity.of(file.file());
+    return new RSLaunchPlanBundle(
+      file,
+      identity.symbolicName(),
+      identity.version()
+    );
+  }
+
+  /**
+   * @return A new SHA-256 digest
+   */
+
+  static MessageDigest createDigest()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Functions to read and write cached launch plans.
+ */
+
+final class RSLaunchPlanCache
+{
+  private static final String FORMAT = "1";
+
+  private RSLaunchPlanCache()
+  {
+
+  }
+
+  /**
+   * Read a cached plan. A cache file that is missing, malformed, written for
+   * a different configuration file, or that refers to different files than
+   * the given configuration yields nothing.
+   *
+   * @param file          The cache file
+   * @param digest        The digest of the configuration file
+   * @param configuration The configuration
+   *
+   * @return The cached plan, if usable
+   */
+
+  static Optional<RSLaunchPlan> read(
+    final Path file,
+    final String digest,
+    final RSLauncherConfiguration configuration)
+  {
+    return readEntries(file, digest).flatMap(entries -> {
+      try {
+        return Optional.of(new RSLaunchPlan(
+          digest,
+          configuration,
+          entries.modules(),
+          entries.bundles()
+        ));
+      } catch (final IllegalArgumentException e) {
+        return Optional.empty();
+      }
+    });
+  }
+
+  /**
+   * Read the modules and bundles of a cached plan without reference to any
+   * configuration. A cache file that is missing, malformed, or written for
+   * a different digest yields nothing.
+   *
+   * @param file   The cache file
+   * @param digest The digest of the plan source
+   *
+   * @return The cached entries, if usable
+   */
+
+  static Optional<Entries> readEntries(
+    final Path file,
+    final String digest)
+  {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+
+    try {
+      final var properties = new Properties();
+      try (var stream = Files.newInputStream(file)) {
+        properties.load(stream);
+      }
+
+      if (!FORMAT.equals(properties.getProperty("rivershark.plan.format"))
+          || !digest.equals(properties.getProperty("rivershark.plan.digest"))) {
+        return Optional.empty();
+      }
+
+      final var moduleCount =
+        Integer.parseInt(required(properties, "rivershark.plan.modules"));
+      final var modules = new ArrayList<RSLaunchPlanFile>(moduleCount);
+      for (int index = 0; index < moduleCount; ++index) {
+        modules.add(readFile(
+          file, properties, "rivershark.plan.modules.%d".formatted(index)));
+      }
+
+      final var bundleCount =
+        Integer.parseInt(required(properties, "rivershark.plan.bundles"));
+      final var bundles = new ArrayList<RSLaunchPlanBundle>(bundleCount);
+      for (int index = 0; index < bundleCount; ++index) {
+        final var key = "rivershark.plan.bundles.%d".formatted(index);
+        bundles.add(new RSLaunchPlanBundle(
+          readFile(file, properties, key),
+          required(properties, key + ".symbolicName"),
+          required(properties, key + ".version")
+        ));
+      }
+
+      return Optional.of(new Entries(modules, bundles));
+    } catch (final IOException | IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static RSLaunchPlanFile readFile(
+    final Path cacheFile,
+    final Properties properties,
+    final String key)
+  {
+    return new RSLaunchPlanFile(
+      cacheFile.getFileSystem().getPath(required(properties, key + ".file")),
+      Long.parseLong(required(properties, key + ".size")),
+      required(properties, key + ".lastModified"),
+      required(properties, key + ".sha256")
+    );
+  }
+
+  private static String required(
+    final Properties properties,
+    final String key)
+  {
+    final var value = properties.getProperty(key);
+    if (value == null) {
+      throw new IllegalArgumentException("Missing key: " + key);
+    }
+    return value;
+  }
+
+  /**
+   * Write a plan to the given cache file.
+   *
+   * @param file The cache file
+   * @param plan The plan
+   *
+   * @throws IOException On errors
+   */
+
+  static void write(
+    final Path file,
+    final RSLaunchPlan plan)
+    throws IOException
+  {
+    final var properties = new Properties();
+    properties.setProperty("rivershark.plan.format", FORMAT);
+    properties.setProperty("rivershark.plan.digest", plan.configurationDigest());
+
+    final var modules = plan.modules();
+    properties.setProperty(
+      "rivershark.plan.modules", Integer.toString(modules.size()));
+    for (int index = 0; index < modules.size(); ++index) {
+      writeFile(
+        properties,
+        "rivershark.plan.modules.%d".formatted(index),
+        modules.get(index));
+    }
+
+    final var bundles = plan.bundles();
+    properties.setProperty(
+      "rivershark.plan.bundles", Integer.toString(bundles.size()));
+    for (int index = 0; index < bundles.size(); ++index) {
+      final var key = "rivershark.plan.bundles.%d".formatted(index);
+      final var bundle = bundles.get(index);
+      writeFile(properties, key, bundle.file());
+      properties.setProperty(key + ".symbolicName", bundle.symbolicName());
+      properties.setProperty(key + ".version", bundle.version());
+    }
+
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.createDirectories(file.getParent());
+    try (var output = Files.newOutputStream(fileTmp)) {
+      properties.store(output, "Rivershark launch plan");
+    }
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  private static void writeFile(
+    final Properties properties,
+    final String key,
+    final RSLaunchPlanFile file)
+  {
+    properties.setProperty(key + ".file", file.file().toString());
+    properties.setProperty(key + ".size", Long.toString(file.size()));
+    properties.setProperty(key + ".lastModified", file.lastModified());
+    properties.setProperty(key + ".sha256", file.sha256());
+  }
+
+  /**
+   * The modules and bundles of a cached plan.
+   *
+   * @param modules The Java modules
+   * @param bundles The OSGi bundles
+   */
+
+  record Entries(
+    List<RSLaunchPlanFile> modules,
+    List<RSLaunchPlanBundle> bundles)
+  {
+    /**
+     * The modules and bundles of a cached plan.
+     *
+     * @param modules The Java modules
+     * @param bundles The OSGi bundles
+     */
+
+    Entries
+    {
+      modules = List.copyOf(modules);
+      bundles = List.copyOf(bundles);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * A file referenced by a launch plan, along with the metadata that was
+ * recorded when the plan was compiled.
+ *
+ * @param file         The absolute path of the file
+ * @param size         The size of the file in bytes
+ * @param lastModified The last modification time of the file
+ * @param sha256       The lowercase hex SHA-256 hash of the file
+ */
+
+public record RSLaunchPlanFile(
+  Path file,
+  long size,
+  String lastModified,
+  String sha256)
+{
+  /**
+   * A file referenced by a launch plan, along with the metadata that was
+   * recorded when the plan was compiled.
+   *
+   * @param file         The absolute path of the file
+   * @param size         The size of the file in bytes
+   * @param lastModified The last modification time of the file
+   * @param sha256       The lowercase hex SHA-256 hash of the file
+   */
+
+  public RSLaunchPlanFile
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(lastModified, "lastModified");
+    Objects.requireNonNull(sha256, "sha256");
+
+    if (!file.isAbsolute()) {
+      throw new IllegalArgumentException(
+        "Path %s must be absolute".formatted(file));
+    }
+  }
+
+  /**
+   * Record the metadata of the given file, hashing its contents.
+   *
+   * @param file The file
+   *
+   * @return The file metadata
+   *
+   * @throws IOException On errors
+   */
+
+  public static RSLaunchPlanFile of(
+    final Path file)
+    throws IOException
+  {
+    final var absolute =
+      file.toAbsolutePath().normalize();
+
+    if (!Files.isRegularFile(absolute)) {
+      throw new IOException(
+        "%s: Not a regular file".formatted(absolute));
+    }
+    if (!Files.isReadable(absolute)) {
+      throw new IOException(
+        "%s: Not readable".formatted(absolute));
+    }
+
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    try (var input = Files.newInputStream(absolute)) {
+      input.transferTo(new DigestOutputStream(
+        OutputStream.nullOutputStream(), digest));
+    }
+
+    return new RSLaunchPlanFile(
+      absolute,
+      Files.size(absolute),
+      Files.getLastModifiedTime(absolute).toString(),
+      HexFormat.of().formatHex(digest.digest())
+    );
+  }
+
+  /**
+   * Determine whether the file appears to be unchanged since the metadata
+   * was recorded. Only the size and modification time are compared, so
+   * this does not read the file.
+   *
+   * @return {@code true} if the file exists and is apparently unchanged
+   */
+
+  public boolean isUnchanged()
+  {
+    try {
+      return Files.size(this.file) == this.size
+             && Files.getLastModifiedTime(this.file)
+               .toString()
+               .equals(this.lastModified);
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The policy used to activate a bundle when the launcher starts it.
+ */
+
+public enum RSLauncherActivationPolicy
+{
+  /**
+   * Honor the activation policy declared by the bundle. A bundle that
+   * declares {@code Bundle-ActivationPolicy: lazy} is not activated until
+   * a class is first loaded from it. Other bundles are activated eagerly.
+   */
+
+  DECLARED,
+
+  /**
+   * Activate the bundle eagerly, ignoring any activation policy declared by
+   * the bundle.
+   */
+
+  EAGER;
+
+  /**
+   * @return The name of the policy as it appears in configuration files
+   */
+
+  public String configurationName()
+  {
+    return this.name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * @param name The policy name as it appears in configuration files
+   *
+   * @return The policy with the given name
+   *
+   * @throws IllegalArgumentException If the name is not recognized
+   */
+
+  public static RSLauncherActivationPolicy ofConfigurationName(
+    final String name)
+  {
+    Objects.requireNonNull(name, "name");
+
+    for (final var policy : values()) {
+      if (policy.configurationName().equals(name.trim())) {
+        return policy;
+      }
+    }
+    throw new IllegalArgumentException(
+      "Unrecognized activation policy: %s".formatted(name));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.OptionalInt;
+
+/**
+ * An OSGi bundle that will be installed by the launcher.
+ *
+ * @param file             The bundle file
+ * @param startLevel       The start level of the bundle, if not the
+ *                         framework's default
+ * @param activationPolicy The activation policy
+ */
+
+public record RSLauncherBundle(
+  Path file,
+  OptionalInt startLevel,
+  RSLauncherActivationPolicy activationPolicy)
+{
+  /**
+   * An OSGi bundle that will be installed by the launcher.
+   *
+   * @param file             The bundle file
+   * @param startLevel       The start level of the bundle, if not the
+   *                         framework's default
+   * @param activationPolicy The activation policy
+   */
+
+  public RSLauncherBundle
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(startLevel, "startLevel");
+    Objects.requireNonNull(activationPolicy, "activationPolicy");
+
+    if (startLevel.isPresent() && startLevel.getAsInt() < 1) {
+      throw new IllegalArgumentException(
+        "Start level %d must be at least 1"
+          .formatted(Integer.valueOf(startLevel.getAsInt())));
+    }
+  }
+
+  /**
+   * A bundle with the default start level and activation policy.
+   *
+   * @param file The bundle file
+   *
+   * @return A bundle
+   */
+
+  public static RSLauncherBundle of(
+    final Path file)
+  {
+    return new RSLauncherBundle(
+      file,
+      OptionalInt.empty(),
+      RSLauncherActivationPolicy.DECLARED
+    );
+  }
+}
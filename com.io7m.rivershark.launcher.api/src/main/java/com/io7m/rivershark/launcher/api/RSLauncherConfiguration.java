@@ -29,11 +29,16 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 /**
@@ -44,30 +49,60 @@ public final class RSLauncherConfiguration
 {
   private static final Pattern PARAMETER_PREFIX =
     Pattern.compile("^rivershark\\.parameters\\.");
+  private static final Pattern MODULE_KEY =
+    Pattern.compile("^rivershark\\.modules\\.([0-9]{1,9})$");
+  private static final Pattern MODULE_DIRECTORY_KEY =
+    Pattern.compile("^rivershark\\.modules\\.dir\\.([0-9]{1,9})$");
+  private static final Pattern BUNDLE_KEY =
+    Pattern.compile("^rivershark\\.bundles\\.([0-9]{1,9})$");
+  private static final Pattern BUNDLE_DIRECTORY_KEY =
+    Pattern.compile("^rivershark\\.bundles\\.dir\\.([0-9]{1,9})$");
+  private static final Pattern SUNBURST_KEY =
+    Pattern.compile("^rivershark\\.sunburst\\.([0-9]{1,9})$");
 
   private final List<Path> javaModules;
-  private final List<Path> osgiBundles;
+  private final List<RSLauncherDirectory> javaModuleDirectories;
+  private final List<Path> javaModulesExpanded;
+  private final List<RSLauncherBundle> osgiBundles;
+  private final List<RSLauncherDirectory> osgiBundleDirectories;
+  private final List<RSLauncherBundle> osgiBundlesExpanded;
   private final Map<String, String> parameters;
   private final Path runtimeDirectory;
   private final Set<SBPackageIdentifier> sunburstPackages;
+  private final OptionalInt startLevel;
 
   private RSLauncherConfiguration(
     final Path inRuntimeDirectory,
     final List<Path> inJavaModules,
-    final List<Path> inOsgiBundles,
+    final List<RSLauncherDirectory> inJavaModuleDirectories,
+    final List<Path> inJavaModulesExpanded,
+    final List<RSLauncherBundle> inOsgiBundles,
+    final List<RSLauncherDirectory> inOsgiBundleDirectories,
+    final List<RSLauncherBundle> inOsgiBundlesExpanded,
     final Set<SBPackageIdentifier> inSunburstPackages,
-    final Map<String, String> inParameters)
+    final Map<String, String> inParameters,
+    final OptionalInt inStartLevel)
   {
     this.runtimeDirectory =
       Objects.requireNonNull(inRuntimeDirectory, "runtimeDirectory");
     this.javaModules =
       Objects.requireNonNull(inJavaModules, "javaModules");
+    this.javaModuleDirectories =
+      Objects.requireNonNull(inJavaModuleDirectories, "javaModuleDirectories");
+    this.javaModulesExpanded =
+      Objects.requireNonNull(inJavaModulesExpanded, "javaModulesExpanded");
     this.osgiBundles =
       Objects.requireNonNull(inOsgiBundles, "osgiBundles");
+    this.osgiBundleDirectories =
+      Objects.requireNonNull(inOsgiBundleDirectories, "osgiBundleDirectories");
+    this.osgiBundlesExpanded =
+      Objects.requireNonNull(inOsgiBundlesExpanded, "osgiBundlesExpanded");
     this.sunburstPackages =
       Objects.requireNonNull(inSunburstPackages, "sunburstPackages");
     this.parameters =
       Objects.requireNonNull(inParameters, "inParameters");
+    this.startLevel =
+      Objects.requireNonNull(inStartLevel, "startLevel");
   }
 
   /**
@@ -90,6 +125,13 @@ public final class RSLauncherConfiguration
       this.runtimeDirectory.toString()
     );
 
+    if (this.startLevel.isPresent()) {
+      props.setProperty(
+        "rivershark.startLevel",
+        Integer.toString(this.startLevel.getAsInt())
+      );
+    }
+
     for (int index = 0; index < this.javaModules.size(); ++index) {
       final var key =
         String.format("rivershark.modules.%d", Integer.valueOf(index));
@@ -99,9 +141,31 @@ public final class RSLauncherConfiguration
     for (int index = 0; index < this.osgiBundles.size(); ++index) {
       final var key =
         String.format("rivershark.bundles.%d", Integer.valueOf(index));
-      props.setProperty(key, this.osgiBundles.get(index).toString());
+      final var bundle =
+        this.osgiBundles.get(index);
+
+      props.setProperty(key, bundle.file().toString());
+
+      final var level = bundle.startLevel();
+      if (level.isPresent()) {
+        props.setProperty(
+          key + ".startLevel",
+          Integer.toString(level.getAsInt())
+        );
+      }
+
+      final var policy = bundle.activationPolicy();
+      if (policy != RSLauncherActivationPolicy.DECLARED) {
+        props.setProperty(
+          key + ".activationPolicy",
+          policy.configurationName()
+        );
+      }
     }
 
+    writeDirectories(props, "rivershark.modules.dir", this.javaModuleDirectories);
+    writeDirectories(props, "rivershark.bundles.dir", this.osgiBundleDirectories);
+
     final var sunbursts = new ArrayList<>(this.sunburstPackages);
     Collections.sort(sunbursts);
 
@@ -114,6 +178,27 @@ public final class RSLauncherConfiguration
     return props;
   }
 
+  private static void writeDirectories(
+    final Properties props,
+    final String prefix,
+    final List<RSLauncherDirectory> directories)
+  {
+    for (int index = 0; index < directories.size(); ++index) {
+      final var key =
+        String.format("%s.%d", prefix, Integer.valueOf(index));
+      final var directory =
+        directories.get(index);
+
+      props.setProperty(key, directory.directory().toString());
+      props.setProperty(key + ".include", directory.include());
+      directory.exclude()
+        .ifPresent(e -> props.setProperty(key + ".exclude", e));
+      if (directory.recursive()) {
+        props.setProperty(key + ".recursive", "true");
+      }
+    }
+  }
+
   @Override
   public boolean equals(final Object o)
   {
@@ -125,10 +210,15 @@ public final class RSLauncherConfiguration
     }
     final RSLauncherConfiguration that = (RSLauncherConfiguration) o;
     return this.javaModules.equals(that.javaModules)
+           && this.javaModuleDirectories.equals(that.javaModuleDirectories)
+           && this.javaModulesExpanded.equals(that.javaModulesExpanded)
            && this.osgiBundles.equals(that.osgiBundles)
+           && this.osgiBundleDirectories.equals(that.osgiBundleDirectories)
+           && this.osgiBundlesExpanded.equals(that.osgiBundlesExpanded)
            && this.parameters.equals(that.parameters)
            && this.runtimeDirectory.equals(that.runtimeDirectory)
-           && this.sunburstPackages.equals(that.sunburstPackages);
+           && this.sunburstPackages.equals(that.sunburstPackages)
+           && this.startLevel.equals(that.startLevel);
   }
 
   @Override
@@ -136,10 +226,15 @@ public final class RSLauncherConfiguration
   {
     return Objects.hash(
       this.javaModules,
+      this.javaModuleDirectories,
+      this.javaModulesExpanded,
       this.osgiBundles,
+      this.osgiBundleDirectories,
+      this.osgiBundlesExpanded,
       this.parameters,
       this.runtimeDirectory,
-      this.sunburstPackages
+      this.sunburstPackages,
+      this.startLevel
     );
   }
 
@@ -153,21 +248,72 @@ public final class RSLauncherConfiguration
   }
 
   /**
+   * The Java modules that will be installed. These are the individually
+   * specified modules, followed by the modules found in each module
+   * directory if the configuration has been {@link #expand() expanded}.
+   *
    * @return The list of Java modules that will be installed
    */
 
   public List<Path> javaModules()
   {
-    return this.javaModules;
+    return this.javaModulesExpanded;
+  }
+
+  /**
+   * @return The directories that are scanned for Java modules
+   */
+
+  public List<RSLauncherDirectory> javaModuleDirectories()
+  {
+    return this.javaModuleDirectories;
   }
 
   /**
+   * The OSGi bundles that will be installed. These are the individually
+   * specified bundles, followed by the bundles found in each bundle
+   * directory if the configuration has been {@link #expand() expanded}.
+   *
    * @return The list of OSGi bundles that will be installed
    */
 
   public List<Path> osgiBundles()
   {
-    return this.osgiBundles;
+    return this.osgiBundlesExpanded.stream()
+      .map(RSLauncherBundle::file)
+      .toList();
+  }
+
+  /**
+   * @return The list of OSGi bundles that will be installed, along with
+   * their start levels and activation policies
+   */
+
+  public List<RSLauncherBundle> osgiBundleEntries()
+  {
+    return this.osgiBundlesExpanded;
+  }
+
+  /**
+   * @return The directories that are scanned for OSGi bundles
+   */
+
+  public List<RSLauncherDirectory> osgiBundleDirectories()
+  {
+    return this.osgiBundleDirectories;
+  }
+
+  /**
+   * The beginning start level of the framework. If no level is specified,
+   * launchers use the highest start level of any configured bundle, so that
+   * every configured bundle is started.
+   *
+   * @return The beginning start level of the framework
+   */
+
+  public OptionalInt startLevel()
+  {
+    return this.startLevel;
   }
 
   /**
@@ -179,6 +325,71 @@ public final class RSLauncherConfiguration
     return this.parameters;
   }
 
+  /**
+   * Scan each module and bundle directory, and return a configuration whose
+   * modules and bundles are the individually specified files, followed by
+   * the files found in each directory. Files found in a directory that are
+   * already present in the configuration are not added again. Each call
+   * scans the directories again, starting from the individually specified
+   * files, so the result reflects the current contents of the directories.
+   * Configurations returned by {@link #parseFile(Path)} and
+   * {@link #parseProperties(FileSystem, Properties)} are already expanded.
+   *
+   * @return The expanded configuration
+   *
+   * @throws IOException If any directory cannot be scanned; all failures are
+   *                     reported together
+   */
+
+  public RSLauncherConfiguration expand()
+    throws IOException
+  {
+    final var exceptions =
+      new ExceptionTracker<IOException>();
+
+    final var modules = new LinkedHashSet<>(this.javaModules);
+    for (final var directory : this.javaModuleDirectories) {
+      try {
+        modules.addAll(directory.scan());
+      } catch (final IOException e) {
+        exceptions.addException(e);
+      }
+    }
+
+    final var bundlePaths = new HashSet<Path>();
+    final var bundles = new ArrayList<RSLauncherBundle>();
+    for (final var bundle : this.osgiBundles) {
+      bundlePaths.add(bundle.file());
+      bundles.add(bundle);
+    }
+    for (final var directory : this.osgiBundleDirectories) {
+      try {
+        for (final var file : directory.scan()) {
+          if (bundlePaths.add(file)) {
+            bundles.add(RSLauncherBundle.of(file));
+          }
+        }
+      } catch (final IOException e) {
+        exceptions.addException(e);
+      }
+    }
+
+    exceptions.throwIfNecessary();
+
+    return new RSLauncherConfiguration(
+      this.runtimeDirectory,
+      this.javaModules,
+      this.javaModuleDirectories,
+      List.copyOf(modules),
+      this.osgiBundles,
+      this.osgiBundleDirectories,
+      List.copyOf(bundles),
+      this.sunburstPackages,
+      this.parameters,
+      this.startLevel
+    );
+  }
+
   /**
    * Parse the given file.
    *
@@ -193,13 +404,33 @@ public final class RSLauncherConfiguration
     final Path file)
     throws IOException
   {
-    final var filesystem =
-      file.getFileSystem();
-
     final var properties = new Properties();
     try (var stream = Files.newInputStream(file)) {
       properties.load(stream);
     }
+    return parseProperties(file.getFileSystem(), properties);
+  }
+
+  /**
+   * Parse the given properties. Relative paths are resolved against the
+   * current working directory of the given filesystem, and module and
+   * bundle directories are scanned (see {@link #expand()}).
+   *
+   * @param filesystem The filesystem to which paths belong
+   * @param properties The properties
+   *
+   * @return A parsed configuration
+   *
+   * @throws IOException On errors
+   */
+
+  public static RSLauncherConfiguration parseProperties(
+    final FileSystem filesystem,
+    final Properties properties)
+    throws IOException
+  {
+    Objects.requireNonNull(filesystem, "filesystem");
+    Objects.requireNonNull(properties, "properties");
 
     final var exceptions =
       new ExceptionTracker<IOException>();
@@ -208,13 +439,56 @@ public final class RSLauncherConfiguration
       new Builder(filesystem.getPath(""));
 
     loadRuntimeDirectory(exceptions, filesystem, properties, builder);
+    loadStartLevel(exceptions, properties, builder);
     loadModules(filesystem, properties, builder);
-    loadBundles(filesystem, properties, builder);
+    loadBundles(exceptions, filesystem, properties, builder);
     loadSunbursts(properties, builder);
     loadParameters(properties, builder);
 
+    var configuration = builder.build();
+    try {
+      configuration = configuration.expand();
+    } catch (final IOException e) {
+      exceptions.addException(e);
+    }
+
     exceptions.throwIfNecessary();
-    return builder.build();
+    return configuration;
+  }
+
+  /**
+   * Find the keys that match the given pattern, ordered by the index
+   * captured by the pattern's first group.
+   */
+
+  private static SortedMap<Integer, String> indexedKeys(
+    final Properties properties,
+    final Pattern pattern)
+  {
+    final var keys = new TreeMap<Integer, String>();
+    for (final var name : properties.stringPropertyNames()) {
+      final var matcher = pattern.matcher(name);
+      if (matcher.matches()) {
+        keys.put(Integer.valueOf(matcher.group(1)), name);
+      }
+    }
+    return keys;
+  }
+
+  private static RSLauncherDirectory loadDirectory(
+    final FileSystem filesystem,
+    final Properties properties,
+    final String key)
+  {
+    return new RSLauncherDirectory(
+      filesystem.getPath(properties.getProperty(key))
+        .toAbsolutePath()
+        .normalize(),
+      properties.getProperty(
+        key + ".include", RSLauncherDirectory.DEFAULT_INCLUDE),
+      Optional.ofNullable(properties.getProperty(key + ".exclude")),
+      Boolean.parseBoolean(properties.getProperty(key + ".recursive"))
+    );
   }
 
   private static void loadParameters(
@@ -249,6 +523,24 @@ public final class RSLauncherConfiguration
     }
   }
 
+  private static void loadStartLevel(
+    final ExceptionTracker<IOException> exceptions,
+    final Properties properties,
+    final Builder builder)
+  {
+    final var value = properties.getProperty("rivershark.startLevel");
+    if (value == null) {
+      return;
+    }
+
+    try {
+      builder.setStartLevel(Integer.parseInt(value.trim()));
+    } catch (final IllegalArgumentException e) {
+      exceptions.addException(
+        new IOException("rivershark.startLevel: " + e.getMessage(), e));
+    }
+  }
+
   private static Map<String, String> toMap(
     final Properties properties)
   {
@@ -266,65 +558,87 @@ public final class RSLauncherConfiguration
     final Properties properties,
     final Builder builder)
   {
-    for (int index = 0; index < Integer.MAX_VALUE; ++index) {
-      final var key =
-        String.format("rivershark.modules.%d", Integer.valueOf(index));
-      final var value =
-        properties.getProperty(key);
-
-      if (value == null) {
-        break;
-      }
-
+    for (final var key : indexedKeys(properties, MODULE_KEY).values()) {
       final var file =
-        filesystem.getPath(value)
+        filesystem.getPath(properties.getProperty(key))
           .toAbsolutePath()
           .normalize();
 
       builder.addJavaModule(file);
     }
+
+    final var directoryKeys =
+      indexedKeys(properties, MODULE_DIRECTORY_KEY).values();
+    for (final var key : directoryKeys) {
+      builder.addJavaModuleDirectory(
+        loadDirectory(filesystem, properties, key));
+    }
   }
 
   private static void loadSunbursts(
     final Properties properties,
     final Builder builder)
   {
-    for (int index = 0; index < Integer.MAX_VALUE; ++index) {
-      final var key =
-        String.format("rivershark.sunburst.%d", Integer.valueOf(index));
-      final var value =
-        properties.getProperty(key);
-
-      if (value == null) {
-        break;
-      }
-
-      builder.addSunburstPackage(SBPackageIdentifier.parse(value));
+    for (final var key : indexedKeys(properties, SUNBURST_KEY).values()) {
+      builder.addSunburstPackage(
+        SBPackageIdentifier.parse(properties.getProperty(key)));
     }
   }
 
   private static void loadBundles(
+    final ExceptionTracker<IOException> exceptions,
     final FileSystem filesystem,
     final Properties properties,
     final Builder builder)
   {
-    for (int index = 0; index < Integer.MAX_VALUE; ++index) {
-      final var key =
-        String.format("rivershark.bundles.%d", Integer.valueOf(index));
-      final var value =
-        properties.getProperty(key);
-
-      if (value == null) {
-        break;
-      }
-
+    for (final var key : indexedKeys(properties, BUNDLE_KEY).values()) {
       final var file =
-        filesystem.getPath(value)
+        filesystem.getPath(properties.getProperty(key))
           .toAbsolutePath()
           .normalize();
 
-      builder.addOSGIBundle(file);
+      try {
+        builder.addOSGIBundle(
+          new RSLauncherBundle(
+            file,
+            loadBundleStartLevel(properties, key),
+            loadBundleActivationPolicy(properties, key)
+          )
+        );
+      } catch (final IllegalArgumentException e) {
+        exceptions.addException(
+          new IOException("%s: %s".formatted(key, e.getMessage()), e));
+      }
+    }
+
+    final var directoryKeys =
+      indexedKeys(properties, BUNDLE_DIRECTORY_KEY).values();
+    for (final var key : directoryKeys) {
+      builder.addOSGIBundleDirectory(
+        loadDirectory(filesystem, properties, key));
+    }
+  }
+
+  private static OptionalInt loadBundleStartLevel(
+    final Properties properties,
+    final String key)
+  {
+    final var value = properties.getProperty(key + ".startLevel");
+    if (value == null) {
+      return OptionalInt.empty();
+    }
+    return OptionalInt.of(Integer.parseInt(value.trim()));
+  }
+
+  private static RSLauncherActivationPolicy loadBundleActivationPolicy(
+    final Properties properties,
+    final String key)
+  {
+    final var value = properties.getProperty(key + ".activationPolicy");
+    if (value == null) {
+      return RSLauncherActivationPolicy.DECLARED;
     }
+    return RSLauncherActivationPolicy.ofConfigurationName(value);
   }
 
   /**
@@ -348,10 +662,13 @@ public final class RSLauncherConfiguration
   public static final class Builder
   {
     private final ArrayList<Path> javaModules;
-    private final ArrayList<Path> osgiBundles;
+    private final ArrayList<RSLauncherDirectory> javaModuleDirectories;
+    private final ArrayList<RSLauncherBundle> osgiBundles;
+    private final ArrayList<RSLauncherDirectory> osgiBundleDirectories;
     private final HashMap<String, String> parameters;
     private final HashSet<SBPackageIdentifier> sunburstPackages;
     private Path runtimeDirectory;
+    private OptionalInt startLevel;
 
     /**
      * Create a new builder.
@@ -367,9 +684,12 @@ public final class RSLauncherConfiguration
           .toAbsolutePath();
 
       this.javaModules = new ArrayList<>();
+      this.javaModuleDirectories = new ArrayList<>();
       this.osgiBundles = new ArrayList<>();
+      this.osgiBundleDirectories = new ArrayList<>();
       this.sunburstPackages = new HashSet<>();
       this.parameters = new HashMap<>();
+      this.startLevel = OptionalInt.empty();
     }
 
     /**
@@ -437,14 +757,78 @@ public final class RSLauncherConfiguration
     public Builder addOSGIBundle(
       final Path path)
     {
+      return this.addOSGIBundle(RSLauncherBundle.of(path));
+    }
+
+    /**
+     * Add an OSGi bundle with a start level and activation policy.
+     *
+     * @param bundle The bundle
+     *
+     * @return this
+     */
+
+    public Builder addOSGIBundle(
+      final RSLauncherBundle bundle)
+    {
+      Objects.requireNonNull(bundle, "bundle");
+
       this.osgiBundles.add(
-        Objects.requireNonNull(path, "path")
-          .toAbsolutePath()
+        new RSLauncherBundle(
+          bundle.file().toAbsolutePath(),
+          bundle.startLevel(),
+          bundle.activationPolicy()
+        )
       );
       return this;
     }
 
 
+    /**
+     * Add a directory that will be scanned for Java modules when the
+     * configuration is {@link RSLauncherConfiguration#expand() expanded}.
+     *
+     * @param directory The directory
+     *
+     * @return this
+     */
+
+    public Builder addJavaModuleDirectory(
+      final RSLauncherDirectory directory)
+    {
+      this.javaModuleDirectories.add(absolute(directory));
+      return this;
+    }
+
+    /**
+     * Add a directory that will be scanned for OSGi bundles when the
+     * configuration is {@link RSLauncherConfiguration#expand() expanded}.
+     * The bundles found have the default start level and activation policy.
+     *
+     * @param directory The directory
+     *
+     * @return this
+     */
+
+    public Builder addOSGIBundleDirectory(
+      final RSLauncherDirectory directory)
+    {
+      this.osgiBundleDirectories.add(absolute(directory));
+      return this;
+    }
+
+    private static RSLauncherDirectory absolute(
+      final RSLauncherDirectory directory)
+    {
+      Objects.requireNonNull(directory, "directory");
+      return new RSLauncherDirectory(
+        directory.directory().toAbsolutePath(),
+        directory.include(),
+        directory.exclude(),
+        directory.recursive()
+      );
+    }
+
     /**
      * Add a sunburst package.
      *
@@ -463,6 +847,10 @@ public final class RSLauncherConfiguration
     }
 
     /**
+     * Build a configuration. This performs no I/O: module and bundle
+     * directories are recorded, but are not scanned until
+     * {@link RSLauncherConfiguration#expand()} is called.
+     *
      * @return The configuration
      */
 
@@ -471,12 +859,37 @@ public final class RSLauncherConfiguration
       return new RSLauncherConfiguration(
         this.runtimeDirectory,
         List.copyOf(this.javaModules),
+        List.copyOf(this.javaModuleDirectories),
+        List.copyOf(new LinkedHashSet<>(this.javaModules)),
+        List.copyOf(this.osgiBundles),
+        List.copyOf(this.osgiBundleDirectories),
         List.copyOf(this.osgiBundles),
         Set.copyOf(this.sunburstPackages),
-        Map.copyOf(this.parameters)
+        Map.copyOf(this.parameters),
+        this.startLevel
       );
     }
 
+    /**
+     * Set the beginning start level of the framework.
+     *
+     * @param level The start level
+     *
+     * @return this
+     */
+
+    public Builder setStartLevel(
+      final int level)
+    {
+      if (level < 1) {
+        throw new IllegalArgumentException(
+          "Start level %d must be at least 1"
+            .formatted(Integer.valueOf(level)));
+      }
+      this.startLevel = OptionalInt.of(level);
+      return this;
+    }
+
     /**
      * Set the run-time directory.
      *
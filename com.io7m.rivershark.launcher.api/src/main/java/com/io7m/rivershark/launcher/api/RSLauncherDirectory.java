@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A directory of files that will be installed by the launcher. A file is
+ * selected if its name or its path relative to the directory matches the
+ * include glob, and does not match the exclude glob.
+ *
+ * @param directory The directory
+ * @param include   The include glob
+ * @param exclude   The exclude glob, if any
+ * @param recursive {@code true} if subdirectories are searched
+ */
+
+public record RSLauncherDirectory(
+  Path directory,
+  String include,
+  Optional<String> exclude,
+  boolean recursive)
+{
+  /**
+   * The include glob used if none is specified.
+   */
+
+  public static final String DEFAULT_INCLUDE = "*.jar";
+
+  /**
+   * A directory of files that will be installed by the launcher.
+   *
+   * @param directory The directory
+   * @param include   The include glob
+   * @param exclude   The exclude glob, if any
+   * @param recursive {@code true} if subdirectories are searched
+   */
+
+  public RSLauncherDirectory
+  {
+    Objects.requireNonNull(directory, "directory");
+    Objects.requireNonNull(include, "include");
+    Objects.requireNonNull(exclude, "exclude");
+  }
+
+  /**
+   * A directory whose jar files are selected, non-recursively.
+   *
+   * @param directory The directory
+   *
+   * @return A directory
+   */
+
+  public static RSLauncherDirectory of(
+    final Path directory)
+  {
+    return new RSLauncherDirectory(
+      directory, DEFAULT_INCLUDE, Optional.empty(), false);
+  }
+
+  /**
+   * Scan the directory. The directory is read once, and the selected files
+   * are returned sorted by their path relative to the directory, so that
+   * the result does not depend on the order in which the filesystem
+   * returns entries.
+   *
+   * @return The absolute paths of the selected files
+   *
+   * @throws IOException On errors
+   */
+
+  public List<Path> scan()
+    throws IOException
+  {
+    final var base =
+      this.directory.toAbsolutePath().normalize();
+
+    if (!Files.isDirectory(base)) {
+      throw new IOException("%s: Not a directory".formatted(base));
+    }
+
+    final var filesystem = base.getFileSystem();
+    final var includes =
+      filesystem.getPathMatcher("glob:" + this.include);
+    final var excludes =
+      this.exclude.map(e -> filesystem.getPathMatcher("glob:" + e));
+
+    final var depth = this.recursive ? Integer.MAX_VALUE : 1;
+    try (var stream = Files.walk(base, depth)) {
+      return stream
+        .filter(Files::isRegularFile)
+        .map(base::relativize)
+        .filter(p -> matches(includes, p))
+        .filter(p -> excludes.map(m -> !matches(m, p)).orElse(Boolean.TRUE))
+        .sorted()
+        .map(base::resolve)
+        .toList();
+    }
+  }
+
+  private static boolean matches(
+    final PathMatcher matcher,
+    final Path relative)
+  {
+    return matcher.matches(relative)
+           || matcher.matches(relative.getFileName());
+  }
+}
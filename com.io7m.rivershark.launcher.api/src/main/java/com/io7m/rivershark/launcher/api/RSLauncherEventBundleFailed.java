@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A bundle could not be installed or started.
+ *
+ * @param time  The time at which the failure occurred
+ * @param name  The bundle symbolic name and version, or its location if the
+ *              bundle could not be installed
+ * @param error The error
+ */
+
+public record RSLauncherEventBundleFailed(
+  Instant time,
+  String name,
+  Throwable error)
+  implements RSLauncherEventType
+{
+  /**
+   * A bundle could not be installed or started.
+   *
+   * @param time  The time at which the failure occurred
+   * @param name  The bundle symbolic name and version, or its location
+   * @param error The error
+   */
+
+  public RSLauncherEventBundleFailed
+  {
+    Objects.requireNonNull(time, "time");
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(error, "error");
+  }
+}
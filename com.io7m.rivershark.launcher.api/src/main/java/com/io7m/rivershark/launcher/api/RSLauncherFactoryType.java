@@ -17,7 +17,11 @@
 
 package com.io7m.rivershark.launcher.api;
 
+import com.io7m.rivershark.product.RSProduct;
+
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Functions to obtain launchers.
@@ -40,21 +44,75 @@ public interface RSLauncherFactoryType
     throws Exception;
 
   /**
-   * Create a launcher using the given configuration file.
+   * Create a launcher using the given compiled launch plan.
+   *
+   * @param plan The launch plan
+   *
+   * @return A launcher
+   *
+   * @throws Exception On errors
+   */
+
+  default RSLauncherType createFromPlan(
+    final RSLaunchPlan plan)
+    throws Exception
+  {
+    return this.create(plan.configuration());
+  }
+
+  /**
+   * Create a launcher using the given configuration file. The file is
+   * compiled to a launch plan, which is cached in the runtime directory.
    *
    * @param configurationFile The configuration file
    *
    * @return A launcher
    *
    * @throws Exception On errors
+   *
+   * @see RSLaunchPlan#loadOrCompile(Path)
    */
 
   default RSLauncherType createFromFile(
     final Path configurationFile)
     throws Exception
   {
-    return this.create(
-      RSLauncherConfiguration.parseFile(configurationFile)
+    return this.createFromPlan(
+      RSLaunchPlan.loadOrCompile(configurationFile)
+    );
+  }
+
+  /**
+   * Create a launcher for the given product. The product's artifacts are
+   * resolved against the given repositories and compiled to a launch plan,
+   * which is cached in the runtime directory.
+   *
+   * @param product          The product
+   * @param repositories     The repositories, in order of preference
+   * @param runtimeDirectory The runtime directory
+   * @param parameters       The extra configuration parameters
+   *
+   * @return A launcher
+   *
+   * @throws Exception On errors
+   *
+   * @see RSLauncherProducts#resolve(RSProduct, List, Path, Map)
+   */
+
+  default RSLauncherType createFromProduct(
+    final RSProduct product,
+    final List<RSLauncherRepository> repositories,
+    final Path runtimeDirectory,
+    final Map<String, String> parameters)
+    throws Exception
+  {
+    return this.createFromPlan(
+      RSLauncherProducts.resolve(
+        product,
+        repositories,
+        runtimeDirectory,
+        parameters
+      )
     );
   }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A snapshot of the metrics accumulated by a launcher.
+ *
+ * @param bundlesInstalled  The number of bundles installed from their
+ *                          files
+ * @param bundlesRestored   The number of bundles restored from the
+ *                          framework storage of a previous run; these are
+ *                          not counted as installed, and take no install
+ *                          time
+ * @param bundlesStarted    The number of bundles started
+ * @param bundlesFailed     The number of bundles that failed to install or
+ *                          start
+ * @param installTime       The cumulative time spent installing bundles
+ * @param startTime         The cumulative time spent starting bundles
+ * @param launchTime        The total time taken to launch, or the time
+ *                          elapsed so far if the launch has not completed
+ * @param ready             {@code true} if the launch has completed and the
+ *                          framework has not begun stopping
+ */
+
+public record RSLauncherMetrics(
+  long bundlesInstalled,
+  long bundlesRestored,
+  long bundlesStarted,
+  long bundlesFailed,
+  Duration installTime,
+  Duration startTime,
+  Duration launchTime,
+  boolean ready)
+{
+  /**
+   * A snapshot of the metrics accumulated by a launcher.
+   *
+   * @param bundlesInstalled  The number of bundles installed
+   * @param bundlesRestored   The number of bundles restored from storage
+   * @param bundlesStarted    The number of bundles started
+   * @param bundlesFailed     The number of bundles that failed
+   * @param installTime       The cumulative time spent installing bundles
+   * @param startTime         The cumulative time spent starting bundles
+   * @param launchTime        The total time taken to launch
+   * @param ready             {@code true} if the launcher is ready
+   */
+
+  public RSLauncherMetrics
+  {
+    Objects.requireNonNull(installTime, "installTime");
+    Objects.requireNonNull(startTime, "startTime");
+    Objects.requireNonNull(launchTime, "launchTime");
+  }
+}
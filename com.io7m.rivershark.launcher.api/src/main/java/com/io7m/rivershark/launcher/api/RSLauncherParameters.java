@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.rivershark.launcher.api;
+
+import java.util.Objects;
+
+/**
+ * The names of the configuration parameters ({@code rivershark.parameters.*})
+ * that are interpreted by launchers.
+ */
+
+public final class RSLauncherParameters
+{
+  /**
+   * If {@code true}, reuse the framework storage from the previous run when
+   * the configuration and the content of every configured file are
+   * unchanged, rather than starting with empty storage.
+   */
+
+  public static final String WARM_START = "warmStart";
+
+  /**
+   * If set to a value greater than zero, install bundles concurrently, and
+   * start them in dependency order using at most the given number of
+   * threads. Bundles that do not depend on each other are started
+   * concurrently.
+   */
+
+  public static final String PARALLEL_START = "parallelStart";
+
+  /**
+   * If {@code true}, resolve all application modules together into a single
+   * module layer, rather than creating one module layer per module.
+   */
+
+  public static final String SINGLE_LAYER = "singleLayer";
+
+  /**
+   * If {@code true}, write a timeline of the launch steps to
+   * {@code startup-trace.json} in the runtime directory, in the Chrome trace
+   * event format. The steps are emitted as JFR events
+   * ({@code com.io7m.rivershark.launcher.Step}) regardless of this
+   * parameter.
+   */
+
+  public static final String PROFILE = "profile";
+
+  private RSLauncherParameters()
+  {
+
+  }
+
+  /**
+   * @param configuration The configuration
+   * @param name          The parameter name
+   *
+   * @return {@code true} if the parameter is present and set to {@code true}
+   */
+
+  public static boolean isEnabled(
+    final RSLauncherConfiguration configuration,
+    final String name)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(name, "name");
+
+    return Boolean.parseBoolean(configuration.parameters().get(name));
+  }
+
+  /**
+   * @param configuration The configuration
+   * @param name          The parameter name
+   * @param defaultValue  The value used if the parameter is not present
+   *
+   * @return The integer value of the parameter
+   *
+   * @throws NumberFormatException If the parameter is not an integer
+   */
+
+  public static int integerOf(
+    final RSLauncherConfiguration configuration,
+    final String name,
+    final int defaultValue)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(name, "name");
+
+    final var value = configuration.parameters().get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    return Integer.parseInt(value.trim());
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+/**
+ * The phases of launching a framework.
+ */
+
+public enum RSLauncherPhase
+{
+  /**
+   * The configured modules and bundles are being checked before the
+   * framework is created.
+   */
+
+  VERIFY_INPUTS,
+
+  /**
+   * The framework is being created and initialized.
+   */
+
+  INITIALIZE_FRAMEWORK,
+
+  /**
+   * JDK and application JPMS modules are being installed.
+   */
+
+  INSTALL_MODULES,
+
+  /**
+   * OSGi bundles are being installed.
+   */
+
+  INSTALL_BUNDLES,
+
+  /**
+   * OSGi bundles are being resolved.
+   */
+
+  RESOLVE_BUNDLES,
+
+  /**
+   * OSGi bundles are being started. Depending on the launcher, bundle
+   * activation may instead happen while the framework is being started.
+   */
+
+  START_BUNDLES,
+
+  /**
+   * The framework is being started.
+   */
+
+  START_FRAMEWORK
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+import com.io7m.jdeferthrow.core.ExceptionTracker;
+import com.io7m.rivershark.product.RSArtifactDependencyJPMS;
+import com.io7m.rivershark.product.RSArtifactDependencyOSGi;
+import com.io7m.rivershark.product.RSArtifactDependencySunburst;
+import com.io7m.rivershark.product.RSHash;
+import com.io7m.rivershark.product.RSProduct;
+import com.io7m.sunburst.model.SBPackageIdentifier;
+import com.io7m.verona.core.Version;
+import com.io7m.verona.core.VersionException;
+import com.io7m.verona.core.VersionParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Functions to resolve products against local repositories and compile
+ * them to launch plans.
+ */
+
+public final class RSLauncherProducts
+{
+  private RSLauncherProducts()
+  {
+
+  }
+
+  /**
+   * Resolve the given product against the given repositories and compile the
+   * result to a launch plan. Repositories are consulted in order. OBR
+   * repositories can only resolve artifacts that have a hash (see
+   * {@link RSLauncherRepositoryLayout#OBR}). Every artifact that has a hash
+   * must match that hash, and all artifacts are hashed in parallel. The plan is cached in the runtime directory so that
+   * subsequent launches of an unchanged product with unchanged artifacts do
+   * not need to resolve or hash anything.
+   *
+   * @param product          The product
+   * @param repositories     The repositories
+   * @param runtimeDirectory The runtime directory
+   * @param parameters       The extra configuration parameters
+   *
+   * @return A launch plan
+   *
+   * @throws IOException On errors, including every resolution failure
+   */
+
+  public static RSLaunchPlan resolve(
+    final RSProduct product,
+    final List<RSLauncherRepository> repositories,
+    final Path runtimeDirectory,
+    final Map<String, String> parameters)
+    throws IOException
+  {
+    Objects.requireNonNull(product, "product");
+    Objects.requireNonNull(repositories, "repositories");
+    Objects.requireNonNull(runtimeDirectory, "runtimeDirectory");
+    Objects.requireNonNull(parameters, "parameters");
+
+    final var digest =
+      digestOf(product, repositories, runtimeDirectory, parameters);
+
+    final var cacheFile =
+      runtimeDirectory.toAbsolutePath().resolve(RSLaunchPlan.CACHE_FILE_NAME);
+    final var cached =
+      RSLaunchPlanCache.readEntries(cacheFile, digest)
+        .flatMap(entries -> {
+          return planOf(
+            digest,
+            builderOf(product, runtimeDirectory, parameters),
+            entries
+          );
+        });
+
+    if (cached.isPresent() && cached.get().isUnchanged()) {
+      return cached.get();
+    }
+
+    final var builder =
+      builderOf(product, runtimeDirectory, parameters);
+    final var expected =
+      resolveInto(product, repositories, builder);
+    final var plan =
+      RSLaunchPlan.compile(digest, builder.build(), expected);
+
+    RSLaunchPlanCache.write(cacheFile, plan);
+    return plan;
+  }
+
+  private static RSLauncherConfiguration.Builder builderOf(
+    final RSProduct product,
+    final Path runtimeDirectory,
+    final Map<String, String> parameters)
+  {
+    final var builder =
+      RSLauncherConfiguration.builder(runtimeDirectory)
+        .addParameters(parameters);
+
+    for (final var dependency : product.artifactDependencies()) {
+      if (dependency instanceof final RSArtifactDependencySunburst sunburst) {
+        builder.addSunburstPackage(
+          new SBPackageIdentifier(sunburst.name(), sunburst.version()));
+      }
+    }
+    return builder;
+  }
+
+  private static Optional<RSLaunchPlan> planOf(
+    final String digest,
+    final RSLauncherConfiguration.Builder builder,
+    final RSLaunchPlanCache.Entries entries)
+  {
+    for (final var module : entries.modules()) {
+      builder.addJavaModule(module.file());
+    }
+    for (final var bundle : entries.bundles()) {
+      builder.addOSGIBundle(bundle.file().file());
+    }
+
+    try {
+      return Optional.of(new RSLaunchPlan(
+        digest,
+        builder.build(),
+        entries.modules(),
+        entries.bundles()
+      ));
+    } catch (final IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static Map<Path, String> resolveInto(
+    final RSProduct product,
+    final List<RSLauncherRepository> repositories,
+    final RSLauncherConfiguration.Builder builder)
+    throws IOException
+  {
+    final var exceptions =
+      new ExceptionTracker<IOException>();
+    final var indexes =
+      new HashMap<Path, Map<String, Path>>();
+    final var expected =
+      new HashMap<Path, String>();
+
+    for (final var dependency : product.artifactDependencies()) {
+      try {
+        switch (dependency) {
+          case final RSArtifactDependencyJPMS m -> {
+            final var file = locate(
+              repositories,
+              indexes,
+              m.group(),
+              m.artifact(),
+              m.version(),
+              m.hash()
+            );
+            builder.addJavaModule(file);
+            m.hash().ifPresent(h -> expected.put(file, hexOf(h)));
+          }
+          case final RSArtifactDependencyOSGi b -> {
+            final var file = locate(
+              repositories,
+              indexes,
+              b.group(),
+              b.artifact(),
+              b.version(),
+              b.hash()
+            );
+            builder.addOSGIBundle(file);
+            b.hash().ifPresent(h -> expected.put(file, hexOf(h)));
+          }
+          case final RSArtifactDependencySunburst s -> {
+            // Sunburst packages are resolved by the launcher at run time.
+          }
+        }
+      } catch (final IOException e) {
+        exceptions.addException(e);
+      }
+    }
+
+    exceptions.throwIfNecessary();
+    return expected;
+  }
+
+  private static Path locate(
+    final List<RSLauncherRepository> repositories,
+    final Map<Path, Map<String, Path>> indexes,
+    final String group,
+    final String artifact,
+    final Version version,
+    final Optional<RSHash> hash)
+    throws IOException
+  {
+    for (final var repository : repositories) {
+      final var directory = repository.directory();
+      final Path candidate = switch (repository.layout()) {
+        case MAVEN -> mavenArtifactOf(directory, group, artifact, version);
+        case OBR -> hash.map(h -> obrIndexOf(indexes, directory).get(hexOf(h)))
+          .orElse(null);
+      };
+
+      if (candidate != null && Files.isRegularFile(candidate)) {
+        return candidate.toAbsolutePath().normalize();
+      }
+    }
+
+    final var obrSkipped =
+      hash.isEmpty()
+      && repositories.stream()
+        .anyMatch(r -> r.layout() == RSLauncherRepositoryLayout.OBR);
+
+    throw new IOException(
+      "Could not resolve %s:%s:%s in any repository %s%s"
+        .formatted(
+          group,
+          artifact,
+          version,
+          repositories,
+          obrSkipped
+            ? " (OBR repositories can only resolve artifacts that have a hash)"
+            : ""));
+  }
+
+  /**
+   * Find an artifact in a Maven repository. Product versions are parsed
+   * leniently from Maven versions, and the parsed form does not necessarily
+   * match the original (Maven's {@code 1.0-SNAPSHOT} is {@code 1.0.0-SNAPSHOT},
+   * for example). The version directory with the version's own name is tried
+   * first, and otherwise the first version directory whose name parses to
+   * the same version is used.
+   */
+
+  private static Path mavenArtifactOf(
+    final Path directory,
+    final String group,
+    final String artifact,
+    final Version version)
+    throws IOException
+  {
+    var path = directory;
+    for (final var segment : group.split("\\.")) {
+      path = path.resolve(segment);
+    }
+    path = path.resolve(artifact);
+
+    final var exact = path.resolve(version.toString());
+    if (Files.isDirectory(exact)) {
+      return exact.resolve("%s-%s.jar".formatted(artifact, version));
+    }
+    if (!Files.isDirectory(path)) {
+      return null;
+    }
+
+    try (var versions = Files.list(path)) {
+      for (final var candidate : versions.sorted().toList()) {
+        final var name = candidate.getFileName().toString();
+        if (Files.isDirectory(candidate) && isVersion(name, version)) {
+          return candidate.resolve("%s-%s.jar".formatted(artifact, name));
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean isVersion(
+    final String text,
+    final Version version)
+  {
+    try {
+      return VersionParser.parseLax(text).equals(version);
+    } catch (final VersionException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Index the bundles of an OBR repository by the hashes recorded in their
+   * {@code .sha256} files. Each repository is indexed at most once.
+   */
+
+  private static Map<String, Path> obrIndexOf(
+    final Map<Path, Map<String, Path>> indexes,
+    final Path directory)
+  {
+    return indexes.computeIfAbsent(directory, d -> {
+      final var index = new HashMap<String, Path>();
+      final var bundles = d.resolve("bundles");
+      if (!Files.isDirectory(bundles)) {
+        return index;
+      }
+
+      try (var files = Files.list(bundles)) {
+        for (final var file : files.toList()) {
+          final var name = file.getFileName().toString();
+          if (name.endsWith(".jar.sha256")) {
+            final var jar = file.resolveSibling(
+              name.substring(0, name.length() - ".sha256".length()));
+            index.put(
+              Files.readString(file).trim().toLowerCase(Locale.ROOT),
+              jar
+            );
+          }
+        }
+      } catch (final IOException e) {
+        // An unreadable index resolves nothing.
+      }
+      return index;
+    });
+  }
+
+  private static String hexOf(
+    final RSHash hash)
+  {
+    return switch (hash.algorithm()) {
+      case SHA2_256 -> HexFormat.of().formatHex(hash.value());
+    };
+  }
+
+  private static String digestOf(
+    final RSProduct product,
+    final List<RSLauncherRepository> repositories,
+    final Path runtimeDirectory,
+    final Map<String, String> parameters)
+  {
+    final var text = new StringBuilder(256);
+    text.append("product ")
+      .append(product.id())
+      .append(' ')
+      .append(product.version())
+      .append('\n');
+
+    for (final var dependency : product.artifactDependencies()) {
+      final var coordinates = switch (dependency) {
+        case final RSArtifactDependencyJPMS m ->
+          "jpms %s:%s".formatted(m.group(), m.artifact());
+        case final RSArtifactDependencyOSGi b ->
+          "osgi %s:%s".formatted(b.group(), b.artifact());
+        case final RSArtifactDependencySunburst s ->
+          "sunburst %s".formatted(s.name());
+      };
+      text.append(coordinates)
+        .append(' ')
+        .append(dependency.version())
+        .append(' ')
+        .append(dependency.hash().map(RSHash::toString).orElse("-"))
+        .append('\n');
+    }
+
+    for (final var repository : repositories) {
+      text.append("repository ")
+        .append(repository.layout())
+        .append(' ')
+        .append(repository.directory())
+        .append('\n');
+    }
+
+    text.append("runtime ")
+      .append(runtimeDirectory.toAbsolutePath())
+      .append('\n');
+
+    for (final var entry : new TreeMap<>(parameters).entrySet()) {
+      text.append("parameter ")
+        .append(entry.getKey())
+        .append('=')
+        .append(entry.getValue())
+        .append('\n');
+    }
+
+    final var digest = RSLaunchPlan.createDigest();
+    return HexFormat.of().formatHex(
+      digest.digest(text.toString().getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.api;
+
+/**
+ * The layout of a local artifact repository.
+ */
+
+public enum RSLauncherRepositoryLayout
+{
+  /**
+   * An OBR repository, as maintained by the rivershark OBR tools. Bundles
+   * are held in a {@code bundles} directory, each with a {@code .sha256}
+   * file containing the hash of the bundle. Bundles are named after their
+   * OSGi identity rather than their Maven coordinates, so an artifact can
+   * only be found in an OBR repository by its hash; artifacts without a
+   * hash are never resolved from an OBR repository.
+   */
+
+  OBR,
+
+  /**
+   * A Maven repository layout, such as {@code ~/.m2/repository}.
+   * Artifacts are held at
+   * {@code group/as/path/artifact/version/artifact-version.jar}.
+   */
+
+  MAVEN
+}
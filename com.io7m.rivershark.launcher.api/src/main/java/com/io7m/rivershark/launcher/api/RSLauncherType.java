@@ -16,6 +16,9 @@
 
 package com.io7m.rivershark.launcher.api;
 
+import java.time.Duration;
+import java.util.Objects;
+
 /**
  * A launcher.
  */
@@ -49,4 +52,51 @@ public interface RSLauncherType extends AutoCloseable
 
   void waitForStop(long timeout)
     throws Exception;
+
+  /**
+   * Add a listener that will receive launcher events. Listeners should be
+   * added before {@link #run()} is called in order to observe the entire
+   * launch. The default implementation ignores the listener, as a launcher
+   * that does not publish events has nothing to deliver to it.
+   *
+   * @param listener The listener
+   */
+
+  default void addListener(
+    final RSLauncherListenerType listener)
+  {
+    Objects.requireNonNull(listener, "listener");
+  }
+
+  /**
+   * Remove a listener. The default implementation does nothing.
+   *
+   * @param listener The listener
+   */
+
+  default void removeListener(
+    final RSLauncherListenerType listener)
+  {
+    Objects.requireNonNull(listener, "listener");
+  }
+
+  /**
+   * @return A snapshot of the metrics accumulated by the launcher; the
+   * default implementation accumulates nothing, and reports zero for
+   * everything
+   */
+
+  default RSLauncherMetrics snapshot()
+  {
+    return new RSLauncherMetrics(
+      0L,
+      0L,
+      0L,
+      0L,
+      Duration.ZERO,
+      Duration.ZERO,
+      Duration.ZERO,
+      false
+    );
+  }
 }
@@ -25,6 +25,7 @@ module com.io7m.rivershark.launcher.api
 
   requires transitive com.io7m.jdeferthrow.core;
   requires transitive com.io7m.jproperties.core;
+  requires transitive com.io7m.rivershark.product;
   requires transitive com.io7m.sunburst.model;
 
   exports com.io7m.rivershark.launcher.api;
@@ -16,6 +16,7 @@
 
 package com.io7m.rivershark.launcher.felix;
 
+import com.io7m.rivershark.launcher.api.RSLaunchPlan;
 import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
 import com.io7m.rivershark.launcher.api.RSLauncherFactoryType;
 import com.io7m.rivershark.launcher.api.RSLauncherType;
@@ -47,4 +48,13 @@ public final class RSLaunchers
       Objects.requireNonNull(configuration, "configuration")
     );
   }
+
+  @Override
+  public RSLauncherType createFromPlan(
+    final RSLaunchPlan plan)
+  {
+    return RSFelix.createFromPlan(
+      Objects.requireNonNull(plan, "plan")
+    );
+  }
 }
@@ -17,27 +17,47 @@
 
 package com.io7m.rivershark.launcher.felix.internal;
 
+import com.io7m.rivershark.launcher.api.RSLaunchPlan;
+import com.io7m.rivershark.launcher.api.RSLauncherActivationPolicy;
+import com.io7m.rivershark.launcher.api.RSLauncherBundle;
 import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import com.io7m.rivershark.launcher.api.RSLauncherListenerType;
+import com.io7m.rivershark.launcher.api.RSLauncherMetrics;
+import com.io7m.rivershark.launcher.api.RSLauncherParameters;
+import com.io7m.rivershark.launcher.api.RSLauncherPhase;
 import com.io7m.rivershark.launcher.api.RSLauncherType;
 import org.apache.felix.atomos.Atomos;
 import org.apache.felix.atomos.AtomosContent;
+import org.apache.felix.atomos.AtomosLayer;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.launch.Framework;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+import org.osgi.framework.wiring.FrameworkWiring;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.apache.felix.atomos.Atomos.ATOMOS_CONTENT_INSTALL;
 import static org.apache.felix.atomos.Atomos.ATOMOS_CONTENT_START;
 import static org.apache.felix.atomos.AtomosLayer.LoaderType.SINGLE;
+import static org.osgi.framework.Constants.FRAMEWORK_BEGINNING_STARTLEVEL;
 import static org.osgi.framework.Constants.FRAMEWORK_STORAGE;
 import static org.osgi.framework.Constants.FRAMEWORK_STORAGE_CLEAN;
+import static org.osgi.framework.Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT;
 import static org.osgi.framework.Constants.FRAMEWORK_SYSTEMPACKAGES;
 
 /**
@@ -49,17 +69,28 @@ public final class RSFelix implements RSLauncherType
   private static final Logger LOG =
     LoggerFactory.getLogger(RSFelix.class);
 
+  private static final String APPLICATION_LAYER =
+    "com.io7m.rivershark.application";
+
   private final RSLauncherConfiguration configuration;
+  private final Optional<RSLaunchPlan> plan;
   private final AtomicBoolean started;
+  private final RSFelixEvents events;
   private Framework framework;
+  private RSFelixTimeline timeline;
 
   private RSFelix(
-    final RSLauncherConfiguration inConfiguration)
+    final RSLauncherConfiguration inConfiguration,
+    final Optional<RSLaunchPlan> inPlan)
   {
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
+    this.plan =
+      Objects.requireNonNull(inPlan, "plan");
 
     this.started = new AtomicBoolean(false);
+    this.events = new RSFelixEvents();
+    this.timeline = RSFelixTimeline.create(false);
   }
 
   /**
@@ -73,7 +104,22 @@ public final class RSFelix implements RSLauncherType
   public static RSLauncherType create(
     final RSLauncherConfiguration configuration)
   {
-    return new RSFelix(configuration);
+    return new RSFelix(configuration, Optional.empty());
+  }
+
+  /**
+   * Create a launcher from a compiled launch plan. The file hashes recorded
+   * in the plan are used rather than hashing files again.
+   *
+   * @param plan The launch plan
+   *
+   * @return A launcher
+   */
+
+  public static RSLauncherType createFromPlan(
+    final RSLaunchPlan plan)
+  {
+    return new RSFelix(plan.configuration(), Optional.of(plan));
   }
 
   @Override
@@ -83,109 +129,530 @@ public final class RSFelix implements RSLauncherType
     if (this.started.compareAndSet(false, true)) {
       LOG.debug("starting launcher");
 
-      final var configMap = new HashMap<String, String>();
-      configMap.put(
-        FRAMEWORK_STORAGE,
+      this.timeline =
+        RSFelixTimeline.create(
+          RSLauncherParameters.isEnabled(
+            this.configuration, RSLauncherParameters.PROFILE));
+
+      try {
+        try (var ignored = this.timeline.begin("launch", "launch")) {
+          this.launch();
+        }
+      } finally {
+        this.writeTimeline();
+      }
+    }
+  }
+
+  /**
+   * Write the timeline, if profiling is enabled. This happens even if the
+   * launch failed, and a failure to write the timeline does not mask the
+   * original failure.
+   */
+
+  private void writeTimeline()
+  {
+    if (this.timeline.isRecording()) {
+      final var file =
         this.configuration.runtimeDirectory()
           .toAbsolutePath()
-          .toString()
-      );
-      configMap.put(FRAMEWORK_STORAGE_CLEAN, "true");
-      configMap.put(FRAMEWORK_SYSTEMPACKAGES, "");
-      configMap.put(ATOMOS_CONTENT_INSTALL, "false");
-      configMap.put(ATOMOS_CONTENT_START, "false");
+          .resolve("startup-trace.json");
 
-      final var atomos =
-        Atomos.newAtomos(configMap);
+      LOG.debug("[profile] writing {}", file);
+      try {
+        this.timeline.write(file);
+      } catch (final IOException e) {
+        LOG.warn("[profile] unable to write {}: {}", file, e.getMessage());
+      }
+    }
+  }
 
-      final var bootLayer =
-        atomos.getBootLayer();
-      final var javaModules =
-        this.configuration.javaModules();
+  private void launch()
+    throws Exception
+  {
+    this.events.launchStarted();
 
-      this.framework = atomos.newFramework(configMap);
-      this.framework.init();
+    try (var phase = this.events.phase(RSLauncherPhase.VERIFY_INPUTS);
+         var ignored = this.timeline.begin("preflight", "verify")) {
+      RSFelixPreflight.check(this.configuration, this.plan, this.timeline);
+      phase.succeeded();
+    }
 
-      /*
-       * Filter modules that were discovered by Atomos. Limit the observable
-       * modules to only those present in the JDK/JRE.
-       */
+    final var runtimeDirectory =
+      this.configuration.runtimeDirectory().toAbsolutePath();
+    final var storage =
+      runtimeDirectory.resolve("framework");
+    final var fingerprintFile =
+      runtimeDirectory.resolve("framework.fingerprint");
+
+    final var fingerprint =
+      RSFelixFingerprint.warmStart(
+        this.configuration, this.plan, storage, fingerprintFile);
+
+    final var configMap = new HashMap<String, String>();
+    configMap.put(FRAMEWORK_STORAGE, storage.toString());
+    if (fingerprint.reuse()) {
+      LOG.debug("[storage] reusing framework storage {}", storage);
+    } else {
+      configMap.put(
+        FRAMEWORK_STORAGE_CLEAN, FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+    }
+    configMap.put(FRAMEWORK_SYSTEMPACKAGES, "");
+    configMap.put(
+      FRAMEWORK_BEGINNING_STARTLEVEL,
+      Integer.toString(this.beginningStartLevel()));
+    configMap.put(ATOMOS_CONTENT_INSTALL, "false");
+    configMap.put(ATOMOS_CONTENT_START, "false");
+
+    final var atomos =
+      this.initializeFramework(configMap);
+
+    final var tracker =
+      new RSFelixStartTracker(this.timeline);
+    final var context =
+      this.framework.getBundleContext();
+
+    context.addBundleListener(this.events);
+    context.addFrameworkListener(this.events);
+    context.addBundleListener(tracker);
+    try {
+      try (var phase = this.events.phase(RSLauncherPhase.INSTALL_MODULES)) {
+        final var bootLayer = atomos.getBootLayer();
+        this.installBootModules(bootLayer);
+        this.installJavaModules(atomos, bootLayer);
+        phase.succeeded();
+      }
+      this.installAndStart();
+    } finally {
+      context.removeBundleListener(tracker);
+    }
 
-      LOG.debug("[boot-jpms] installing modules");
+    if (fingerprint.value().isPresent()) {
+      RSFelixFingerprint.write(fingerprintFile, fingerprint.value().get());
+    }
+    this.events.launchFinished();
+  }
 
-      final var bootModules =
-        bootLayer.getAtomosContents()
-          .stream()
-          .filter(RSFelix::isExposedBootModule)
-          .sorted(Comparator.comparing(AtomosContent::getSymbolicName))
-          .toList();
+  private Atomos initializeFramework(
+    final Map<String, String> configMap)
+    throws Exception
+  {
+    try (var phase =
+           this.events.phase(RSLauncherPhase.INITIALIZE_FRAMEWORK)) {
+      final Atomos atomos;
+      try (var ignored = this.timeline.begin("atomos", "create")) {
+        atomos = Atomos.newAtomos(configMap);
+      }
 
-      for (final var content : bootModules) {
-        LOG.debug("[boot-jpms] install {}", content.getSymbolicName());
-        content.install();
+      try (var ignored = this.timeline.begin("framework", "init")) {
+        this.framework = atomos.newFramework(configMap);
+        this.framework.init();
       }
 
-      /*
-       * Install all the JPMS modules that aren't exposed by the JDK/JRE. This
-       * involves creating module layers for each module. The created layers
-       * are all children of the boot layer.
-       */
+      phase.succeeded();
+      return atomos;
+    }
+  }
+
+  private void installAndStart()
+    throws Exception
+  {
+    final var parallelism =
+      RSLauncherParameters.integerOf(
+        this.configuration, RSLauncherParameters.PARALLEL_START, 0);
+
+    if (parallelism > 0) {
+      this.installAndStartParallel(parallelism);
+    } else {
+      final var bundles = this.installBundles();
+      this.resolveBundles(bundles);
+      this.startBundles(bundles);
+      this.startFramework();
+    }
+  }
+
+  private void resolveBundles(
+    final List<Bundle> bundles)
+  {
+    LOG.debug("[application-osgi] resolving");
+    try (var phase = this.events.phase(RSLauncherPhase.RESOLVE_BUNDLES);
+         var ignored = this.timeline.begin("resolve", "bundles")) {
+      this.framework.adapt(FrameworkWiring.class)
+        .resolveBundles(bundles);
+      phase.succeeded();
+    }
+  }
 
-      LOG.debug("[application-jpms] installing");
+  private void startFramework()
+    throws Exception
+  {
+    LOG.debug("[osgi] starting framework");
+    try (var phase = this.events.phase(RSLauncherPhase.START_FRAMEWORK);
+         var ignored = this.timeline.begin("framework", "start")) {
+      this.framework.start();
+      phase.succeeded();
+    }
+  }
 
-      if (javaModules.isEmpty()) {
-        LOG.debug("[application-jpms] no application modules required");
+  /**
+   * Filter modules that were discovered by Atomos. Limit the observable
+   * modules to only those present in the JDK/JRE.
+   */
+
+  private void installBootModules(
+    final AtomosLayer bootLayer)
+    throws Exception
+  {
+    LOG.debug("[boot-jpms] installing modules");
+
+    final var bootModules =
+      bootLayer.getAtomosContents()
+        .stream()
+        .filter(RSFelix::isExposedBootModule)
+        .sorted(Comparator.comparing(AtomosContent::getSymbolicName))
+        .toList();
+
+    for (final var content : bootModules) {
+      LOG.debug("[boot-jpms] install {}", content.getSymbolicName());
+      this.installContent(content);
+    }
+  }
+
+  /**
+   * Install all the JPMS modules that aren't exposed by the JDK/JRE. This
+   * involves creating module layers for each module. The created layers
+   * are all children of the boot layer.
+   */
+
+  private void installJavaModules(
+    final Atomos atomos,
+    final AtomosLayer bootLayer)
+    throws Exception
+  {
+    LOG.debug("[application-jpms] installing");
+
+    final var javaModules =
+      this.configuration.javaModules();
+
+    if (javaModules.isEmpty()) {
+      LOG.debug("[application-jpms] no application modules required");
+      return;
+    }
+
+    if (RSLauncherParameters.isEnabled(
+      this.configuration, RSLauncherParameters.SINGLE_LAYER)) {
+      this.installJavaModulesSingleLayer(atomos, bootLayer, javaModules);
+      return;
+    }
+
+    for (final var module : javaModules) {
+      final var name = module.getFileName().toString();
+      LOG.debug("[application-jpms] install {}", name);
+
+      final var directory =
+        module.getParent();
+      final var layer =
+        this.findOrAddLayer(atomos, bootLayer, name, directory);
+
+      for (final var content : layer.getAtomosContents()) {
+        this.installContent(content);
       }
+    }
+  }
+
+  /**
+   * Install all the JPMS modules into a single module layer that is a child
+   * of the boot layer. The modules are resolved together using one module
+   * finder, and share one class loader.
+   */
 
-      for (final var module : javaModules) {
-        final var name = module.getFileName().toString();
-        LOG.debug("[application-jpms] install {}", name);
+  private void installJavaModulesSingleLayer(
+    final Atomos atomos,
+    final AtomosLayer bootLayer,
+    final List<Path> javaModules)
+    throws Exception
+  {
+    final var modulePath =
+      javaModules.stream()
+        .map(Path::toAbsolutePath)
+        .distinct()
+        .toArray(Path[]::new);
+
+    LOG.debug(
+      "[application-jpms] install {} modules into layer {}",
+      Integer.valueOf(modulePath.length),
+      APPLICATION_LAYER
+    );
+
+    final var layer =
+      this.findOrAddLayer(atomos, bootLayer, APPLICATION_LAYER, modulePath);
+
+    final var contents =
+      layer.getAtomosContents()
+        .stream()
+        .sorted(Comparator.comparing(AtomosContent::getSymbolicName))
+        .toList();
+
+    for (final var content : contents) {
+      LOG.debug("[application-jpms] install {}", content.getSymbolicName());
+      this.installContent(content);
+    }
+  }
 
-        final var directory =
-          module.getParent();
-        final var layer =
-          atomos.addLayer(List.of(bootLayer), name, SINGLE, directory);
+  /**
+   * Install OSGi bundles. Bundles restored from the framework storage are
+   * reused rather than installed again.
+   */
 
-        for (final var content : layer.getAtomosContents()) {
-          content.install();
-        }
+  private List<Bundle> installBundles()
+    throws Exception
+  {
+    LOG.debug("[application-osgi] installing");
+
+    final var osgiBundles =
+      this.configuration.osgiBundles();
+
+    if (osgiBundles.isEmpty()) {
+      LOG.debug("[application-osgi] no application OSGi bundles required");
+    }
+
+    final var context =
+      this.framework.getBundleContext();
+
+    try (var phase = this.events.phase(RSLauncherPhase.INSTALL_BUNDLES)) {
+      final var installed = new ArrayList<Bundle>();
+      for (final var bundleFile : osgiBundles) {
+        installed.add(
+          RSFelixParallelStart.install(
+            context,
+            locationOf(bundleFile),
+            this.timeline,
+            this.events
+          )
+        );
       }
 
-      /*
-       * Install OSGi bundles.
-       */
+      this.assignStartLevels(installed);
+      phase.succeeded();
+      return installed;
+    }
+  }
 
-      LOG.debug("[application-osgi] installing");
+  private static String locationOf(
+    final Path bundleFile)
+  {
+    return "reference:file:" + bundleFile.toAbsolutePath();
+  }
 
-      final var osgiBundles =
-        this.configuration.osgiBundles();
+  /**
+   * The beginning start level is either specified explicitly, or is the
+   * highest start level assigned to any bundle, so that every configured
+   * bundle is started.
+   */
 
-      if (osgiBundles.isEmpty()) {
-        LOG.debug("[application-osgi] no application OSGi bundles required");
+  private int beginningStartLevel()
+  {
+    final var specified = this.configuration.startLevel();
+    if (specified.isPresent()) {
+      return specified.getAsInt();
+    }
+
+    var level = 1;
+    for (final var entry : this.configuration.osgiBundleEntries()) {
+      level = Math.max(level, entry.startLevel().orElse(1));
+    }
+    return level;
+  }
+
+  /**
+   * Assign start levels to the given bundles, which are in the same order
+   * as the configured bundles. Bundles that have no configured start level
+   * are left at the framework's initial bundle start level.
+   */
+
+  private void assignStartLevels(
+    final List<Bundle> bundles)
+  {
+    final var entries = this.configuration.osgiBundleEntries();
+    for (int index = 0; index < bundles.size(); ++index) {
+      final var level = entries.get(index).startLevel();
+      if (level.isPresent()) {
+        bundles.get(index)
+          .adapt(BundleStartLevel.class)
+          .setStartLevel(level.getAsInt());
       }
+    }
+  }
 
-      final var context =
-        this.framework.getBundleContext();
+  private static int startOptionsOf(
+    final RSLauncherBundle entry)
+  {
+    if (entry.activationPolicy() == RSLauncherActivationPolicy.DECLARED) {
+      return Bundle.START_ACTIVATION_POLICY;
+    }
+    return 0;
+  }
 
-      final var toStart = new ArrayList<Bundle>();
-      for (final var bundleFile : osgiBundles) {
-        final var name = bundleFile.getFileName();
-        LOG.debug("[application-osgi] install {}", name);
+  /**
+   * Install bundles concurrently, resolve them, start the framework, and
+   * then start the bundles in waves computed from the resolved wiring.
+   * Bundle activators only run once the framework is active, so the
+   * framework must be started before the waves are started.
+   */
+
+  private void installAndStartParallel(
+    final int parallelism)
+    throws Exception
+  {
+    final var threads =
+      Thread.ofPlatform()
+        .name("com.io7m.rivershark.launcher.start-", 0L)
+        .factory();
+
+    try (var executor = Executors.newFixedThreadPool(parallelism, threads)) {
+      LOG.debug("[application-osgi] installing ({} threads)", parallelism);
 
-        final var location = new StringBuilder("reference:file:");
-        location.append(bundleFile.toAbsolutePath());
-        toStart.add(context.installBundle(location.toString()));
+      final var locations =
+        this.configuration.osgiBundles()
+          .stream()
+          .map(RSFelix::locationOf)
+          .toList();
+
+      final List<Bundle> bundles;
+      try (var phase = this.events.phase(RSLauncherPhase.INSTALL_BUNDLES)) {
+        bundles =
+          RSFelixParallelStart.installAll(
+            executor,
+            this.framework.getBundleContext(),
+            locations,
+            this.timeline,
+            this.events
+          );
+        this.assignStartLevels(bundles);
+        phase.succeeded();
       }
 
-      LOG.debug("[application-osgi] starting");
+      this.resolveBundles(bundles);
+      this.startFramework();
 
-      for (final var bundle : toStart) {
-        LOG.debug("[application-osgi] start {} {}", bundle.getSymbolicName(), bundle.getVersion());
-        bundle.start();
+      try (var phase = this.events.phase(RSLauncherPhase.START_BUNDLES)) {
+        this.startByLevel(executor, bundles);
+        phase.succeeded();
       }
+    }
+  }
 
-      LOG.debug("[osgi] starting framework");
-      this.framework.start();
+  /**
+   * Start bundles in ascending order of start level, computing waves
+   * separately for each level. Bundles above the active start level of the
+   * framework are only marked as started, and will be activated if the
+   * framework's start level is later raised.
+   */
+
+  private void startByLevel(
+    final ExecutorService executor,
+    final List<Bundle> bundles)
+    throws Exception
+  {
+    final var entries =
+      this.configuration.osgiBundleEntries();
+    final var options =
+      new HashMap<Bundle, Integer>();
+    final var levels =
+      new TreeMap<Integer, List<Bundle>>();
+
+    for (int index = 0; index < bundles.size(); ++index) {
+      final var bundle = bundles.get(index);
+      options.put(bundle, Integer.valueOf(startOptionsOf(entries.get(index))));
+
+      final var level =
+        bundle.adapt(BundleStartLevel.class).getStartLevel();
+      levels.computeIfAbsent(Integer.valueOf(level), k -> new ArrayList<>())
+        .add(bundle);
+    }
+
+    final var active =
+      this.framework.adapt(FrameworkStartLevel.class).getStartLevel();
+
+    for (final var entry : levels.entrySet()) {
+      final var group = entry.getValue();
+      if (entry.getKey().intValue() <= active) {
+        RSFelixParallelStart.startWaves(
+          executor,
+          RSFelixParallelStart.waves(group),
+          b -> options.get(b).intValue() | Bundle.START_TRANSIENT,
+          this.events
+        );
+      } else {
+        RSFelixParallelStart.markStarted(
+          group,
+          b -> options.get(b).intValue(),
+          this.events
+        );
+      }
+    }
+  }
+
+  /**
+   * Mark the given bundles as started. The framework activates each bundle
+   * when it reaches the bundle's start level, honoring the bundle's
+   * activation policy unless eager activation was requested.
+   */
+
+  private void startBundles(
+    final List<Bundle> bundles)
+    throws Exception
+  {
+    LOG.debug("[application-osgi] starting");
+
+    try (var phase = this.events.phase(RSLauncherPhase.START_BUNDLES)) {
+      final var entries = this.configuration.osgiBundleEntries();
+      for (int index = 0; index < bundles.size(); ++index) {
+        RSFelixParallelStart.start(
+          bundles.get(index),
+          startOptionsOf(entries.get(index)),
+          this.events
+        );
+      }
+      phase.succeeded();
+    }
+  }
+
+  /**
+   * Install the given content, unless it was restored from the framework
+   * storage.
+   */
+
+  private void installContent(
+    final AtomosContent content)
+    throws Exception
+  {
+    if (content.getBundle() == null) {
+      try (var ignored =
+             this.timeline.begin("module-install", content.getSymbolicName())) {
+        content.install();
+      }
+    }
+  }
+
+  /**
+   * Add a module layer, unless a layer with the same name was restored from
+   * the framework storage.
+   */
+
+  private AtomosLayer findOrAddLayer(
+    final Atomos atomos,
+    final AtomosLayer bootLayer,
+    final String name,
+    final Path... modulePath)
+  {
+    for (final var child : bootLayer.getChildren()) {
+      if (Objects.equals(child.getName(), name)) {
+        return child;
+      }
+    }
+    try (var ignored = this.timeline.begin("layer-add", name)) {
+      return atomos.addLayer(List.of(bootLayer), name, SINGLE, modulePath);
     }
   }
 
@@ -204,6 +671,26 @@ public final class RSFelix implements RSLauncherType
     this.framework.waitForStop(timeout);
   }
 
+  @Override
+  public void addListener(
+    final RSLauncherListenerType listener)
+  {
+    this.events.addListener(listener);
+  }
+
+  @Override
+  public void removeListener(
+    final RSLauncherListenerType listener)
+  {
+    this.events.removeListener(listener);
+  }
+
+  @Override
+  public RSLauncherMetrics snapshot()
+  {
+    return this.events.snapshot();
+  }
+
   @Override
   public RSLauncherConfiguration configuration()
   {
@@ -216,7 +703,10 @@ public final class RSFelix implements RSLauncherType
   {
     if (this.started.compareAndSet(true, false)) {
       LOG.debug("stopping launcher");
-      this.framework.stop();
+      if (this.framework != null) {
+        this.events.frameworkStopping();
+        this.framework.stop();
+      }
     }
   }
 }
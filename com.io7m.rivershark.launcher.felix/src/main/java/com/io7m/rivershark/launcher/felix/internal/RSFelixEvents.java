@@ -0,0 +1,312 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import com.io7m.rivershark.launcher.api.RSLauncherEventBundleFailed;
+import com.io7m.rivershark.launcher.api.RSLauncherEventBundleInstalled;
+import com.io7m.rivershark.launcher.api.RSLauncherEventBundleStarted;
+import com.io7m.rivershark.launcher.api.RSLauncherEventFrameworkStarted;
+import com.io7m.rivershark.launcher.api.RSLauncherEventFrameworkStopping;
+import com.io7m.rivershark.launcher.api.RSLauncherEventPhaseFinished;
+import com.io7m.rivershark.launcher.api.RSLauncherEventPhaseStarted;
+import com.io7m.rivershark.launcher.api.RSLauncherEventType;
+import com.io7m.rivershark.launcher.api.RSLauncherListenerType;
+import com.io7m.rivershark.launcher.api.RSLauncherMetrics;
+import com.io7m.rivershark.launcher.api.RSLauncherPhase;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.SynchronousBundleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The publisher of launcher events, and the accumulator of launcher
+ * metrics. Bundle activations and framework shutdown are observed with
+ * framework listeners, so they are reported however they were triggered.
+ */
+
+final class RSFelixEvents
+  implements SynchronousBundleListener, FrameworkListener
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(RSFelixEvents.class);
+
+  private final CopyOnWriteArrayList<RSLauncherListenerType> listeners;
+  private final ConcurrentHashMap<Long, Long> starting;
+  private final LongAdder bundlesInstalled;
+  private final LongAdder bundlesRestored;
+  private final LongAdder bundlesStarted;
+  private final LongAdder bundlesFailed;
+  private final LongAdder installNanos;
+  private final LongAdder startNanos;
+  private final AtomicLong launchStarted;
+  private final AtomicLong launchFinished;
+  private final AtomicBoolean stopping;
+
+  RSFelixEvents()
+  {
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.starting = new ConcurrentHashMap<>();
+    this.bundlesInstalled = new LongAdder();
+    this.bundlesRestored = new LongAdder();
+    this.bundlesStarted = new LongAdder();
+    this.bundlesFailed = new LongAdder();
+    this.installNanos = new LongAdder();
+    this.startNanos = new LongAdder();
+    this.launchStarted = new AtomicLong(-1L);
+    this.launchFinished = new AtomicLong(-1L);
+    this.stopping = new AtomicBoolean(false);
+  }
+
+  void addListener(
+    final RSLauncherListenerType listener)
+  {
+    this.listeners.add(Objects.requireNonNull(listener, "listener"));
+  }
+
+  void removeListener(
+    final RSLauncherListenerType listener)
+  {
+    this.listeners.remove(Objects.requireNonNull(listener, "listener"));
+  }
+
+  private void publish(
+    final RSLauncherEventType event)
+  {
+    for (final var listener : this.listeners) {
+      try {
+        listener.onEvent(event);
+      } catch (final RuntimeException e) {
+        LOG.warn("listener {} raised an exception: ", listener, e);
+      }
+    }
+  }
+
+  void launchStarted()
+  {
+    this.launchStarted.set(System.nanoTime());
+  }
+
+  void launchFinished()
+  {
+    final var now = System.nanoTime();
+    this.launchFinished.set(now);
+    this.publish(new RSLauncherEventFrameworkStarted(
+      Instant.now(),
+      Duration.ofNanos(now - this.launchStarted.get())
+    ));
+  }
+
+  void frameworkStopping()
+  {
+    if (this.stopping.compareAndSet(false, true)) {
+      this.publish(new RSLauncherEventFrameworkStopping(Instant.now()));
+    }
+  }
+
+  /**
+   * Begin a phase. The phase is reported as having failed unless
+   * {@link Phase#succeeded()} is called before the phase is closed.
+   *
+   * @param phase The phase
+   *
+   * @return The phase
+   */
+
+  Phase phase(
+    final RSLauncherPhase phase)
+  {
+    this.publish(new RSLauncherEventPhaseStarted(Instant.now(), phase));
+    return new Phase(this, phase, System.nanoTime());
+  }
+
+  void bundleInstalled(
+    final Bundle bundle,
+    final long durationNanos,
+    final boolean restored)
+  {
+    if (restored) {
+      this.bundlesRestored.increment();
+    } else {
+      this.bundlesInstalled.increment();
+      this.installNanos.add(durationNanos);
+    }
+    this.publish(new RSLauncherEventBundleInstalled(
+      Instant.now(),
+      bundle.getLocation(),
+      Objects.requireNonNullElse(bundle.getSymbolicName(), ""),
+      bundle.getVersion().toString(),
+      Duration.ofNanos(durationNanos),
+      restored
+    ));
+  }
+
+  void bundleFailed(
+    final String name,
+    final Throwable error)
+  {
+    this.bundlesFailed.increment();
+    this.publish(new RSLauncherEventBundleFailed(Instant.now(), name, error));
+  }
+
+  void bundleFailed(
+    final Bundle bundle,
+    final Throwable error)
+  {
+    this.bundleFailed(nameOf(bundle), error);
+  }
+
+  @Override
+  public void bundleChanged(
+    final BundleEvent event)
+  {
+    final var bundle = event.getBundle();
+    final var id = Long.valueOf(bundle.getBundleId());
+
+    switch (event.getType()) {
+      case BundleEvent.STARTING -> {
+        this.starting.put(id, Long.valueOf(System.nanoTime()));
+      }
+      case BundleEvent.STARTED -> {
+        final var time = this.starting.remove(id);
+        if (time != null) {
+          final var duration = System.nanoTime() - time.longValue();
+          this.bundlesStarted.increment();
+          this.startNanos.add(duration);
+          this.publish(new RSLauncherEventBundleStarted(
+            Instant.now(),
+            Objects.requireNonNullElse(bundle.getSymbolicName(), ""),
+            bundle.getVersion().toString(),
+            Duration.ofNanos(duration)
+          ));
+        }
+      }
+      case BundleEvent.STOPPING -> {
+        if (bundle.getBundleId() == 0L) {
+          this.frameworkStopping();
+        }
+      }
+      case BundleEvent.STOPPED -> {
+        this.starting.remove(id);
+      }
+      default -> {
+
+      }
+    }
+  }
+
+  @Override
+  public void frameworkEvent(
+    final FrameworkEvent event)
+  {
+    final var bundle = event.getBundle();
+    if (event.getType() == FrameworkEvent.ERROR
+        && bundle != null
+        && bundle.getBundleId() != 0L
+        && event.getThrowable() != null) {
+      this.bundleFailed(bundle, event.getThrowable());
+    }
+  }
+
+  RSLauncherMetrics snapshot()
+  {
+    final var started = this.launchStarted.get();
+    final var finished = this.launchFinished.get();
+
+    final Duration launchTime;
+    if (started < 0L) {
+      launchTime = Duration.ZERO;
+    } else if (finished < 0L) {
+      launchTime = Duration.ofNanos(System.nanoTime() - started);
+    } else {
+      launchTime = Duration.ofNanos(finished - started);
+    }
+
+    return new RSLauncherMetrics(
+      this.bundlesInstalled.sum(),
+      this.bundlesRestored.sum(),
+      this.bundlesStarted.sum(),
+      this.bundlesFailed.sum(),
+      Duration.ofNanos(this.installNanos.sum()),
+      Duration.ofNanos(this.startNanos.sum()),
+      launchTime,
+      finished >= 0L && !this.stopping.get()
+    );
+  }
+
+  private static String nameOf(
+    final Bundle bundle)
+  {
+    return "%s %s".formatted(bundle.getSymbolicName(), bundle.getVersion());
+  }
+
+  /**
+   * A phase that is in progress.
+   */
+
+  static final class Phase implements AutoCloseable
+  {
+    private final RSFelixEvents events;
+    private final RSLauncherPhase phase;
+    private final long timeStarted;
+    private boolean succeeded;
+
+    private Phase(
+      final RSFelixEvents inEvents,
+      final RSLauncherPhase inPhase,
+      final long inTimeStarted)
+    {
+      this.events =
+        Objects.requireNonNull(inEvents, "events");
+      this.phase =
+        Objects.requireNonNull(inPhase, "phase");
+      this.timeStarted = inTimeStarted;
+    }
+
+    /**
+     * Mark the phase as having completed successfully.
+     */
+
+    void succeeded()
+    {
+      this.succeeded = true;
+    }
+
+    @Override
+    public void close()
+    {
+      this.events.publish(new RSLauncherEventPhaseFinished(
+        Instant.now(),
+        this.phase,
+        Duration.ofNanos(System.nanoTime() - this.timeStarted),
+        this.succeeded
+      ));
+    }
+  }
+}
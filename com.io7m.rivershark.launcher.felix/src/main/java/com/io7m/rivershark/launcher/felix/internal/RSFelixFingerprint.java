@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import com.io7m.rivershark.launcher.api.RSLaunchPlan;
+import com.io7m.rivershark.launcher.api.RSLaunchPlanFile;
+import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import com.io7m.rivershark.launcher.api.RSLauncherParameters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Functions to fingerprint a launcher configuration. The fingerprint covers
+ * the parameters, the start levels, and the path, size and SHA-256 hash of
+ * every configured module and bundle, so it changes if any file that the
+ * framework storage was populated from has changed.
+ */
+
+public final class RSFelixFingerprint
+{
+  private RSFelixFingerprint()
+  {
+
+  }
+
+  /**
+   * Compute the fingerprint of the given configuration.
+   *
+   * @param configuration The configuration
+   * @param plan          The launch plan, whose recorded file hashes are
+   *                      used in place of hashing files again
+   *
+   * @return The fingerprint
+   *
+   * @throws IOException On errors
+   */
+
+  public static String compute(
+    final RSLauncherConfiguration configuration,
+    final Optional<RSLaunchPlan> plan)
+    throws IOException
+  {
+    final var text = new StringBuilder(1024);
+    for (final var entry : new TreeMap<>(configuration.parameters()).entrySet()) {
+      text.append("parameter ");
+      text.append(entry.getKey());
+      text.append(' ');
+      text.append(entry.getValue());
+      text.append('\n');
+    }
+
+    final var planned = new HashMap<Path, RSLaunchPlanFile>();
+    plan.ifPresent(p -> {
+      p.modules().forEach(m -> planned.put(m.file(), m));
+      p.bundles().forEach(b -> planned.put(b.file().file(), b.file()));
+    });
+
+    appendFiles(text, planned, "module", configuration.javaModules());
+    appendFiles(text, planned, "bundle", configuration.osgiBundles());
+
+    for (final var bundle : configuration.osgiBundleEntries()) {
+      text.append("bundle-start ");
+      text.append(bundle.file().toAbsolutePath());
+      text.append(' ');
+      text.append(bundle.startLevel());
+      text.append(' ');
+      text.append(bundle.activationPolicy());
+      text.append('\n');
+    }
+
+    text.append("start-level ");
+    text.append(configuration.startLevel());
+    text.append('\n');
+
+    final var digest = createDigest();
+    digest.update(text.toString().getBytes(UTF_8));
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Determine whether the existing framework storage can be reused. The
+   * storage is reused only if warm starts are enabled, and the fingerprint
+   * recorded by the last successful start matches the current
+   * configuration. The recorded fingerprint is removed until the start
+   * succeeds (and {@link #write(Path, String)} records it again), so that
+   * storage left by a failed start is never reused.
+   *
+   * @param configuration   The configuration
+   * @param plan            The launch plan, if any
+   * @param storage         The framework storage directory
+   * @param fingerprintFile The fingerprint file
+   *
+   * @return The warm start decision
+   *
+   * @throws IOException On errors
+   */
+
+  public static WarmStart warmStart(
+    final RSLauncherConfiguration configuration,
+    final Optional<RSLaunchPlan> plan,
+    final Path storage,
+    final Path fingerprintFile)
+    throws IOException
+  {
+    if (!RSLauncherParameters.isEnabled(
+      configuration, RSLauncherParameters.WARM_START)) {
+      return new WarmStart(Optional.empty(), false);
+    }
+
+    final var current =
+      compute(configuration, plan);
+    final var previous =
+      read(fingerprintFile);
+
+    final var reuse =
+      Files.isDirectory(storage) && previous.equals(Optional.of(current));
+
+    Files.deleteIfExists(fingerprintFile);
+    return new WarmStart(Optional.of(current), reuse);
+  }
+
+  private static void appendFiles(
+    final StringBuilder text,
+    final Map<Path, RSLaunchPlanFile> planned,
+    final String kind,
+    final List<Path> files)
+    throws IOException
+  {
+    for (final var file : files) {
+      final var absolute =
+        file.toAbsolutePath().normalize();
+      final var plannedFile =
+        planned.get(absolute);
+
+      text.append(kind);
+      text.append(' ');
+      text.append(file.toAbsolutePath());
+      text.append(' ');
+      if (plannedFile != null) {
+        text.append(plannedFile.size());
+        text.append(' ');
+        text.append(plannedFile.sha256());
+      } else {
+        text.append(Files.size(file));
+        text.append(' ');
+        text.append(hashOf(file));
+      }
+      text.append('\n');
+    }
+  }
+
+  private static String hashOf(
+    final Path file)
+    throws IOException
+  {
+    final var digest = createDigest();
+    try (var input = Files.newInputStream(file)) {
+      input.transferTo(new DigestOutputStream(
+        OutputStream.nullOutputStream(), digest));
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static MessageDigest createDigest()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Read a fingerprint file.
+   *
+   * @param file The file
+   *
+   * @return The fingerprint, if the file exists
+   *
+   * @throws IOException On errors
+   */
+
+  public static Optional<String> read(
+    final Path file)
+    throws IOException
+  {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    return Optional.of(Files.readString(file, UTF_8).trim());
+  }
+
+  /**
+   * Write a fingerprint file.
+   *
+   * @param file        The file
+   * @param fingerprint The fingerprint
+   *
+   * @throws IOException On errors
+   */
+
+  public static void write(
+    final Path file,
+    final String fingerprint)
+    throws IOException
+  {
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.createDirectories(file.getParent());
+    Files.writeString(fileTmp, fingerprint, UTF_8);
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  /**
+   * A warm start decision.
+   *
+   * @param value The fingerprint to record once the start succeeds, if
+   *              warm starts are enabled
+   * @param reuse {@code true} if the framework storage can be reused
+   */
+
+  public record WarmStart(
+    Optional<String> value,
+    boolean reuse)
+  {
+    /**
+     * A warm start decision.
+     */
+
+    public WarmStart
+    {
+      Objects.requireNonNull(value, "value");
+    }
+  }
+}
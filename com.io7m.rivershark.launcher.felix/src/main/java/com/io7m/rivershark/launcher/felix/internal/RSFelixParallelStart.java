@@ -0,0 +1,326 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import com.io7m.jdeferthrow.core.ExceptionTracker;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWiring;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+/**
+ * Functions to install bundles concurrently, and to start bundles in waves
+ * derived from the resolved wiring. A bundle is placed in a later wave than
+ * every bundle that it is wired to, so a bundle's activator only runs after
+ * the activators of the bundles that it depends on have completed. Bundles
+ * within a wave do not depend on each other and are started concurrently.
+ */
+
+final class RSFelixParallelStart
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(RSFelixParallelStart.class);
+
+  private RSFelixParallelStart()
+  {
+
+  }
+
+  /**
+   * Install bundles concurrently. Bundles that are already installed at the
+   * same location are reused. All failures are reported together.
+   *
+   * @param executor  The executor
+   * @param context   The bundle context
+   * @param locations The bundle locations
+   * @param timeline  The timeline to which install steps are recorded
+   * @param events    The event publisher
+   *
+   * @return The bundles, in the order of the given locations
+   *
+   * @throws Exception On errors
+   */
+
+  static List<Bundle> installAll(
+    final ExecutorService executor,
+    final BundleContext context,
+    final List<String> locations,
+    final RSFelixTimeline timeline,
+    final RSFelixEvents events)
+    throws Exception
+  {
+    final var futures = new ArrayList<Future<Bundle>>(locations.size());
+    for (final var location : locations) {
+      futures.add(executor.submit(() -> {
+        return install(context, location, timeline, events);
+      }));
+    }
+    return awaitAll(futures);
+  }
+
+  /**
+   * Install a bundle, or reuse the bundle that is already installed at the
+   * same location.
+   *
+   * @param context  The bundle context
+   * @param location The bundle location
+   * @param timeline The timeline to which the install step is recorded
+   * @param events   The event publisher
+   *
+   * @return The bundle
+   *
+   * @throws BundleException On errors
+   */
+
+  static Bundle install(
+    final BundleContext context,
+    final String location,
+    final RSFelixTimeline timeline,
+    final RSFelixEvents events)
+    throws BundleException
+  {
+    final var existing = context.getBundle(location);
+    if (existing != null) {
+      events.bundleInstalled(existing, 0L, true);
+      return existing;
+    }
+
+    LOG.debug("[application-osgi] install {}", location);
+    final var timeThen = System.nanoTime();
+    try (var ignored = timeline.begin("bundle-install", location)) {
+      final var bundle = context.installBundle(location);
+      events.bundleInstalled(bundle, System.nanoTime() - timeThen, false);
+      return bundle;
+    } catch (final BundleException e) {
+      events.bundleFailed(location, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Compute the start waves for the given resolved bundles. Fragments are
+   * never started and are omitted. Bundles that are part of a dependency
+   * cycle are placed, in their original order, in a final wave that is
+   * started sequentially.
+   *
+   * @param bundles The bundles
+   *
+   * @return The waves
+   */
+
+  static List<List<Bundle>> waves(
+    final List<Bundle> bundles)
+  {
+    final var startable = new ArrayList<Bundle>(bundles.size());
+    for (final var bundle : bundles) {
+      if (!isFragment(bundle)) {
+        startable.add(bundle);
+      }
+    }
+
+    final var waves =
+      RSFelixWaves.waves(startable, RSFelixParallelStart::providersOf);
+
+    if (!waves.isEmpty() && isCyclic(waves.get(waves.size() - 1))) {
+      LOG.debug(
+        "[application-osgi] {} bundles have cyclic dependencies",
+        Integer.valueOf(waves.get(waves.size() - 1).size()));
+    }
+    return waves;
+  }
+
+  /**
+   * Start the given waves in order. The bundles in each wave are started
+   * concurrently, except for a wave of cyclic bundles (the only wave in
+   * which bundles may depend on each other), which is started sequentially.
+   * Bundles should be started transiently, so that a warm start does not
+   * activate them sequentially during framework startup.
+   *
+   * @param executor The executor
+   * @param waves    The waves
+   * @param options  A function that returns the start options for a bundle
+   * @param events   The event publisher
+   *
+   * @throws Exception On errors
+   */
+
+  static void startWaves(
+    final ExecutorService executor,
+    final List<List<Bundle>> waves,
+    final ToIntFunction<Bundle> options,
+    final RSFelixEvents events)
+    throws Exception
+  {
+    for (int index = 0; index < waves.size(); ++index) {
+      final var wave = waves.get(index);
+      LOG.debug(
+        "[application-osgi] starting wave {} ({} bundles)",
+        Integer.valueOf(index),
+        Integer.valueOf(wave.size()));
+
+      if (isCyclic(wave)) {
+        for (final var bundle : wave) {
+          start(bundle, options.applyAsInt(bundle), events);
+        }
+        continue;
+      }
+
+      final var futures = new ArrayList<Future<Bundle>>(wave.size());
+      for (final var bundle : wave) {
+        final var bundleOptions = options.applyAsInt(bundle);
+        futures.add(executor.submit(() -> {
+          start(bundle, bundleOptions, events);
+          return bundle;
+        }));
+      }
+      awaitAll(futures);
+    }
+  }
+
+  /**
+   * Mark bundles as persistently started without activating them. This is
+   * used for bundles whose start level is above the framework's active
+   * start level. Fragments are skipped.
+   *
+   * @param bundles The bundles
+   * @param options A function that returns the start options for a bundle
+   * @param events  The event publisher
+   *
+   * @throws Exception On errors
+   */
+
+  static void markStarted(
+    final List<Bundle> bundles,
+    final ToIntFunction<Bundle> options,
+    final RSFelixEvents events)
+    throws Exception
+  {
+    final var exceptions = new ExceptionTracker<Exception>();
+    for (final var bundle : bundles) {
+      if (isFragment(bundle)) {
+        continue;
+      }
+      try {
+        LOG.debug(
+          "[application-osgi] deferring {} to start level {}",
+          bundle.getSymbolicName(),
+          Integer.valueOf(
+            bundle.adapt(BundleStartLevel.class).getStartLevel()));
+        start(bundle, options.applyAsInt(bundle), events);
+      } catch (final BundleException e) {
+        exceptions.addException(e);
+      }
+    }
+    exceptions.throwIfNecessary();
+  }
+
+  /**
+   * Start a bundle, reporting any failure to the event publisher.
+   *
+   * @param bundle  The bundle
+   * @param options The start options
+   * @param events  The event publisher
+   *
+   * @throws BundleException On errors
+   */
+
+  static void start(
+    final Bundle bundle,
+    final int options,
+    final RSFelixEvents events)
+    throws BundleException
+  {
+    LOG.debug(
+      "[application-osgi] start {} {}",
+      bundle.getSymbolicName(),
+      bundle.getVersion());
+
+    try {
+      bundle.start(options);
+    } catch (final BundleException | RuntimeException e) {
+      events.bundleFailed(bundle, e);
+      throw e;
+    }
+  }
+
+  private static boolean isCyclic(
+    final List<Bundle> wave)
+  {
+    return RSFelixWaves.isCyclic(wave, RSFelixParallelStart::providersOf);
+  }
+
+  private static boolean isFragment(
+    final Bundle bundle)
+  {
+    final var revision = bundle.adapt(BundleRevision.class);
+    return revision != null
+           && (revision.getTypes() & BundleRevision.TYPE_FRAGMENT) != 0;
+  }
+
+  /**
+   * @return The bundles that provide capabilities to the given bundle
+   */
+
+  private static Set<Bundle> providersOf(
+    final Bundle bundle)
+  {
+    final var wiring = bundle.adapt(BundleWiring.class);
+    if (wiring == null) {
+      return Set.of();
+    }
+
+    final var results = new HashSet<Bundle>();
+    for (final var wire : wiring.getRequiredWires(null)) {
+      results.add(wire.getProviderWiring().getBundle());
+    }
+    return results;
+  }
+
+  private static <T> List<T> awaitAll(
+    final List<Future<T>> futures)
+    throws Exception
+  {
+    final var exceptions = new ExceptionTracker<Exception>();
+    final var results = new ArrayList<T>(futures.size());
+    for (final var future : futures) {
+      try {
+        results.add(future.get());
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof final Exception cause) {
+          exceptions.addException(cause);
+        } else {
+          exceptions.addException(e);
+        }
+      }
+    }
+    exceptions.throwIfNecessary();
+    return results;
+  }
+}
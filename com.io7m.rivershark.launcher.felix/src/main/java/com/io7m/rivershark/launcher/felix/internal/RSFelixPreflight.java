@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import com.io7m.jdeferthrow.core.ExceptionTracker;
+import com.io7m.rivershark.launcher.api.RSLaunchBundleIdentity;
+import com.io7m.rivershark.launcher.api.RSLaunchPlan;
+import com.io7m.rivershark.launcher.api.RSLaunchPlanFile;
+import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+
+/**
+ * Functions to check the configured modules and bundles before the framework
+ * is created. Every file is checked concurrently, and all problems are
+ * reported together.
+ */
+
+final class RSFelixPreflight
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(RSFelixPreflight.class);
+
+  private RSFelixPreflight()
+  {
+
+  }
+
+  /**
+   * Check that every configured module and bundle exists, is readable, and
+   * is a jar file with a parseable manifest. Bundles must declare a valid
+   * identity (see {@link RSLaunchBundleIdentity#of(Path)}). Files that are
+   * recorded in the given plan and that are apparently unchanged were fully
+   * checked when the plan was compiled, and are not read again. Files that
+   * have changed since the plan was compiled must still match the hash
+   * recorded in the plan.
+   *
+   * @param configuration The configuration
+   * @param plan          The launch plan, if any
+   * @param timeline      The timeline to which checks are recorded
+   *
+   * @throws IOException On errors, including every failed check
+   */
+
+  static void check(
+    final RSLauncherConfiguration configuration,
+    final Optional<RSLaunchPlan> plan,
+    final RSFelixTimeline timeline)
+    throws IOException
+  {
+    final var threads =
+      Math.max(1, Runtime.getRuntime().availableProcessors());
+    final var futures =
+      new ArrayList<Future<Void>>();
+
+    final var threadFactory =
+      Thread.ofPlatform()
+        .name("com.io7m.rivershark.launcher.preflight-", 0L)
+        .factory();
+
+    try (var executor = Executors.newFixedThreadPool(threads, threadFactory)) {
+      for (final var module : configuration.javaModules()) {
+        futures.add(executor.submit(() -> {
+          checkFile(module, false, plan, timeline);
+          return null;
+        }));
+      }
+      for (final var bundle : configuration.osgiBundles()) {
+        futures.add(executor.submit(() -> {
+          checkFile(bundle, true, plan, timeline);
+          return null;
+        }));
+      }
+    }
+
+    final var exceptions =
+      new ExceptionTracker<IOException>();
+
+    for (final var future : futures) {
+      try {
+        future.get();
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof final IOException cause) {
+          LOG.error("[preflight] {}", cause.getMessage());
+          exceptions.addException(cause);
+        } else {
+          exceptions.addException(new IOException(e.getCause()));
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        exceptions.addException(new IOException(e));
+      }
+    }
+
+    exceptions.throwIfNecessary();
+  }
+
+  private static void checkFile(
+    final Path file,
+    final boolean bundle,
+    final Optional<RSLaunchPlan> plan,
+    final RSFelixTimeline timeline)
+    throws IOException
+  {
+    final var absolute =
+      file.toAbsolutePath().normalize();
+    final var planned =
+      plan.flatMap(p -> p.fileOf(absolute));
+
+    if (planned.isPresent() && planned.get().isUnchanged()) {
+      return;
+    }
+
+    try (var ignored = timeline.begin("preflight", absolute.toString())) {
+      if (!Files.isRegularFile(absolute)) {
+        throw new IOException(
+          "%s: Not a regular file".formatted(absolute));
+      }
+      if (!Files.isReadable(absolute)) {
+        throw new IOException(
+          "%s: Not readable".formatted(absolute));
+      }
+
+      if (planned.isPresent()) {
+        final var expected = planned.get().sha256();
+        final var received = RSLaunchPlanFile.of(absolute).sha256();
+        if (!expected.equals(received)) {
+          throw new IOException(
+            "%s: Hash mismatch with launch plan (expected SHA-256 %s, received %s)"
+              .formatted(absolute, expected, received));
+        }
+      }
+
+      checkManifest(absolute, bundle);
+    }
+  }
+
+  private static void checkManifest(
+    final Path file,
+    final boolean bundle)
+    throws IOException
+  {
+    if (bundle) {
+      RSLaunchBundleIdentity.of(file);
+      return;
+    }
+
+    try (var ignored = new JarFile(file.toFile(), false)) {
+      // The module only needs to be a readable jar file.
+    } catch (final IOException e) {
+      throw new IOException(
+        "%s: Unreadable jar file: %s".formatted(file, e.getMessage()), e);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A listener that records the activation of each bundle as a step in a
+ * timeline. The listener is synchronous, so a step covers exactly the time
+ * spent in the bundle's activator, regardless of whether the bundle was
+ * started by the launcher or by the framework when it reached the bundle's
+ * start level.
+ */
+
+final class RSFelixStartTracker implements SynchronousBundleListener
+{
+  private final RSFelixTimeline timeline;
+  private final ConcurrentHashMap<Long, RSFelixTimeline.Span> starting;
+
+  RSFelixStartTracker(
+    final RSFelixTimeline inTimeline)
+  {
+    this.timeline =
+      Objects.requireNonNull(inTimeline, "timeline");
+    this.starting =
+      new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public void bundleChanged(
+    final BundleEvent event)
+  {
+    final var bundle = event.getBundle();
+    final var id = Long.valueOf(bundle.getBundleId());
+
+    switch (event.getType()) {
+      case BundleEvent.STARTING -> {
+        this.starting.put(
+          id, this.timeline.begin("bundle-start", nameOf(bundle)));
+      }
+      case BundleEvent.STARTED, BundleEvent.STOPPED -> {
+        final var span = this.starting.remove(id);
+        if (span != null) {
+          span.close();
+        }
+      }
+      default -> {
+
+      }
+    }
+  }
+
+  private static String nameOf(
+    final Bundle bundle)
+  {
+    return "%s %s".formatted(bundle.getSymbolicName(), bundle.getVersion());
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Objects;
+
+/**
+ * A JFR event recorded for each step of launching the framework.
+ */
+
+@Name("com.io7m.rivershark.launcher.Step")
+@Label("Launcher Step")
+@Category({"Rivershark", "Launcher"})
+@Description("A step performed while launching the OSGi framework.")
+@StackTrace(false)
+final class RSFelixStepEvent extends jdk.jfr.Event
+{
+  @Label("Step")
+  @Description("The kind of step, such as bundle-install or bundle-start.")
+  private final String step;
+
+  @Label("Name")
+  @Description("The name of the layer, bundle, or other subject of the step.")
+  private final String name;
+
+  RSFelixStepEvent(
+    final String inStep,
+    final String inName)
+  {
+    this.step = Objects.requireNonNull(inStep, "step");
+    this.name = Objects.requireNonNull(inName, "name");
+  }
+
+  /**
+   * @return The kind of step
+   */
+
+  String step()
+  {
+    return this.step;
+  }
+
+  /**
+   * @return The subject of the step
+   */
+
+  String name()
+  {
+    return this.name;
+  }
+}
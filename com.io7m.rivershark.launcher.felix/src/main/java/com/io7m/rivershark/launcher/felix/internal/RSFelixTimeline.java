@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A timeline of the steps performed while launching the framework. Every
+ * step is emitted as a JFR event. If recording is enabled, every step is
+ * also retained so that the timeline can be written as a Chrome trace
+ * (viewable in {@code chrome://tracing} or Perfetto).
+ */
+
+final class RSFelixTimeline
+{
+  private final boolean recording;
+  private final long timeBase;
+  private final ConcurrentLinkedQueue<Step> steps;
+
+  private RSFelixTimeline(
+    final boolean inRecording)
+  {
+    this.recording = inRecording;
+    this.timeBase = System.nanoTime();
+    this.steps = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Create a timeline.
+   *
+   * @param recording {@code true} if steps should be retained for
+   *                  {@link #write(Path)}
+   *
+   * @return A timeline
+   */
+
+  static RSFelixTimeline create(
+    final boolean recording)
+  {
+    return new RSFelixTimeline(recording);
+  }
+
+  /**
+   * @return {@code true} if steps are retained
+   */
+
+  boolean isRecording()
+  {
+    return this.recording;
+  }
+
+  /**
+   * Begin a step. The step ends when the returned span is closed.
+   *
+   * @param step The kind of step
+   * @param name The subject of the step
+   *
+   * @return A span
+   */
+
+  Span begin(
+    final String step,
+    final String name)
+  {
+    final var event = new RSFelixStepEvent(step, name);
+    event.begin();
+    return new Span(this, event, Thread.currentThread(), System.nanoTime());
+  }
+
+  /**
+   * Write the recorded steps to the given file in the Chrome trace event
+   * format.
+   *
+   * @param file The output file
+   *
+   * @throws IOException On errors
+   */
+
+  void write(
+    final Path file)
+    throws IOException
+  {
+    final var sorted = new ArrayList<>(this.steps);
+    sorted.sort(Comparator.comparingLong(Step::startNanos));
+
+    final var text = new StringBuilder(256 + sorted.size() * 160);
+    text.append("{\n  \"displayTimeUnit\": \"ms\",\n  \"traceEvents\": [");
+    for (int index = 0; index < sorted.size(); ++index) {
+      final var step = sorted.get(index);
+      text.append(index == 0 ? "\n" : ",\n");
+      text.append("    {\"ph\": \"X\", \"pid\": 1");
+      text.append(", \"tid\": ");
+      text.append(step.threadId());
+      text.append(", \"cat\": ");
+      appendString(text, step.step());
+      text.append(", \"name\": ");
+      appendString(text, step.name());
+      text.append(", \"ts\": ");
+      appendMicros(text, step.startNanos() - this.timeBase);
+      text.append(", \"dur\": ");
+      appendMicros(text, step.durationNanos());
+      text.append(", \"args\": {\"thread\": ");
+      appendString(text, step.threadName());
+      text.append("}}");
+    }
+    text.append("\n  ]\n}\n");
+
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.createDirectories(file.getParent());
+    Files.writeString(fileTmp, text, UTF_8);
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  private static void appendMicros(
+    final StringBuilder text,
+    final long nanos)
+  {
+    text.append(String.format(Locale.ROOT, "%.3f", nanos / 1000.0));
+  }
+
+  private static void appendString(
+    final StringBuilder text,
+    final String value)
+  {
+    text.append('"');
+    for (int index = 0; index < value.length(); ++index) {
+      final var c = value.charAt(index);
+      switch (c) {
+        case '"' -> text.append("\\\"");
+        case '\\' -> text.append("\\\\");
+        case '\n' -> text.append("\\n");
+        case '\r' -> text.append("\\r");
+        case '\t' -> text.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            text.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+          } else {
+            text.append(c);
+          }
+        }
+      }
+    }
+    text.append('"');
+  }
+
+  private record Step(
+    String step,
+    String name,
+    long threadId,
+    String threadName,
+    long startNanos,
+    long durationNanos)
+  {
+
+  }
+
+  /**
+   * A step that is in progress.
+   */
+
+  static final class Span implements AutoCloseable
+  {
+    private final RSFelixTimeline timeline;
+    private final RSFelixStepEvent event;
+    private final Thread thread;
+    private final long startNanos;
+
+    private Span(
+      final RSFelixTimeline inTimeline,
+      final RSFelixStepEvent inEvent,
+      final Thread inThread,
+      final long inStartNanos)
+    {
+      this.timeline =
+        Objects.requireNonNull(inTimeline, "timeline");
+      this.event =
+        Objects.requireNonNull(inEvent, "event");
+      this.thread =
+        Objects.requireNonNull(inThread, "thread");
+      this.startNanos = inStartNanos;
+    }
+
+    @Override
+    public void close()
+    {
+      final var endNanos = System.nanoTime();
+      this.event.commit();
+
+      if (this.timeline.recording) {
+        this.timeline.steps.add(
+          new Step(
+            this.event.step(),
+            this.event.name(),
+            this.thread.threadId(),
+            this.thread.getName(),
+            this.startNanos,
+            endNanos - this.startNanos
+          )
+        );
+      }
+    }
+  }
+}
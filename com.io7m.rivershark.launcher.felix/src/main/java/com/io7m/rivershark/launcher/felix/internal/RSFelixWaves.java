@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.launcher.felix.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Functions to divide a dependency graph into waves. Every node is placed
+ * in a later wave than every node that it depends on, and as early as that
+ * allows, so the nodes within a wave never depend on each other. If the
+ * remaining nodes all depend on each other (directly or transitively),
+ * they are placed, in their original order, in one final wave; that is the
+ * only wave that is {@link #isCyclic(List, Function) cyclic}.
+ */
+
+public final class RSFelixWaves
+{
+  private RSFelixWaves()
+  {
+
+  }
+
+  /**
+   * Compute the waves for the given nodes. Dependencies on nodes that are
+   * not in {@code nodes}, and dependencies of a node on itself, are ignored.
+   *
+   * @param nodes        The nodes
+   * @param dependencies A function returning the dependencies of a node
+   * @param <T>          The type of nodes
+   *
+   * @return The waves, each in the original order of the nodes
+   */
+
+  public static <T> List<List<T>> waves(
+    final List<T> nodes,
+    final Function<T, Set<T>> dependencies)
+  {
+    Objects.requireNonNull(nodes, "nodes");
+    Objects.requireNonNull(dependencies, "dependencies");
+
+    final var members = new LinkedHashSet<>(nodes);
+    final var required = new HashMap<T, Set<T>>();
+    for (final var node : members) {
+      required.put(node, dependenciesWithin(node, dependencies, members));
+    }
+
+    final var waves = new ArrayList<List<T>>();
+    final var done = new HashSet<T>();
+    final var remaining = new LinkedHashSet<>(members);
+
+    while (!remaining.isEmpty()) {
+      final var wave = new ArrayList<T>();
+      for (final var node : remaining) {
+        if (done.containsAll(required.get(node))) {
+          wave.add(node);
+        }
+      }
+
+      if (wave.isEmpty()) {
+        waves.add(List.copyOf(remaining));
+        break;
+      }
+
+      wave.forEach(remaining::remove);
+      done.addAll(wave);
+      waves.add(List.copyOf(wave));
+    }
+    return List.copyOf(waves);
+  }
+
+  /**
+   * @param wave         The wave
+   * @param dependencies A function returning the dependencies of a node
+   * @param <T>          The type of nodes
+   *
+   * @return {@code true} if any node in the wave depends on another node in
+   * the same wave
+   */
+
+  public static <T> boolean isCyclic(
+    final List<T> wave,
+    final Function<T, Set<T>> dependencies)
+  {
+    Objects.requireNonNull(wave, "wave");
+    Objects.requireNonNull(dependencies, "dependencies");
+
+    final var members = new HashSet<>(wave);
+    for (final var node : wave) {
+      if (!Collections.disjoint(
+        dependenciesWithin(node, dependencies, members), members)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static <T> Set<T> dependenciesWithin(
+    final T node,
+    final Function<T, Set<T>> dependencies,
+    final Set<T> members)
+  {
+    final var results = new HashSet<T>();
+    for (final var dependency : dependencies.apply(node)) {
+      if (!Objects.equals(dependency, node) && members.contains(dependency)) {
+        results.add(dependency);
+      }
+    }
+    return results;
+  }
+}
@@ -30,6 +30,7 @@ module com.io7m.rivershark.launcher.felix
 
   requires transitive com.io7m.rivershark.launcher.api;
 
+  requires jdk.jfr;
   requires org.apache.felix.atomos;
   requires org.slf4j;
 
@@ -0,0 +1,416 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.maven_plugin;
+
+import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.apache.maven.plugins.annotations.LifecyclePhase.PACKAGE;
+import static org.apache.maven.plugins.annotations.ResolutionScope.RUNTIME;
+
+/**
+ * The "assembleInstance" mojo. Lays out a launcher instance directory from
+ * the project's runtime dependencies, and writes a matching launcher
+ * configuration file.
+ *
+ * Artifacts are placed into {@code lib/runtime}, {@code lib/bundles}, or
+ * {@code lib/modules} according to {@code groupId:artifactId} patterns in
+ * which {@code *} matches any sequence of characters. Files are hardlinked
+ * from their source location where the filesystem permits, and copied
+ * otherwise. Files that are already up-to-date are left untouched, and jar
+ * files that are no longer required are removed. Two artifacts that would
+ * be placed at the same file name cause the build to fail.
+ */
+
+@Mojo(
+  name = "assembleInstance",
+  defaultPhase = PACKAGE,
+  requiresDependencyResolution = RUNTIME,
+  threadSafe = true)
+public final class RSAssembleInstanceMojo extends AbstractMojo
+{
+  /**
+   * Access to the Maven project.
+   */
+
+  @Parameter(
+    defaultValue = "${project}",
+    required = true,
+    readonly = true)
+  private MavenProject project;
+
+  /**
+   * Access to the Maven session.
+   */
+
+  @Parameter(defaultValue = "${session}", readonly = true, required = true)
+  private MavenSession session;
+
+  @Component
+  private DependencyGraphBuilder dependencyGraphBuilder;
+
+  /**
+   * The project build directory.
+   */
+
+  @Parameter(
+    defaultValue = "${project.build.directory}",
+    required = true,
+    readonly = true)
+  private String buildDirectory;
+
+  @Parameter(
+    name = "instanceDirectory",
+    required = true,
+    defaultValue = "${project.build.directory}/instance",
+    property = "rivershark.instanceDirectory")
+  private String instanceDirectory;
+
+  @Parameter(
+    name = "runtimeDirectory",
+    required = false,
+    property = "rivershark.runtimeDirectory")
+  private String runtimeDirectory;
+
+  @Parameter(
+    name = "configurationFile",
+    required = true,
+    defaultValue = "launcher.properties",
+    property = "rivershark.configurationFile")
+  private String configurationFile;
+
+  @Parameter(
+    name = "runtimeIncludes",
+    required = false)
+  private List<String> runtimeIncludes;
+
+  @Parameter(
+    name = "bundleIncludes",
+    required = false)
+  private List<String> bundleIncludes;
+
+  @Parameter(
+    name = "moduleIncludes",
+    required = false)
+  private List<String> moduleIncludes;
+
+  @Parameter(
+    name = "parameters",
+    required = false)
+  private Map<String, String> parameters;
+
+  /**
+   * The "assembleInstance" mojo.
+   */
+
+  public RSAssembleInstanceMojo()
+  {
+
+  }
+
+  @Override
+  public void execute()
+    throws MojoExecutionException
+  {
+    try {
+      final var log =
+        this.getLog();
+      final var report =
+        new RSGoalReport("assembleInstance", this.project.getId());
+
+      final var timeCollect = RSGoalReport.now();
+      final var collector =
+        new RSDependencyCollector(
+          log,
+          this.dependencyGraphBuilder,
+          this.project,
+          this.session
+        );
+
+      final var artifacts =
+        new TreeMap<>(collector.collect());
+      report.recordSince(
+        "dependencyCollection", artifacts.size(), 0L, timeCollect);
+
+      final var instance =
+        Paths.get(this.instanceDirectory).toAbsolutePath();
+      final var runtimeLib =
+        instance.resolve("lib").resolve("runtime");
+      final var bundleLib =
+        instance.resolve("lib").resolve("bundles");
+      final var moduleLib =
+        instance.resolve("lib").resolve("modules");
+
+      final var timePlace = RSGoalReport.now();
+      final var runtimeFiles =
+        this.place(artifacts, patternsOf(this.runtimeIncludes), runtimeLib);
+      final var bundleFiles =
+        this.place(artifacts, patternsOf(this.bundleIncludes), bundleLib);
+      final var moduleFiles =
+        this.place(artifacts, patternsOf(this.moduleIncludes), moduleLib);
+
+      report.recordSince(
+        "placement",
+        runtimeFiles.size() + bundleFiles.size() + moduleFiles.size(),
+        0L,
+        timePlace
+      );
+
+      log.info(
+        "instance: %d runtime, %d bundles, %d modules".formatted(
+          runtimeFiles.size(),
+          bundleFiles.size(),
+          moduleFiles.size()
+        )
+      );
+
+      final var configuration =
+        RSLauncherConfiguration.builder(
+          Optional.ofNullable(this.runtimeDirectory)
+            .map(Paths::get)
+            .orElse(instance.resolve("var"))
+        );
+
+      bundleFiles.forEach(configuration::addOSGIBundle);
+      moduleFiles.forEach(configuration::addJavaModule);
+      configuration.addParameters(
+        Optional.ofNullable(this.parameters).orElse(Map.of()));
+
+      writeIfChanged(
+        instance.resolve(this.configurationFile),
+        configuration.build()
+      );
+      report.write(Paths.get(this.buildDirectory));
+    } catch (final DependencyGraphBuilderException | IOException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Convert {@code groupId:artifactId} patterns into regular expressions.
+   */
+
+  private static List<Pattern> patternsOf(
+    final List<String> includes)
+  {
+    return Optional.ofNullable(includes)
+      .orElse(List.of())
+      .stream()
+      .map(RSAssembleInstanceMojo::patternOf)
+      .toList();
+  }
+
+  private static Pattern patternOf(
+    final String include)
+  {
+    return Pattern.compile(
+      Pattern.compile("\\*")
+        .splitAsStream(include)
+        .map(Pattern::quote)
+        .collect(Collectors.joining(".*"))
+      + (include.endsWith("*") ? ".*" : "")
+    );
+  }
+
+  private static boolean matches(
+    final List<Pattern> patterns,
+    final Artifact artifact)
+  {
+    final var name =
+      "%s:%s".formatted(artifact.getGroupId(), artifact.getArtifactId());
+
+    return patterns.stream().anyMatch(p -> p.matcher(name).matches());
+  }
+
+  /**
+   * Place every artifact that matches one of the given patterns into the
+   * given directory, and remove any other jar files from the directory.
+   * Other files in the directory are left untouched.
+   *
+   * @return The placed files, in artifact coordinate order
+   *
+   * @throws MojoExecutionException If two artifacts have the same file name
+   */
+
+  private List<Path> place(
+    final Map<String, Artifact> artifacts,
+    final List<Pattern> patterns,
+    final Path directory)
+    throws IOException, MojoExecutionException
+  {
+    final var sources = new LinkedHashMap<Path, Path>();
+    final var owners = new HashMap<Path, String>();
+    final var conflicts = new ArrayList<String>();
+
+    for (final var entry : artifacts.entrySet()) {
+      final var artifact = entry.getValue();
+      if (!matches(patterns, artifact) || artifact.getFile() == null) {
+        continue;
+      }
+
+      final var source = artifact.getFile().toPath().toAbsolutePath();
+      final var name = source.getFileName();
+      final var owner = owners.putIfAbsent(name, entry.getKey());
+      if (owner != null) {
+        conflicts.add(
+          "%s and %s are both placed at %s"
+            .formatted(owner, entry.getKey(), directory.resolve(name)));
+      } else {
+        sources.put(name, source);
+      }
+    }
+
+    if (!conflicts.isEmpty()) {
+      for (final var conflict : conflicts) {
+        this.getLog().error(conflict);
+      }
+      throw new MojoExecutionException(
+        "%d artifacts have conflicting file names.".formatted(conflicts.size())
+      );
+    }
+
+    Files.createDirectories(directory);
+
+    final var placed = new ArrayList<Path>(sources.size());
+    for (final var entry : sources.entrySet()) {
+      final var target = directory.resolve(entry.getKey());
+      this.link(entry.getValue(), target);
+      placed.add(target);
+    }
+
+    this.removeStale(directory, sources.keySet());
+    return List.copyOf(placed);
+  }
+
+  private void removeStale(
+    final Path directory,
+    final Set<Path> names)
+    throws IOException
+  {
+    try (var stream = Files.list(directory)) {
+      final var stale =
+        stream.filter(Files::isRegularFile)
+          .filter(p -> p.getFileName().toString().endsWith(".jar"))
+          .filter(p -> !names.contains(p.getFileName()))
+          .toList();
+
+      for (final var file : stale) {
+        this.getLog().debug("remove %s".formatted(file));
+        Files.delete(file);
+      }
+    }
+  }
+
+  /**
+   * Hardlink the source file to the target file, falling back to a copy if
+   * hardlinks are not supported (or the files are on different
+   * filesystems). An existing target is left untouched if it is the same
+   * file, or if it is a copy with the same size and modification time.
+   */
+
+  private void link(
+    final Path source,
+    final Path target)
+    throws IOException
+  {
+    if (Files.isRegularFile(target)) {
+      if (Files.isSameFile(source, target)) {
+        return;
+      }
+      if (Files.size(source) == Files.size(target)
+          && Files.getLastModifiedTime(source)
+        .equals(Files.getLastModifiedTime(target))) {
+        return;
+      }
+      Files.delete(target);
+    }
+
+    try {
+      Files.createLink(target, source);
+      this.getLog().debug("link %s -> %s".formatted(target, source));
+    } catch (final UnsupportedOperationException | FileSystemException e) {
+      Files.copy(source, target, COPY_ATTRIBUTES, REPLACE_EXISTING);
+      this.getLog().debug("copy %s -> %s".formatted(source, target));
+    }
+  }
+
+  /**
+   * Write the configuration file, unless an identical file already exists.
+   * The timestamp comment that {@link java.util.Properties} writes is
+   * omitted so that the output depends only on the configuration.
+   */
+
+  private static void writeIfChanged(
+    final Path file,
+    final RSLauncherConfiguration configuration)
+    throws IOException
+  {
+    final var writer = new StringWriter();
+    configuration.toProperties().store(writer, null);
+
+    final var text =
+      writer.toString()
+        .lines()
+        .filter(line -> !line.startsWith("#"))
+        .sorted()
+        .collect(Collectors.joining("\n", "", "\n"));
+
+    if (Files.isRegularFile(file)
+        && Objects.equals(Files.readString(file, ISO_8859_1), text)) {
+      return;
+    }
+
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.createDirectories(file.getParent());
+    Files.writeString(fileTmp, text, ISO_8859_1);
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+}
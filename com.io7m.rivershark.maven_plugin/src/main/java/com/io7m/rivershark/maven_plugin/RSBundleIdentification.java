@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.maven_plugin;
+
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSIdentifiedBundle;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The identity of an artifact file.
+ *
+ * @param file   The file
+ * @param hash   The lowercase hexadecimal SHA-256 hash of the file
+ * @param bundle The bundle identity, if the file is an OSGi bundle
+ */
+
+public record RSBundleIdentification(
+  Path file,
+  String hash,
+  Optional<RSBundleIdentifier> bundle)
+{
+  /**
+   * The identity of an artifact file.
+   *
+   * @param file   The file
+   * @param hash   The lowercase hexadecimal SHA-256 hash of the file
+   * @param bundle The bundle identity, if the file is an OSGi bundle
+   */
+
+  public RSBundleIdentification
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(hash, "hash");
+    Objects.requireNonNull(bundle, "bundle");
+  }
+
+  /**
+   * @return The identified bundle, if the file is an OSGi bundle
+   */
+
+  public Optional<RSIdentifiedBundle> toIdentifiedBundle()
+  {
+    return this.bundle.map(b -> new RSIdentifiedBundle(this.file, b, this.hash));
+  }
+}
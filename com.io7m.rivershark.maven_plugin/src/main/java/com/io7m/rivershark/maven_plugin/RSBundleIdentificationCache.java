@@ -0,0 +1,338 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.maven_plugin;
+
+import com.io7m.rivershark.obrcontrol.RSBundleIdentifiers;
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A persistent cache of artifact identities, normally kept in the local
+ * Maven repository. Artifacts in the local repository are effectively
+ * immutable, so an entry is used as long as the size and modification time
+ * of the file are unchanged. Files that are not OSGi bundles are cached as
+ * well, so that they are not reopened on every build.
+ *
+ * The cache may be shared by several builds, including builds running
+ * concurrently in other processes. Saving the cache holds a lock on a
+ * sibling {@code .lock} file while the cache file is reread, merged with
+ * the identities computed by this build, and replaced, so entries written
+ * by other builds are not lost.
+ */
+
+public final class RSBundleIdentificationCache
+{
+  private static final Object SAVE_LOCK = new Object();
+  private static final int FIELD_COUNT = 6;
+
+  private final Path file;
+  private final ConcurrentHashMap<Path, Entry> entries;
+  private final ConcurrentHashMap<Path, Entry> computed;
+  private final LongAdder misses;
+  private final LongAdder bytesRead;
+
+  private RSBundleIdentificationCache(
+    final Path inFile,
+    final Map<Path, Entry> inEntries)
+  {
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.entries =
+      new ConcurrentHashMap<>(inEntries);
+    this.computed =
+      new ConcurrentHashMap<>();
+    this.misses =
+      new LongAdder();
+    this.bytesRead =
+      new LongAdder();
+  }
+
+  /**
+   * Open a cache, loading any existing entries. Malformed entries are
+   * ignored.
+   *
+   * @param file The cache file
+   *
+   * @return A cache
+   *
+   * @throws IOException On errors
+   */
+
+  public static RSBundleIdentificationCache open(
+    final Path file)
+    throws IOException
+  {
+    return new RSBundleIdentificationCache(file, load(file));
+  }
+
+  /**
+   * Open the cache kept in the given local Maven repository.
+   *
+   * @param localRepository The local repository directory
+   *
+   * @return A cache
+   *
+   * @throws IOException On errors
+   *
+   * @see #open(Path)
+   */
+
+  public static RSBundleIdentificationCache openInLocalRepository(
+    final Path localRepository)
+    throws IOException
+  {
+    return open(
+      localRepository.resolve(".cache")
+        .resolve("rivershark")
+        .resolve("bundle-identities")
+    );
+  }
+
+  private static Map<Path, Entry> load(
+    final Path file)
+    throws IOException
+  {
+    final var results = new HashMap<Path, Entry>();
+    if (!Files.isRegularFile(file)) {
+      return results;
+    }
+
+    for (final var line : Files.readAllLines(file, UTF_8)) {
+      final var segments = line.split("\t", -1);
+      if (segments.length != FIELD_COUNT) {
+        continue;
+      }
+      try {
+        results.put(
+          Path.of(segments[0]),
+          new Entry(
+            Long.parseLong(segments[1]),
+            Long.parseLong(segments[2]),
+            segments[3],
+            segments[4],
+            segments[5]
+          )
+        );
+      } catch (final IllegalArgumentException e) {
+        // Ignore malformed entries.
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Identify the given file, using the cached identity if the file is
+   * unchanged.
+   *
+   * @param path The file
+   *
+   * @return The identity
+   *
+   * @throws IOException           On errors
+   * @throws RSRepositoryException If the file declares an invalid bundle
+   *                               identity
+   * @see RSBundleIdentifiers#identify(Path)
+   */
+
+  public RSBundleIdentification identify(
+    final Path path)
+    throws IOException, RSRepositoryException
+  {
+    final var absolute =
+      path.toAbsolutePath();
+    final var size =
+      Files.size(absolute);
+    final var time =
+      Files.getLastModifiedTime(absolute).toMillis();
+
+    var entry = this.entries.get(absolute);
+    if (entry == null || entry.size() != size || entry.time() != time) {
+      entry = identifyFile(absolute, size, time);
+      this.entries.put(absolute, entry);
+      this.computed.put(absolute, entry);
+      this.misses.increment();
+      this.bytesRead.add(size);
+    }
+
+    final Optional<RSBundleIdentifier> bundle;
+    if (entry.symbolicName().isEmpty()) {
+      bundle = Optional.empty();
+    } else {
+      bundle = Optional.of(
+        new RSBundleIdentifier(entry.symbolicName(), entry.version()));
+    }
+    return new RSBundleIdentification(absolute, entry.hash(), bundle);
+  }
+
+  /**
+   * @return The number of files that had to be read because they were not
+   * in the cache (or had changed)
+   */
+
+  public long misses()
+  {
+    return this.misses.sum();
+  }
+
+  /**
+   * @return The number of bytes read to identify files that were not in
+   * the cache
+   */
+
+  public long bytesRead()
+  {
+    return this.bytesRead.sum();
+  }
+
+  private static Entry identifyFile(
+    final Path file,
+    final long size,
+    final long time)
+    throws IOException, RSRepositoryException
+  {
+    final var identity = RSBundleIdentifiers.identify(file);
+    return new Entry(
+      size,
+      time,
+      hashOf(file),
+      identity.map(RSBundleIdentifier::symbolicName).orElse(""),
+      identity.map(RSBundleIdentifier::version).orElse("")
+    );
+  }
+
+  private static String hashOf(
+    final Path file)
+    throws IOException
+  {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    try (var input = Files.newInputStream(file)) {
+      input.transferTo(new DigestOutputStream(
+        OutputStream.nullOutputStream(), digest));
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Save the cache if any new identities were computed. The cache file is
+   * reread under a file lock, so that entries written by other builds since
+   * the cache was opened are retained, and only the identities computed by
+   * this build are added to it. Entries that this build did not compute are
+   * written back untouched; an entry for a file that has since been deleted
+   * is harmless, because it is only used for a file with the same path,
+   * size, and modification time.
+   *
+   * @throws IOException On errors
+   */
+
+  public void save()
+    throws IOException
+  {
+    if (this.computed.isEmpty()) {
+      return;
+    }
+
+    /*
+     * File locks are held on behalf of the whole JVM, so builds within
+     * this JVM are serialized by a monitor before taking the file lock.
+     */
+
+    synchronized (SAVE_LOCK) {
+      final var directory =
+        Files.createDirectories(this.file.toAbsolutePath().getParent());
+      final var lockFile =
+        this.file.resolveSibling(this.file.getFileName() + ".lock");
+
+      try (var channel = FileChannel.open(lockFile, CREATE, WRITE);
+           var ignored = channel.lock()) {
+        this.saveLocked(directory);
+      }
+    }
+  }
+
+  private void saveLocked(
+    final Path directory)
+    throws IOException
+  {
+    final var saved = Map.copyOf(this.computed);
+    final var merged = new TreeMap<>(load(this.file));
+    merged.putAll(saved);
+
+    final var text = new StringBuilder(merged.size() * 160);
+    for (final var e : merged.entrySet()) {
+      final var value = e.getValue();
+      text.append(e.getKey());
+      text.append('\t');
+      text.append(value.size());
+      text.append('\t');
+      text.append(value.time());
+      text.append('\t');
+      text.append(value.hash());
+      text.append('\t');
+      text.append(value.symbolicName());
+      text.append('\t');
+      text.append(value.version());
+      text.append('\n');
+    }
+
+    final var fileTmp =
+      Files.createTempFile(directory, "identities-", ".tmp");
+
+    Files.writeString(fileTmp, text.toString(), UTF_8);
+    Files.move(fileTmp, this.file, ATOMIC_MOVE, REPLACE_EXISTING);
+    saved.forEach(this.computed::remove);
+  }
+
+  private record Entry(
+    long size,
+    long time,
+    String hash,
+    String symbolicName,
+    String version)
+  {
+
+  }
+}
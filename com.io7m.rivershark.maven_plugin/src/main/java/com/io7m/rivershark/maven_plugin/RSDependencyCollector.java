@@ -18,6 +18,7 @@
 package com.io7m.rivershark.maven_plugin;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
@@ -27,9 +28,13 @@ import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A dependency collector.
@@ -37,9 +42,24 @@ import java.util.Objects;
 
 public final class RSDependencyCollector
 {
+  /**
+   * Resolved dependency graphs, keyed by the build request and then by
+   * project coordinates. A graph belongs to a single project, so graphs are
+   * never shared between modules; the cache saves resolving a project's
+   * graph again when several goals (or several executions of one goal)
+   * collect that project's dependencies in the same build. Parallel builds
+   * give each project a clone of the session, so the execution request,
+   * which every clone shares, is used as the key rather than the session.
+   * Graphs are discarded along with the request.
+   */
+
+  private static final Map<MavenExecutionRequest, Map<String, DependencyNode>> GRAPHS =
+    Collections.synchronizedMap(new WeakHashMap<>());
+
   private final Log log;
   private final DependencyGraphBuilder dependencyGraphBuilder;
   private final HashMap<String, Artifact> results;
+  private final HashSet<String> visited;
   private final MavenProject project;
   private final MavenSession session;
 
@@ -68,6 +88,8 @@ public final class RSDependencyCollector
       Objects.requireNonNull(inSession, "session");
     this.results =
       new HashMap<>();
+    this.visited =
+      new HashSet<>();
   }
 
   /**
@@ -82,6 +104,7 @@ public final class RSDependencyCollector
     throws DependencyGraphBuilderException
   {
     this.results.clear();
+    this.visited.clear();
 
     if (isDesirableArtifact(this.project.getArtifact())) {
       this.results.put(
@@ -102,6 +125,27 @@ public final class RSDependencyCollector
       }
     }
 
+    this.collectDependencies(this.dependencyGraph());
+    return Map.copyOf(this.results);
+  }
+
+  private DependencyNode dependencyGraph()
+    throws DependencyGraphBuilderException
+  {
+    final var graphs =
+      GRAPHS.computeIfAbsent(
+        this.session.getRequest(),
+        r -> new ConcurrentHashMap<>()
+      );
+    final var key =
+      coordinatesOf(this.project.getArtifact());
+
+    final var existing = graphs.get(key);
+    if (existing != null) {
+      this.log.debug("using cached dependency graph for %s".formatted(key));
+      return existing;
+    }
+
     final ProjectBuildingRequest request =
       new DefaultProjectBuildingRequest(
         this.session.getProjectBuildingRequest()
@@ -116,15 +160,21 @@ public final class RSDependencyCollector
         return Objects.equals(artifact.getScope(), Artifact.SCOPE_RUNTIME);
       });
 
-    this.collectDependencies(node);
-    return Map.copyOf(this.results);
+    final var previous = graphs.putIfAbsent(key, node);
+    return previous != null ? previous : node;
   }
 
+  /**
+   * Collect the artifacts reachable from the given node. Each artifact is
+   * visited at most once, so the cost of collection depends on the number
+   * of distinct artifacts rather than the number of paths through the graph.
+   */
+
   private void collectDependencies(
     final DependencyNode node)
   {
     final var artifact = node.getArtifact();
-    if (isDesirableArtifact(artifact)) {
+    if (isDesirableArtifact(artifact) && this.visited.add(artifact.getId())) {
       this.results.put(coordinatesOf(artifact), artifact);
 
       for (final DependencyNode child : node.getChildren()) {
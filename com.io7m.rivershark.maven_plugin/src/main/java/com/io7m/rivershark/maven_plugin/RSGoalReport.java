@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.rivershark.maven_plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A machine-readable report of the work performed by a goal. The report is
+ * written as JSON to {@code target/rivershark/<goal>-report.json} so that
+ * the cost of each phase can be tracked across builds.
+ *
+ * Each phase records the number of items processed, the number of bytes
+ * transferred, and the time taken. Phases are written in the order in which
+ * they were first recorded.
+ */
+
+public final class RSGoalReport
+{
+  private final String goal;
+  private final String project;
+  private final Instant started;
+  private final long startedNanos;
+  private final Map<String, Phase> phases;
+
+  /**
+   * Start a new report.
+   *
+   * @param inGoal    The goal name
+   * @param inProject The project coordinates
+   */
+
+  public RSGoalReport(
+    final String inGoal,
+    final String inProject)
+  {
+    this.goal =
+      Objects.requireNonNull(inGoal, "goal");
+    this.project =
+      Objects.requireNonNull(inProject, "project");
+    this.started =
+      Instant.now();
+    this.startedNanos =
+      System.nanoTime();
+    this.phases =
+      new LinkedHashMap<>();
+  }
+
+  /**
+   * @return The current value of the monotonic clock used by reports
+   */
+
+  public static long now()
+  {
+    return System.nanoTime();
+  }
+
+  /**
+   * Record work performed in a phase. Repeated calls for the same phase
+   * accumulate.
+   *
+   * @param name  The phase name
+   * @param count The number of items processed
+   * @param bytes The number of bytes transferred
+   * @param time  The time taken
+   */
+
+  public synchronized void record(
+    final String name,
+    final long count,
+    final long bytes,
+    final Duration time)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(time, "time");
+
+    this.phases.merge(
+      name,
+      new Phase(count, bytes, time),
+      (x, y) -> new Phase(
+        x.count() + y.count(),
+        x.bytes() + y.bytes(),
+        x.time().plus(y.time()))
+    );
+  }
+
+  /**
+   * Record work performed in a phase that started at the given time.
+   *
+   * @param name      The phase name
+   * @param count     The number of items processed
+   * @param bytes     The number of bytes transferred
+   * @param timeThen  The value of {@link #now()} when the phase started
+   *
+   * @see #record(String, long, long, Duration)
+   */
+
+  public void recordSince(
+    final String name,
+    final long count,
+    final long bytes,
+    final long timeThen)
+  {
+    this.record(name, count, bytes, Duration.ofNanos(now() - timeThen));
+  }
+
+  /**
+   * Write the report into the given build directory.
+   *
+   * @param buildDirectory The build directory
+   *
+   * @return The report file
+   *
+   * @throws IOException On errors
+   */
+
+  public synchronized Path write(
+    final Path buildDirectory)
+    throws IOException
+  {
+    final var file =
+      buildDirectory.resolve("rivershark")
+        .resolve("%s-report.json".formatted(this.goal));
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.createDirectories(file.getParent());
+    Files.writeString(fileTmp, this.toJSON(), UTF_8);
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    return file;
+  }
+
+  private String toJSON()
+  {
+    final var totalNanos = now() - this.startedNanos;
+
+    final var text = new StringBuilder(256 + this.phases.size() * 128);
+    text.append("{\n");
+    text.append("  \"goal\": ").append(quote(this.goal)).append(",\n");
+    text.append("  \"project\": ").append(quote(this.project)).append(",\n");
+    text.append("  \"started\": ")
+      .append(quote(this.started.toString()))
+      .append(",\n");
+    text.append("  \"durationMillis\": ")
+      .append(millis(totalNanos))
+      .append(",\n");
+    text.append("  \"phases\": {");
+
+    var first = true;
+    for (final var entry : this.phases.entrySet()) {
+      final var phase = entry.getValue();
+      text.append(first ? "\n" : ",\n");
+      text.append("    ").append(quote(entry.getKey())).append(": {");
+      text.append(" \"count\": ").append(phase.count()).append(',');
+      text.append(" \"bytes\": ").append(phase.bytes()).append(',');
+      text.append(" \"durationMillis\": ")
+        .append(millis(phase.time().toNanos()));
+      text.append(" }");
+      first = false;
+    }
+
+    text.append(first ? "}\n" : "\n  }\n");
+    text.append("}\n");
+    return text.toString();
+  }
+
+  private static String millis(
+    final long nanos)
+  {
+    return String.format(Locale.ROOT, "%.3f", Double.valueOf(nanos / 1_000_000.0));
+  }
+
+  private static String quote(
+    final String text)
+  {
+    final var result = new StringBuilder(text.length() + 2);
+    result.append('"');
+    for (int index = 0; index < text.length(); ++index) {
+      final var c = text.charAt(index);
+      switch (c) {
+        case '"' -> result.append("\\\"");
+        case '\\' -> result.append("\\\\");
+        case '\n' -> result.append("\\n");
+        case '\r' -> result.append("\\r");
+        case '\t' -> result.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            result.append("\\u%04x".formatted(Integer.valueOf(c)));
+          } else {
+            result.append(c);
+          }
+        }
+      }
+    }
+    result.append('"');
+    return result.toString();
+  }
+
+  private record Phase(
+    long count,
+    long bytes,
+    Duration time)
+  {
+
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.maven_plugin;
+
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import org.apache.maven.artifact.Artifact;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Fingerprints of the set of artifacts installed by the "installOBR" mojo.
+ * A fingerprint covers the coordinates, file, size, modification time, and
+ * SHA-256 hash of every artifact, along with any configuration that affects
+ * the contents of the repository.
+ */
+
+public final class RSInstallFingerprint
+{
+  private RSInstallFingerprint()
+  {
+
+  }
+
+  /**
+   * Compute a fingerprint.
+   *
+   * @param artifacts     The artifacts
+   * @param identities    The cache used to obtain artifact hashes
+   * @param configuration The configuration values that affect the repository
+   *
+   * @return The fingerprint
+   *
+   * @throws IOException           On errors
+   * @throws RSRepositoryException If an artifact declares an invalid bundle
+   *                               identity
+   */
+
+  public static String compute(
+    final Map<String, Artifact> artifacts,
+    final RSBundleIdentificationCache identities,
+    final Map<String, String> configuration)
+    throws IOException, RSRepositoryException
+  {
+    Objects.requireNonNull(artifacts, "artifacts");
+    Objects.requireNonNull(identities, "identities");
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var digest = createDigest();
+    for (final var entry : new TreeMap<>(configuration).entrySet()) {
+      update(digest, "configuration %s %s".formatted(
+        entry.getKey(),
+        entry.getValue()
+      ));
+    }
+
+    for (final var entry : new TreeMap<>(artifacts).entrySet()) {
+      final var artifact = entry.getValue();
+      final var file = artifact.getFile();
+      if (file == null) {
+        update(digest, "artifact %s".formatted(entry.getKey()));
+        continue;
+      }
+
+      final var path = file.toPath().toAbsolutePath();
+      update(digest, "artifact %s %s %s %d %d %s".formatted(
+        entry.getKey(),
+        Objects.requireNonNullElse(artifact.getClassifier(), ""),
+        path,
+        Files.size(path),
+        Files.getLastModifiedTime(path).toMillis(),
+        identities.identify(path).hash()
+      ));
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Read a fingerprint written by {@link #write(Path, String)}.
+   *
+   * @param file The file
+   *
+   * @return The fingerprint, if the file exists
+   *
+   * @throws IOException On errors
+   */
+
+  public static Optional<String> read(
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    return Optional.of(Files.readString(file, UTF_8).trim());
+  }
+
+  /**
+   * Write a fingerprint.
+   *
+   * @param file        The file
+   * @param fingerprint The fingerprint
+   *
+   * @throws IOException On errors
+   */
+
+  public static void write(
+    final Path file,
+    final String fingerprint)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(fingerprint, "fingerprint");
+
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Files.writeString(fileTmp, fingerprint, UTF_8);
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  private static void update(
+    final MessageDigest digest,
+    final String line)
+  {
+    digest.update(line.getBytes(UTF_8));
+    digest.update((byte) '\n');
+  }
+
+  private static MessageDigest createDigest()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -17,12 +17,15 @@
 package com.io7m.rivershark.maven_plugin;
 
 import com.io7m.rivershark.obrcontrol.RSRepositories;
+import com.io7m.rivershark.obrcontrol.api.RSIdentifiedBundle;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryStatistics;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -30,8 +33,18 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
 
 import static org.apache.maven.plugins.annotations.ResolutionScope.RUNTIME;
 
@@ -39,9 +52,31 @@ import static org.apache.maven.plugins.annotations.ResolutionScope.RUNTIME;
  * The "install" mojo.
  */
 
-@Mojo(name = "installOBR", requiresDependencyResolution = RUNTIME)
+@Mojo(
+  name = "installOBR",
+  requiresDependencyResolution = RUNTIME,
+  threadSafe = true)
 public final class RSInstallMojo extends AbstractMojo
 {
+  private static final String GOAL = "installOBR";
+
+  private static final String PENDING_MARKER =
+    RSInstallMojo.class.getName() + ".pending";
+
+  /**
+   * The marker value recorded by a project whose installation has already
+   * been performed.
+   */
+
+  private static final String COMPLETED = "completed";
+
+  /**
+   * The lock that serializes marking projects as processed when
+   * installing at the end of a parallel build.
+   */
+
+  private static final Object REACTOR_LOCK = new Object();
+
   /**
    * Access to the Maven project.
    */
@@ -59,9 +94,36 @@ public final class RSInstallMojo extends AbstractMojo
   @Parameter(defaultValue = "${session}", readonly = true, required = true)
   private MavenSession session;
 
+  /**
+   * The descriptor of this plugin.
+   */
+
+  @Parameter(defaultValue = "${plugin}", readonly = true, required = true)
+  private PluginDescriptor pluginDescriptor;
+
   @Component
   private DependencyGraphBuilder dependencyGraphBuilder;
 
+  /**
+   * The project build directory.
+   */
+
+  @Parameter(
+    defaultValue = "${project.build.directory}",
+    required = true,
+    readonly = true)
+  private String buildDirectory;
+
+  /**
+   * The local repository directory. Bundle identities are cached here.
+   */
+
+  @Parameter(
+    defaultValue = "${settings.localRepository}",
+    required = true,
+    readonly = true)
+  private String localRepository;
+
   @Parameter(
     name = "repositoryDirectory",
     required = true,
@@ -74,6 +136,40 @@ public final class RSInstallMojo extends AbstractMojo
     property = "rivershark.repositoryName")
   private String repositoryName;
 
+  @Parameter(
+    name = "indexParallelism",
+    required = false,
+    defaultValue = "1",
+    property = "rivershark.indexParallelism")
+  private int indexParallelism;
+
+  @Parameter(
+    name = "indexTimestamps",
+    required = false,
+    defaultValue = "false",
+    property = "rivershark.indexTimestamps")
+  private boolean indexTimestamps;
+
+  @Parameter(
+    name = "channel",
+    required = false,
+    property = "rivershark.channel")
+  private String channel;
+
+  @Parameter(
+    name = "incremental",
+    required = false,
+    defaultValue = "true",
+    property = "rivershark.incremental")
+  private boolean incremental;
+
+  @Parameter(
+    name = "installAtEnd",
+    required = false,
+    defaultValue = "false",
+    property = "rivershark.installAtEnd")
+  private boolean installAtEnd;
+
   /**
    * The "install" mojo.
    */
@@ -90,7 +186,10 @@ public final class RSInstallMojo extends AbstractMojo
     try {
       final var log =
         this.getLog();
+      final var report =
+        new RSGoalReport(GOAL, this.project.getId());
 
+      final var timeCollect = RSGoalReport.now();
       final var collector =
         new RSDependencyCollector(
           log,
@@ -101,43 +200,393 @@ public final class RSInstallMojo extends AbstractMojo
 
       final var artifacts = collector.collect();
       log.info("collected %d dependencies".formatted(artifacts.size()));
+      report.recordSince(
+        "dependencyCollection", artifacts.size(), 0L, timeCollect);
+
+      final var fingerprintFile =
+        Paths.get(this.buildDirectory)
+          .resolve("rivershark")
+          .resolve("installOBR.fingerprint");
+      final var timeIdentify = RSGoalReport.now();
+      final var identities =
+        RSBundleIdentificationCache.openInLocalRepository(
+          Paths.get(this.localRepository)
+        );
+
+      final var fingerprint =
+        RSInstallFingerprint.compute(
+          artifacts,
+          identities,
+          this.fingerprintConfiguration()
+        );
+
+      final var upToDate =
+        this.incremental && this.isUpToDate(fingerprintFile, fingerprint);
+
+      if (upToDate) {
+        log.info("dependency set is unchanged; skipping installation");
+      }
 
-      this.installArtifacts(artifacts);
-    } catch (final DependencyGraphBuilderException | RSRepositoryException e) {
+      final var pending =
+        new PendingInstall(
+          this.target(),
+          upToDate,
+          upToDate ? List.of() : this.bundlesOf(identities, artifacts),
+          fingerprintFile,
+          fingerprint
+        );
+
+      identities.save();
+      report.recordSince(
+        "identification",
+        artifacts.size(),
+        identities.bytesRead(),
+        timeIdentify
+      );
+
+      if (!this.installAtEnd) {
+        this.installPending(report, List.of(pending));
+      }
+      this.installAtEnd(report, this.installAtEnd ? pending : COMPLETED);
+
+      log.debug("wrote %s".formatted(
+        report.write(Paths.get(this.buildDirectory))));
+    } catch (final DependencyGraphBuilderException
+                   | RSRepositoryException
+                   | IOException e) {
       throw new MojoExecutionException(e.getMessage(), e);
     }
   }
 
-  private void installArtifacts(
+  /**
+   * Identify the given artifacts, discarding any that are not OSGi bundles.
+   */
+
+  private List<RSIdentifiedBundle> bundlesOf(
+    final RSBundleIdentificationCache identities,
     final Map<String, Artifact> artifacts)
+    throws IOException, RSRepositoryException
+  {
+    final var results = new ArrayList<RSIdentifiedBundle>(artifacts.size());
+    for (final var entry : new TreeMap<>(artifacts).entrySet()) {
+      final var file = entry.getValue().getFile().toPath();
+      final var bundle = identities.identify(file).toIdentifiedBundle();
+      if (bundle.isPresent()) {
+        results.add(bundle.get());
+      } else {
+        this.getLog().warn(
+          "%s (%s) is not an OSGi bundle and will not be installed"
+            .formatted(entry.getKey(), file)
+        );
+      }
+    }
+    return List.copyOf(results);
+  }
+
+  private Target target()
+  {
+    return new Target(
+      this.repositoryPath(),
+      this.repositoryName,
+      this.indexParallelism,
+      this.indexTimestamps,
+      this.channel
+    );
+  }
+
+  /**
+   * Record the progress of this project. A project that installs at the end
+   * of the build records its pending installation, and any other project
+   * records that it has completed. Whichever project records last installs
+   * everything that every project left pending. This follows the approach
+   * taken by the "deployAtEnd" option of the maven-deploy-plugin.
+   */
+
+  private void installAtEnd(
+    final RSGoalReport report,
+    final Object marker)
+    throws IOException, RSRepositoryException
+  {
+    final Optional<List<PendingInstall>> all;
+    synchronized (REACTOR_LOCK) {
+      this.session.getPluginContext(this.pluginDescriptor, this.project)
+        .put(PENDING_MARKER, marker);
+      all = this.takeAllPendingInstalls();
+    }
+
+    if (all.isEmpty()) {
+      if (marker instanceof PendingInstall) {
+        this.getLog()
+          .info("installation deferred until the end of the build");
+      }
+      return;
+    }
+    this.installPending(report, all.get());
+  }
+
+  /**
+   * Take the pending installations of all projects, marking them as
+   * completed. A project that has not yet recorded its progress prevents
+   * this, unless the project has already finished building; such a project
+   * will never record anything, so waiting for it would mean that the
+   * pending installations never happen.
+   *
+   * @return The pending installations of all projects, or nothing if there
+   * are projects that have not yet been processed
+   */
+
+  private Optional<List<PendingInstall>> takeAllPendingInstalls()
+  {
+    final var contexts = new ArrayList<Map<String, Object>>();
+    final var finishedWithoutGoal = new ArrayList<String>();
+    final var buildResult = this.session.getResult();
+
+    for (final var reactorProject : this.projectsUsingGoal()) {
+      final var context =
+        this.session.getPluginContext(this.pluginDescriptor, reactorProject);
+
+      if (context.containsKey(PENDING_MARKER)) {
+        contexts.add(context);
+      } else if (buildResult.getBuildSummary(reactorProject) != null) {
+        finishedWithoutGoal.add(reactorProject.getId());
+      } else {
+        return Optional.empty();
+      }
+    }
+
+    if (!finishedWithoutGoal.isEmpty()) {
+      this.getLog().warn(
+        "projects %s finished without executing %s; installing the deferred installations now"
+          .formatted(finishedWithoutGoal, GOAL)
+      );
+    }
+
+    final var results = new ArrayList<PendingInstall>();
+    for (final var context : contexts) {
+      if (context.get(PENDING_MARKER) instanceof final PendingInstall p) {
+        results.add(p);
+        context.put(PENDING_MARKER, COMPLETED);
+      }
+    }
+    return Optional.of(results);
+  }
+
+  /**
+   * @return The reactor projects that will execute this goal
+   */
+
+  private List<MavenProject> projectsUsingGoal()
+  {
+    final var projects =
+      this.session.getProjects();
+
+    final var invokedDirectly =
+      this.session.getGoals()
+        .stream()
+        .anyMatch(g -> g.endsWith(":" + GOAL));
+
+    if (invokedDirectly) {
+      return projects;
+    }
+
+    final var key = this.pluginDescriptor.getPluginLookupKey();
+    return projects.stream()
+      .filter(p -> {
+        final var plugin = p.getPlugin(key);
+        return plugin != null
+               && plugin.getExecutions()
+          .stream()
+          .anyMatch(e -> e.getGoals().contains(GOAL));
+      })
+      .toList();
+  }
+
+  /**
+   * Perform the given installations. Installations into the same repository
+   * are coalesced into a single installation.
+   */
+
+  private void installPending(
+    final RSGoalReport report,
+    final List<PendingInstall> pendings)
+    throws IOException, RSRepositoryException
+  {
+    final var byTarget =
+      new LinkedHashMap<Target, List<PendingInstall>>();
+
+    for (final var pending : pendings) {
+      if (!pending.upToDate()) {
+        byTarget.computeIfAbsent(pending.target(), k -> new ArrayList<>())
+          .add(pending);
+      }
+    }
+
+    for (final var entry : byTarget.entrySet()) {
+      final var group = entry.getValue();
+      final var bundles = new TreeMap<Path, RSIdentifiedBundle>();
+      for (final var pending : group) {
+        Files.deleteIfExists(pending.fingerprintFile());
+        for (final var bundle : pending.bundles()) {
+          bundles.put(bundle.file(), bundle);
+        }
+      }
+
+      final var statistics =
+        this.installBundles(entry.getKey(), List.copyOf(bundles.values()));
+      recordStatistics(report, statistics);
+
+      for (final var pending : group) {
+        RSInstallFingerprint.write(
+          pending.fingerprintFile(),
+          pending.fingerprint()
+        );
+      }
+    }
+  }
+
+  private static void recordStatistics(
+    final RSGoalReport report,
+    final RSRepositoryStatistics statistics)
+  {
+    report.record(
+      "copy",
+      statistics.bundlesCopied(),
+      statistics.bytesCopied(),
+      statistics.copyTime()
+    );
+    report.record(
+      "skip",
+      statistics.bundlesSkipped(),
+      0L,
+      Duration.ZERO
+    );
+    report.record(
+      "indexGeneration",
+      statistics.indexesGenerated(),
+      0L,
+      statistics.indexTime()
+    );
+    report.record(
+      "lockWait",
+      statistics.locksAcquired(),
+      0L,
+      statistics.lockWaitTime()
+    );
+  }
+
+  /**
+   * @return The configuration values that affect the contents of the
+   * repository
+   */
+
+  private Map<String, String> fingerprintConfiguration()
+  {
+    return Map.of(
+      "repositoryDirectory",
+      this.repositoryPath().toString(),
+      "repositoryName",
+      Objects.requireNonNullElse(this.repositoryName, ""),
+      "indexTimestamps",
+      Boolean.toString(this.indexTimestamps),
+      "channel",
+      Objects.requireNonNullElse(this.channel, "")
+    );
+  }
+
+  /**
+   * The installation is up-to-date if the previous successful installation
+   * had the same fingerprint, and the index it produced still exists.
+   */
+
+  private boolean isUpToDate(
+    final Path fingerprintFile,
+    final String fingerprint)
+    throws IOException
+  {
+    final var previous =
+      RSInstallFingerprint.read(fingerprintFile);
+
+    if (previous.isEmpty() || !previous.get().equals(fingerprint)) {
+      return false;
+    }
+
+    final var directory = this.repositoryPath();
+    if (!Files.isRegularFile(directory.resolve("obr.xml"))) {
+      return false;
+    }
+    if (this.channel != null) {
+      return Files.isRegularFile(
+        directory.resolve("obr-%s.xml".formatted(this.channel)));
+    }
+    return true;
+  }
+
+  private Path repositoryPath()
+  {
+    return Paths.get(this.repositoryDirectory).toAbsolutePath();
+  }
+
+  private RSRepositoryStatistics installBundles(
+    final Target target,
+    final List<RSIdentifiedBundle> bundles)
     throws RSRepositoryException
   {
     final var log =
       this.getLog();
 
     final var configurationBuilder =
-      RSRepositoryConfiguration.builder(Paths.get(this.repositoryDirectory));
+      RSRepositoryConfiguration.builder(target.directory());
 
-    if (this.repositoryName != null) {
-      configurationBuilder.setName(this.repositoryName);
+    if (target.name() != null) {
+      configurationBuilder.setName(target.name());
     }
+    configurationBuilder.setIndexParallelism(target.indexParallelism());
+    configurationBuilder.setIndexTimestamps(target.indexTimestamps());
 
     final var configuration =
       configurationBuilder.build();
 
     final var repositories = new RSRepositories();
     try (var repository = repositories.open(configuration)) {
-      final var files =
-        artifacts.values()
-        .stream()
-        .map(a -> a.getFile().toPath())
-        .toList();
-
-      for (final var file : files) {
-        log.info("install %s".formatted(file));
+      for (final var bundle : bundles) {
+        log.info("install %s".formatted(bundle.file()));
       }
 
-      repository.install(files);
+      if (target.channel() != null) {
+        repository.installIdentifiedIntoChannel(target.channel(), bundles);
+      } else {
+        repository.installIdentified(bundles);
+      }
+      return repository.statistics();
     }
   }
+
+  /**
+   * The repository into which artifacts are installed.
+   */
+
+  private record Target(
+    Path directory,
+    String name,
+    int indexParallelism,
+    boolean indexTimestamps,
+    String channel)
+  {
+
+  }
+
+  /**
+   * The artifacts that a project will install, and the fingerprint that
+   * will be recorded once the installation has succeeded.
+   */
+
+  private record PendingInstall(
+    Target target,
+    boolean upToDate,
+    List<RSIdentifiedBundle> bundles,
+    Path fingerprintFile,
+    String fingerprint)
+  {
+
+  }
 }
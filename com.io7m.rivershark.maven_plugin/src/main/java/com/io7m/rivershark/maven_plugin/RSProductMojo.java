@@ -0,0 +1,358 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.maven_plugin;
+
+import com.io7m.anethum.common.SerializeException;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.rivershark.product.RSArtifactDependencyJPMS;
+import com.io7m.rivershark.product.RSArtifactDependencyOSGi;
+import com.io7m.rivershark.product.RSArtifactDependencySunburst;
+import com.io7m.rivershark.product.RSArtifactDependencyType;
+import com.io7m.rivershark.product.RSHash;
+import com.io7m.rivershark.product.RSProduct;
+import com.io7m.rivershark.product.xml.RSProductSerializers;
+import com.io7m.verona.core.VersionException;
+import com.io7m.verona.core.VersionParser;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.io7m.rivershark.product.RSHashAlgorithm.SHA2_256;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.apache.maven.plugins.annotations.LifecyclePhase.PACKAGE;
+import static org.apache.maven.plugins.annotations.ResolutionScope.RUNTIME;
+
+/**
+ * The "generateProduct" mojo. Derives a product description from the
+ * project's runtime dependency graph. Artifacts that declare a
+ * {@code Bundle-SymbolicName} are treated as OSGi bundles; all other
+ * artifacts are treated as JPMS modules.
+ */
+
+@Mojo(
+  name = "generateProduct",
+  defaultPhase = PACKAGE,
+  requiresDependencyResolution = RUNTIME,
+  threadSafe = true)
+public final class RSProductMojo extends AbstractMojo
+{
+  /**
+   * Access to the Maven project.
+   */
+
+  @Parameter(
+    defaultValue = "${project}",
+    required = true,
+    readonly = true)
+  private MavenProject project;
+
+  /**
+   * Access to the Maven session.
+   */
+
+  @Parameter(defaultValue = "${session}", readonly = true, required = true)
+  private MavenSession session;
+
+  @Component
+  private DependencyGraphBuilder dependencyGraphBuilder;
+
+  /**
+   * The project build directory.
+   */
+
+  @Parameter(
+    defaultValue = "${project.build.directory}",
+    required = true,
+    readonly = true)
+  private String buildDirectory;
+
+  /**
+   * The local repository directory. Artifact hashes and identities are
+   * cached here.
+   */
+
+  @Parameter(
+    defaultValue = "${settings.localRepository}",
+    required = true,
+    readonly = true)
+  private String localRepository;
+
+  @Parameter(
+    name = "productId",
+    required = true,
+    defaultValue = "${project.artifactId}",
+    property = "rivershark.productId")
+  private String productId;
+
+  @Parameter(
+    name = "productVersion",
+    required = true,
+    defaultValue = "${project.version}",
+    property = "rivershark.productVersion")
+  private String productVersion;
+
+  @Parameter(
+    name = "productMetadata",
+    required = false)
+  private Map<String, String> productMetadata;
+
+  @Parameter(
+    name = "productFile",
+    required = true,
+    defaultValue = "${project.build.directory}/rivershark/product.xml",
+    property = "rivershark.productFile")
+  private String productFile;
+
+  @Parameter(
+    name = "hashParallelism",
+    required = false,
+    defaultValue = "0",
+    property = "rivershark.hashParallelism")
+  private int hashParallelism;
+
+  /**
+   * The "generateProduct" mojo.
+   */
+
+  public RSProductMojo()
+  {
+
+  }
+
+  @Override
+  public void execute()
+    throws MojoExecutionException
+  {
+    try {
+      final var log =
+        this.getLog();
+      final var report =
+        new RSGoalReport("generateProduct", this.project.getId());
+
+      final var timeCollect = RSGoalReport.now();
+      final var collector =
+        new RSDependencyCollector(
+          log,
+          this.dependencyGraphBuilder,
+          this.project,
+          this.session
+        );
+
+      final var artifacts = collector.collect();
+      log.info("collected %d dependencies".formatted(artifacts.size()));
+      report.recordSince(
+        "dependencyCollection", artifacts.size(), 0L, timeCollect);
+
+      final var timeHash = RSGoalReport.now();
+      final var identities =
+        RSBundleIdentificationCache.openInLocalRepository(
+          Paths.get(this.localRepository)
+        );
+
+      final var dependencies =
+        this.describeAll(identities, new TreeMap<>(artifacts));
+      identities.save();
+      report.recordSince(
+        "identification",
+        dependencies.size(),
+        identities.bytesRead(),
+        timeHash
+      );
+
+      final var product =
+        new RSProduct(
+          this.productId,
+          VersionParser.parseLax(this.productVersion),
+          Map.copyOf(
+            Optional.ofNullable(this.productMetadata)
+              .orElse(Map.of())),
+          dependencies
+        );
+
+      final var timeWrite = RSGoalReport.now();
+      this.write(product);
+      report.recordSince("write", 1L, 0L, timeWrite);
+      report.write(Paths.get(this.buildDirectory));
+    } catch (final DependencyGraphBuilderException
+                   | IOException
+                   | SerializeException
+                   | VersionException
+                   | IllegalArgumentException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  private void write(
+    final RSProduct product)
+    throws IOException, SerializeException
+  {
+    final var file =
+      Paths.get(this.productFile).toAbsolutePath();
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.createDirectories(file.getParent());
+
+    final var serializers = new RSProductSerializers();
+    try (var output = Files.newOutputStream(fileTmp)) {
+      serializers.serialize(file.toUri(), output, product);
+    }
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    this.getLog().info("wrote %s".formatted(file));
+  }
+
+  /**
+   * Classify and hash every artifact concurrently. All failures are
+   * collected and reported together.
+   */
+
+  private List<RSArtifactDependencyType> describeAll(
+    final RSBundleIdentificationCache identities,
+    final Map<String, Artifact> artifacts)
+    throws MojoExecutionException
+  {
+    final var threadCount =
+      this.hashParallelism > 0
+        ? this.hashParallelism
+        : Runtime.getRuntime().availableProcessors();
+
+    final var threads =
+      Thread.ofPlatform()
+        .name("com.io7m.rivershark.maven_plugin.hash-", 0L)
+        .daemon()
+        .factory();
+
+    final var futures =
+      new HashMap<String, Future<RSArtifactDependencyType>>();
+    final var results =
+      new ArrayList<RSArtifactDependencyType>(artifacts.size());
+    final var errors =
+      new ArrayList<String>();
+
+    try (var executor = Executors.newFixedThreadPool(threadCount, threads)) {
+      for (final var entry : artifacts.entrySet()) {
+        futures.put(
+          entry.getKey(),
+          executor.submit(() -> describe(identities, entry.getValue()))
+        );
+      }
+
+      for (final var key : artifacts.keySet()) {
+        try {
+          results.add(futures.get(key).get());
+        } catch (final ExecutionException e) {
+          errors.add("%s: %s".formatted(key, e.getCause().getMessage()));
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new MojoExecutionException(e.getMessage(), e);
+        }
+      }
+    }
+
+    if (!errors.isEmpty()) {
+      for (final var error : errors) {
+        this.getLog().error(error);
+      }
+      throw new MojoExecutionException(
+        "%d artifacts could not be described.".formatted(errors.size())
+      );
+    }
+
+    results.sort(
+      Comparator.comparing(RSProductMojo::groupOf)
+        .thenComparing(RSProductMojo::nameOf)
+    );
+    return List.copyOf(results);
+  }
+
+  private static RSArtifactDependencyType describe(
+    final RSBundleIdentificationCache identities,
+    final Artifact artifact)
+    throws IOException, RSRepositoryException, VersionException
+  {
+    final var file = artifact.getFile();
+    if (file == null) {
+      throw new IOException("The artifact has not been resolved to a file.");
+    }
+
+    final var identity =
+      identities.identify(file.toPath());
+    final var hash =
+      Optional.of(new RSHash(SHA2_256, HexFormat.of().parseHex(identity.hash())));
+    final var version =
+      VersionParser.parseLax(artifact.getVersion());
+
+    if (identity.bundle().isPresent()) {
+      return new RSArtifactDependencyOSGi(
+        artifact.getGroupId(),
+        artifact.getArtifactId(),
+        version,
+        hash
+      );
+    }
+    return new RSArtifactDependencyJPMS(
+      artifact.getGroupId(),
+      artifact.getArtifactId(),
+      version,
+      hash
+    );
+  }
+
+  private static String groupOf(
+    final RSArtifactDependencyType dependency)
+  {
+    return switch (dependency) {
+      case final RSArtifactDependencyOSGi d -> d.group();
+      case final RSArtifactDependencyJPMS d -> d.group();
+      case final RSArtifactDependencySunburst d -> "";
+    };
+  }
+
+  private static String nameOf(
+    final RSArtifactDependencyType dependency)
+  {
+    return switch (dependency) {
+      case final RSArtifactDependencyOSGi d -> d.artifact();
+      case final RSArtifactDependencyJPMS d -> d.artifact();
+      case final RSArtifactDependencySunburst d -> d.name();
+    };
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.obrcontrol.api;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * The identity of a bundle held in a repository.
+ *
+ * @param symbolicName The bundle symbolic name
+ * @param version      The bundle version
+ */
+
+public record RSBundleIdentifier(
+  String symbolicName,
+  String version)
+  implements Comparable<RSBundleIdentifier>
+{
+  private static final Comparator<RSBundleIdentifier> ORDER =
+    Comparator.comparing(RSBundleIdentifier::symbolicName)
+      .thenComparing(RSBundleIdentifier::version);
+
+  /**
+   * The identity of a bundle held in a repository.
+   *
+   * @param symbolicName The bundle symbolic name
+   * @param version      The bundle version
+   */
+
+  public RSBundleIdentifier
+  {
+    Objects.requireNonNull(symbolicName, "symbolicName");
+    Objects.requireNonNull(version, "version");
+  }
+
+  /**
+   * Parse an identifier of the form {@code symbolicName:version}.
+   *
+   * @param text The text
+   *
+   * @return An identifier
+   *
+   * @throws IllegalArgumentException On malformed text
+   */
+
+  public static RSBundleIdentifier parse(
+    final String text)
+    throws IllegalArgumentException
+  {
+    Objects.requireNonNull(text, "text");
+
+    final var index = text.lastIndexOf(':');
+    if (index <= 0 || index == text.length() - 1) {
+      throw new IllegalArgumentException(
+        "Bundle identifier '%s' must be of the form name:version"
+          .formatted(text)
+      );
+    }
+    return new RSBundleIdentifier(
+      text.substring(0, index),
+      text.substring(index + 1)
+    );
+  }
+
+  /**
+   * @return The name of the file that holds the bundle in a repository
+   */
+
+  public String fileName()
+  {
+    return String.format("%s-%s.jar", this.symbolicName, this.version);
+  }
+
+  @Override
+  public int compareTo(
+    final RSBundleIdentifier other)
+  {
+    return ORDER.compare(this, other);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "%s:%s".formatted(this.symbolicName, this.version);
+  }
+}
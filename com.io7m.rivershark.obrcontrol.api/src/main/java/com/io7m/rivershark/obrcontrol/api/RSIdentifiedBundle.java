@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.obrcontrol.api;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A bundle file whose identity and content hash have already been
+ * determined by the caller (for example, from a persistent cache). A
+ * repository can install such a bundle without opening it to read its
+ * manifest, and can skip it entirely if the repository already holds a
+ * bundle with the same identity and hash.
+ *
+ * @param file       The bundle file
+ * @param identifier The bundle identity
+ * @param hash       The lowercase hexadecimal SHA-256 hash of the file
+ */
+
+public record RSIdentifiedBundle(
+  Path file,
+  RSBundleIdentifier identifier,
+  String hash)
+{
+  private static final Pattern VALID_HASH =
+    Pattern.compile("[0-9a-f]{64}");
+
+  /**
+   * A bundle file whose identity and content hash have already been
+   * determined by the caller.
+   *
+   * @param file       The bundle file
+   * @param identifier The bundle identity
+   * @param hash       The lowercase hexadecimal SHA-256 hash of the file
+   */
+
+  public RSIdentifiedBundle
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(identifier, "identifier");
+    Objects.requireNonNull(hash, "hash");
+
+    if (!VALID_HASH.matcher(hash).matches()) {
+      throw new IllegalArgumentException(
+        "Hash '%s' must be a lowercase hexadecimal SHA-256 value"
+          .formatted(hash)
+      );
+    }
+  }
+}
@@ -28,15 +28,23 @@ public final class RSRepositoryConfiguration
 {
   private final Path directory;
   private final String name;
+  private final int indexParallelism;
+  private final boolean indexTimestamps;
 
   private RSRepositoryConfiguration(
     final Path inDirectory,
-    final String inName)
+    final String inName,
+    final int inIndexParallelism,
+    final boolean inIndexTimestamps)
   {
     this.directory =
       Objects.requireNonNull(inDirectory, "directory");
     this.name =
       Objects.requireNonNull(inName, "name");
+    this.indexParallelism =
+      inIndexParallelism;
+    this.indexTimestamps =
+      inIndexTimestamps;
   }
 
   /**
@@ -73,6 +81,27 @@ public final class RSRepositoryConfiguration
     return this.name;
   }
 
+  /**
+   * @return The number of bundles that may be indexed concurrently when
+   * generating the index file (1 implies sequential indexing)
+   */
+
+  public int indexParallelism()
+  {
+    return this.indexParallelism;
+  }
+
+  /**
+   * @return {@code true} if volatile timestamps (such as the repository
+   * {@code increment} attribute) should be written to the index file; if
+   * {@code false}, identical repositories produce identical index files
+   */
+
+  public boolean indexTimestamps()
+  {
+    return this.indexTimestamps;
+  }
+
   /**
    * A mutable repository configuration builder.
    */
@@ -81,6 +110,8 @@ public final class RSRepositoryConfiguration
   {
     private Path directory;
     private String name;
+    private int indexParallelism;
+    private boolean indexTimestamps;
 
     private Builder(
       final Path inDirectory)
@@ -89,6 +120,10 @@ public final class RSRepositoryConfiguration
         Objects.requireNonNull(inDirectory, "directory");
       this.name =
         "Rivershark";
+      this.indexParallelism =
+        1;
+      this.indexTimestamps =
+        false;
     }
 
     /**
@@ -121,6 +156,43 @@ public final class RSRepositoryConfiguration
       return this;
     }
 
+    /**
+     * Set the number of bundles that may be indexed concurrently. A value of
+     * 1 indexes bundles sequentially.
+     *
+     * @param inParallelism The parallelism
+     *
+     * @return this
+     */
+
+    public Builder setIndexParallelism(
+      final int inParallelism)
+    {
+      if (inParallelism < 1) {
+        throw new IllegalArgumentException(
+          "Index parallelism %d must be >= 1"
+            .formatted(Integer.valueOf(inParallelism))
+        );
+      }
+      this.indexParallelism = inParallelism;
+      return this;
+    }
+
+    /**
+     * Set whether volatile timestamps should be written to the index file.
+     *
+     * @param inTimestamps {@code true} if timestamps should be written
+     *
+     * @return this
+     */
+
+    public Builder setIndexTimestamps(
+      final boolean inTimestamps)
+    {
+      this.indexTimestamps = inTimestamps;
+      return this;
+    }
+
     /**
      * @return The repository configuration
      */
@@ -129,7 +201,9 @@ public final class RSRepositoryConfiguration
     {
       return new RSRepositoryConfiguration(
         this.directory,
-        this.name
+        this.name,
+        this.indexParallelism,
+        this.indexTimestamps
       );
     }
   }
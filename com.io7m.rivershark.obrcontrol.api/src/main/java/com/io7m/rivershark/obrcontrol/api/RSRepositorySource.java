@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.obrcontrol.api;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A source of bundle data that can be streamed into a repository.
+ *
+ * @param name   A descriptive name for the source, used in error messages
+ * @param opener A function that opens the source
+ */
+
+public record RSRepositorySource(
+  String name,
+  RSRepositorySourceOpenerType opener)
+{
+  /**
+   * A source of bundle data that can be streamed into a repository.
+   *
+   * @param name   A descriptive name for the source, used in error messages
+   * @param opener A function that opens the source
+   */
+
+  public RSRepositorySource
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(opener, "opener");
+  }
+
+  /**
+   * Create a source that reads from the given file.
+   *
+   * @param file The file
+   *
+   * @return A source
+   */
+
+  public static RSRepositorySource ofFile(
+    final Path file)
+  {
+    Objects.requireNonNull(file, "file");
+    return new RSRepositorySource(
+      file.toString(),
+      () -> FileChannel.open(file, READ)
+    );
+  }
+
+  /**
+   * Create a source that reads from an already-open channel. The source
+   * can be consumed exactly once.
+   *
+   * @param name    The source name
+   * @param channel The channel
+   *
+   * @return A source
+   */
+
+  public static RSRepositorySource ofChannel(
+    final String name,
+    final ReadableByteChannel channel)
+  {
+    Objects.requireNonNull(channel, "channel");
+    return new RSRepositorySource(name, () -> channel);
+  }
+
+  /**
+   * Create a source that reads from an already-open stream. The source
+   * can be consumed exactly once.
+   *
+   * @param name   The source name
+   * @param stream The stream
+   *
+   * @return A source
+   */
+
+  public static RSRepositorySource ofInputStream(
+    final String name,
+    final InputStream stream)
+  {
+    Objects.requireNonNull(stream, "stream");
+    return new RSRepositorySource(name, () -> Channels.newChannel(stream));
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.rivershark.obrcontrol.api;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Statistics accumulated by a repository since it was opened.
+ *
+ * @param bundlesCopied    The number of bundles copied into the repository
+ * @param bundlesSkipped   The number of bundles that were not copied because
+ *                         the repository already held identical content
+ * @param bytesCopied      The number of bytes copied into the repository
+ * @param indexesGenerated The number of index files (including channel
+ *                         indexes) generated
+ * @param locksAcquired    The number of times the repository lock was
+ *                         acquired
+ * @param copyTime         The total time spent copying bundle data
+ * @param indexTime        The total time spent generating indexes
+ * @param lockWaitTime     The total time spent waiting to acquire the
+ *                         repository lock
+ */
+
+public record RSRepositoryStatistics(
+  long bundlesCopied,
+  long bundlesSkipped,
+  long bytesCopied,
+  long indexesGenerated,
+  long locksAcquired,
+  Duration copyTime,
+  Duration indexTime,
+  Duration lockWaitTime)
+{
+  /**
+   * Statistics accumulated by a repository since it was opened.
+   *
+   * @param bundlesCopied    The number of bundles copied into the repository
+   * @param bundlesSkipped   The number of bundles that were not copied
+   * @param bytesCopied      The number of bytes copied into the repository
+   * @param indexesGenerated The number of index files generated
+   * @param locksAcquired    The number of times the lock was acquired
+   * @param copyTime         The total time spent copying bundle data
+   * @param indexTime        The total time spent generating indexes
+   * @param lockWaitTime     The total time spent waiting for the lock
+   */
+
+  public RSRepositoryStatistics
+  {
+    Objects.requireNonNull(copyTime, "copyTime");
+    Objects.requireNonNull(indexTime, "indexTime");
+    Objects.requireNonNull(lockWaitTime, "lockWaitTime");
+  }
+}
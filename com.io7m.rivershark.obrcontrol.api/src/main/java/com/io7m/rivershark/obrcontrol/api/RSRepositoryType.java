@@ -17,7 +17,11 @@
 package com.io7m.rivershark.obrcontrol.api;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.SortedSet;
 
 /**
  * A repository.
@@ -36,6 +40,214 @@ public interface RSRepositoryType extends AutoCloseable
   void install(Collection<Path> files)
     throws RSRepositoryException;
 
+  /**
+   * Install bundles from the given sources into the repository. Each source
+   * is streamed directly into the repository's staging area, where it is
+   * hashed and identified, so callers holding bundles in memory, on a pipe,
+   * or inside an archive do not need to write them to a temporary file
+   * first.
+   *
+   * @param sources The bundle sources
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void installSources(Collection<RSRepositorySource> sources)
+    throws RSRepositoryException;
+
+  /**
+   * Install all of the {@code .jar} entries contained within the given
+   * archive (such as a zipped launcher instance) into the repository. The
+   * entries are read directly out of the archive.
+   *
+   * @param archive The archive
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void installArchive(Path archive)
+    throws RSRepositoryException;
+
+  /**
+   * Install bundles that have already been identified. Bundles that the
+   * repository already holds with the same identity and hash are skipped
+   * without being read. Other bundles are copied into the repository
+   * without their manifests being read; the copied data must match the
+   * given hash.
+   *
+   * @param bundles The bundles
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void installIdentified(
+    Collection<RSIdentifiedBundle> bundles)
+    throws RSRepositoryException;
+
+  /**
+   * Install bundles that have already been identified, and add them to the
+   * named channel.
+   *
+   * @param channel The channel name
+   * @param bundles The bundles
+   *
+   * @throws RSRepositoryException On errors
+   *
+   * @see #installIdentified(Collection)
+   * @see #installIntoChannel(String, Collection)
+   */
+
+  void installIdentifiedIntoChannel(
+    String channel,
+    Collection<RSIdentifiedBundle> bundles)
+    throws RSRepositoryException;
+
+  /**
+   * Install bundles from the given sources into the repository, and add them
+   * to the named channel. A channel is a named subset of the bundles held in
+   * the repository, with its own index file ({@code obr-<channel>.xml}). The
+   * channel is created if it does not already exist.
+   *
+   * @param channel The channel name
+   * @param sources The bundle sources
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void installIntoChannel(
+    String channel,
+    Collection<RSRepositorySource> sources)
+    throws RSRepositoryException;
+
+  /**
+   * Install several groups of bundles at once. The bundles under the empty
+   * channel name are installed without being added to any channel; the
+   * bundles under any other name are installed and added to that channel.
+   * Every bundle is staged first, and then all of them are committed under
+   * a single acquisition of the repository lock, regenerating each affected
+   * index once. This is equivalent to, but considerably cheaper than, one
+   * call to {@link #installSources(Collection)} or
+   * {@link #installIntoChannel(String, Collection)} per group.
+   *
+   * @param sourcesByChannel The bundle sources, by channel name
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void installIntoChannels(
+    Map<String, ? extends Collection<RSRepositorySource>> sourcesByChannel)
+    throws RSRepositoryException;
+
+  /**
+   * Promote bundles from one channel to another. Every bundle must be a
+   * member of the source channel. Promotion only changes channel metadata;
+   * no bundle data is copied, and only the target channel is reindexed.
+   *
+   * @param fromChannel The source channel
+   * @param toChannel   The target channel
+   * @param bundles     The bundles
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void promote(
+    String fromChannel,
+    String toChannel,
+    Collection<RSBundleIdentifier> bundles)
+    throws RSRepositoryException;
+
+  /**
+   * Remove bundles from a channel. The bundles remain in the repository.
+   *
+   * @param channel The channel name
+   * @param bundles The bundles
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void removeFromChannel(
+    String channel,
+    Collection<RSBundleIdentifier> bundles)
+    throws RSRepositoryException;
+
+  /**
+   * @return The names of the channels in the repository
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  SortedSet<String> channels()
+    throws RSRepositoryException;
+
+  /**
+   * @param channel The channel name
+   *
+   * @return The bundles that are members of the given channel
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  SortedSet<RSBundleIdentifier> channelBundles(String channel)
+    throws RSRepositoryException;
+
+  /**
+   * The generation of the repository. The generation is a counter that is
+   * incremented each time a change to the repository (a new or replaced
+   * bundle, or a change to a channel) is committed. Reading the generation
+   * is a single read of a memory-mapped file, and is therefore cheap enough
+   * to be polled frequently by consumers that wish to react to updates
+   * without re-reading index files.
+   *
+   * @return The current repository generation
+   */
+
+  long generation();
+
+  /**
+   * Wait until the repository generation is greater than {@code after}.
+   *
+   * @param after   The generation that must be exceeded
+   * @param timeout The maximum time to wait
+   *
+   * @return The new generation, or nothing if the timeout elapsed first
+   *
+   * @throws InterruptedException If the calling thread is interrupted
+   */
+
+  OptionalLong awaitGeneration(
+    long after,
+    Duration timeout)
+    throws InterruptedException;
+
+  /**
+   * Regenerate the repository index and the indexes of all channels. Index
+   * files whose content would not change are left untouched, and the
+   * generation is only incremented if an index changed.
+   *
+   * @throws RSRepositoryException On errors
+   */
+
+  void reindex()
+    throws RSRepositoryException;
+
+  /**
+   * Verify the contents of the repository. Every bundle, and every index
+   * file, is hashed and compared against the {@code .sha256} file that was
+   * written alongside it. All problems are reported together.
+   *
+   * @throws RSRepositoryException If any file is missing its hash, or does
+   *                               not match its hash
+   */
+
+  void verify()
+    throws RSRepositoryException;
+
+  /**
+   * @return The statistics accumulated since the repository was opened
+   */
+
+  RSRepositoryStatistics statistics();
+
   @Override
   void close()
     throws RSRepositoryException;
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.obrcontrol;
+
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.verona.core.Version;
+import com.io7m.verona.core.VersionException;
+import com.io7m.verona.core.VersionParser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Functions to determine the identities of OSGi bundles. These are used
+ * both by repositories and by tools that identify bundles ahead of
+ * installation, so that a file always has the same identity.
+ */
+
+public final class RSBundleIdentifiers
+{
+  private static final Version DEFAULT_VERSION =
+    Version.of(0, 0, 0);
+
+  private RSBundleIdentifiers()
+  {
+
+  }
+
+  /**
+   * Identify the given file.
+   *
+   * @param file The file
+   *
+   * @return The bundle identity, or nothing if the file is not a bundle
+   *
+   * @throws IOException           If the file cannot be read as a jar file
+   * @throws RSRepositoryException If the file declares an invalid identity
+   * @see #identify(Path, String)
+   */
+
+  public static Optional<RSBundleIdentifier> identify(
+    final Path file)
+    throws IOException, RSRepositoryException
+  {
+    return identify(file, file.toString());
+  }
+
+  /**
+   * Identify the given file. A jar file that has no manifest, or whose
+   * manifest does not declare a {@code Bundle-SymbolicName}, is not a
+   * bundle. A bundle that does not declare a {@code Bundle-Version} has
+   * version {@code 0.0.0}, and omitted minor and micro version components
+   * are zero, as specified by OSGi. A file that declares a
+   * symbolic name but whose symbolic name or version is malformed is an
+   * error rather than a file that is not a bundle.
+   *
+   * @param file The file
+   * @param name The name of the file used in error messages
+   *
+   * @return The bundle identity, or nothing if the file is not a bundle
+   *
+   * @throws IOException           If the file cannot be read as a jar file
+   * @throws RSRepositoryException If the file declares an invalid identity
+   */
+
+  public static Optional<RSBundleIdentifier> identify(
+    final Path file,
+    final String name)
+    throws IOException, RSRepositoryException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(name, "name");
+
+    final Manifest manifest;
+    try (var jar = new JarFile(file.toFile(), false)) {
+      manifest = jar.getManifest();
+    } catch (final IOException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+
+    if (manifest == null) {
+      return Optional.empty();
+    }
+
+    final var attributes =
+      manifest.getMainAttributes();
+    final var symbolicNameValue =
+      attributes.getValue("Bundle-SymbolicName");
+    final var versionValue =
+      attributes.getValue("Bundle-Version");
+
+    if (symbolicNameValue == null) {
+      return Optional.empty();
+    }
+
+    final var symbolicName =
+      symbolicNameValue.split(";", 2)[0].trim();
+
+    if (symbolicName.isEmpty()) {
+      throw new RSRepositoryException(
+        "File '%s' declares an empty Bundle-SymbolicName".formatted(name));
+    }
+
+    return Optional.of(
+      new RSBundleIdentifier(symbolicName, versionOf(name, versionValue))
+    );
+  }
+
+  /**
+   * OSGi allows the minor and micro components of a version to be omitted,
+   * but the version parser requires all three.
+   */
+
+  private static String padded(
+    final String text)
+  {
+    final var components = text.split("\\.", -1).length;
+    if (components >= 3) {
+      return text;
+    }
+    return text + ".0".repeat(3 - components);
+  }
+
+  private static String versionOf(
+    final String name,
+    final String versionValue)
+    throws RSRepositoryException
+  {
+    if (versionValue == null || versionValue.isBlank()) {
+      return DEFAULT_VERSION.toString();
+    }
+
+    try {
+      return VersionParser.parseOSGi(padded(versionValue.trim())).toString();
+    } catch (final VersionException e) {
+      throw new RSRepositoryException(
+        "File '%s' declares an unparseable Bundle-Version '%s': %s"
+          .formatted(name, versionValue, e.getMessage()),
+        e
+      );
+    }
+  }
+}
@@ -17,7 +17,6 @@
 package com.io7m.rivershark.obrcontrol;
 
 import com.io7m.oatfield.vanilla.OFBundleIndexers;
-import com.io7m.oatfield.vanilla.OFBundleReaders;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryFactoryType;
@@ -33,7 +32,6 @@ import java.util.Objects;
 public final class RSRepositories implements RSRepositoryFactoryType
 {
   private final OFBundleIndexers indexers;
-  private final OFBundleReaders readers;
 
   /**
    * The default repository implementation.
@@ -42,7 +40,6 @@ public final class RSRepositories implements RSRepositoryFactoryType
   public RSRepositories()
   {
     this.indexers = new OFBundleIndexers();
-    this.readers = new OFBundleReaders();
   }
 
   @Override
@@ -51,6 +48,6 @@ public final class RSRepositories implements RSRepositoryFactoryType
     throws RSRepositoryException
   {
     Objects.requireNonNull(configuration, "configuration");
-    return RSRepository.create(configuration, this.indexers, this.readers);
+    return RSRepository.create(configuration, this.indexers);
   }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.obrcontrol.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Functions to compute and read the SHA-256 hashes of files held in a
+ * repository.
+ */
+
+final class RSBundleHashes
+{
+  private RSBundleHashes()
+  {
+
+  }
+
+  /**
+   * @return A new SHA-256 digest
+   */
+
+  static MessageDigest createDigest()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param file The file
+   *
+   * @return The {@code .sha256} file that sits next to the given file
+   */
+
+  static Path sidecarOf(
+    final Path file)
+  {
+    return file.resolveSibling(file.getFileName() + ".sha256");
+  }
+
+  /**
+   * Compute the SHA-256 hash of the given file.
+   *
+   * @param file The file
+   *
+   * @return The lowercase hex hash
+   *
+   * @throws IOException On errors
+   */
+
+  static String hashOf(
+    final Path file)
+    throws IOException
+  {
+    final var digest = createDigest();
+    try (var input = Files.newInputStream(file)) {
+      input.transferTo(new DigestOutputStream(
+        OutputStream.nullOutputStream(), digest));
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Determine the hash of a bundle held in a repository. The {@code .sha256}
+   * file written when the bundle was installed is used if present; bundles
+   * installed by older versions are hashed directly.
+   *
+   * @param bundle The bundle
+   *
+   * @return The lowercase hex hash
+   *
+   * @throws IOException On errors
+   */
+
+  static String hashOfBundle(
+    final Path bundle)
+    throws IOException
+  {
+    final var sidecar = sidecarOf(bundle);
+    if (Files.isRegularFile(sidecar)) {
+      return Files.readString(sidecar, UTF_8).trim();
+    }
+    return hashOf(bundle);
+  }
+}
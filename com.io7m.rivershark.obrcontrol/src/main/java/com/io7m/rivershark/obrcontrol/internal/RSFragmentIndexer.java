@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.obrcontrol.internal;
+
+import com.io7m.jdeferthrow.core.ExceptionTracker;
+import com.io7m.oatfield.api.OFBundleIndexerConfiguration;
+import com.io7m.oatfield.vanilla.OFBundleIndexers;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * An index generator that describes each bundle separately, and then merges
+ * the resulting resource descriptions into a single index document.
+ *
+ * The description of each bundle is cached in the fragment directory under
+ * the SHA-256 hash of the bundle, so a bundle is only ever described once
+ * regardless of how many indexes (or channels) it appears in. Bundles that
+ * do not yet have a cached description are described concurrently.
+ * Resources are merged in bundle file name order so that the output does
+ * not depend on the order in which the descriptions were completed.
+ *
+ * Descriptions contain bundle URLs resolved against the base URI, so the
+ * cache is discarded if the base URI changes (for example, if the
+ * repository directory is moved).
+ */
+
+final class RSFragmentIndexer
+{
+  private static final String FRAGMENT_SUFFIX = ".xml";
+  private static final String BASE_URI_FILE = "base-uri";
+
+  private final OFBundleIndexers indexers;
+  private final Path fragmentDirectory;
+  private final URI baseURI;
+  private final String name;
+  private final int parallelism;
+
+  RSFragmentIndexer(
+    final OFBundleIndexers inIndexers,
+    final Path inFragmentDirectory,
+    final URI inBaseURI,
+    final String inName,
+    final int inParallelism)
+  {
+    this.indexers =
+      Objects.requireNonNull(inIndexers, "indexers");
+    this.fragmentDirectory =
+      Objects.requireNonNull(inFragmentDirectory, "fragmentDirectory");
+    this.baseURI =
+      Objects.requireNonNull(inBaseURI, "baseURI");
+    this.name =
+      Objects.requireNonNull(inName, "name");
+    this.parallelism =
+      inParallelism;
+  }
+
+  /**
+   * Index the given bundles.
+   *
+   * @param jars The bundles
+   *
+   * @return The merged index document
+   *
+   * @throws IOException On errors
+   */
+
+  Document execute(
+    final List<Path> jars)
+    throws IOException
+  {
+    Files.createDirectories(this.fragmentDirectory);
+    this.checkBaseURI();
+
+    final var sorted =
+      jars.stream()
+        .sorted(Comparator.comparing(p -> p.getFileName().toString()))
+        .toList();
+
+    return this.merge(this.describeAll(sorted));
+  }
+
+  /**
+   * Delete any cached descriptions that do not belong to one of the given
+   * bundles.
+   *
+   * @param jars The bundles that should be retained
+   *
+   * @throws IOException On errors
+   */
+
+  void retainOnly(
+    final Collection<Path> jars)
+    throws IOException
+  {
+    if (!Files.isDirectory(this.fragmentDirectory)) {
+      return;
+    }
+
+    final var retained = new HashSet<Path>(jars.size());
+    for (final var jar : jars) {
+      retained.add(this.fragmentOf(RSBundleHashes.hashOfBundle(jar)));
+    }
+
+    try (var stream = Files.list(this.fragmentDirectory)) {
+      final var stale =
+        stream.filter(p -> p.getFileName().toString().endsWith(FRAGMENT_SUFFIX))
+          .filter(p -> !retained.contains(p))
+          .toList();
+
+      for (final var fragment : stale) {
+        Files.deleteIfExists(fragment);
+      }
+    }
+  }
+
+  private void checkBaseURI()
+    throws IOException
+  {
+    final var file =
+      this.fragmentDirectory.resolve(BASE_URI_FILE);
+    final var expected =
+      this.baseURI.toString();
+
+    if (Files.isRegularFile(file)
+        && expected.equals(Files.readString(file, UTF_8))) {
+      return;
+    }
+
+    this.retainOnly(List.of());
+    Files.writeString(file, expected, UTF_8);
+  }
+
+  private Path fragmentOf(
+    final String hash)
+  {
+    return this.fragmentDirectory.resolve(hash + FRAGMENT_SUFFIX);
+  }
+
+  private List<Path> describeAll(
+    final List<Path> jars)
+    throws IOException
+  {
+    final var exceptions =
+      new ExceptionTracker<IOException>();
+    final var fragments =
+      new ArrayList<Path>(jars.size());
+    final var futures =
+      new ArrayList<Future<Path>>(jars.size());
+
+    final var threads =
+      Thread.ofPlatform()
+        .name("com.io7m.rivershark.obrcontrol.indexer-", 0L)
+        .daemon()
+        .factory();
+
+    try (var executor =
+           Executors.newFixedThreadPool(this.parallelism, threads)) {
+      for (final var jar : jars) {
+        futures.add(executor.submit(() -> this.describe(jar)));
+      }
+
+      for (final var future : futures) {
+        try {
+          fragments.add(future.get());
+        } catch (final ExecutionException e) {
+          final var cause = e.getCause();
+          exceptions.addException(
+            cause instanceof final IOException io
+              ? io
+              : new IOException(cause.getMessage(), cause)
+          );
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          exceptions.addException(new IOException(e.getMessage(), e));
+        }
+      }
+    }
+
+    exceptions.throwIfNecessary();
+    return fragments;
+  }
+
+  private Path describe(
+    final Path jar)
+    throws IOException
+  {
+    final var fragment =
+      this.fragmentOf(RSBundleHashes.hashOfBundle(jar));
+
+    if (Files.isRegularFile(fragment)) {
+      return fragment;
+    }
+
+    final var fragmentTmp =
+      Files.createTempFile(this.fragmentDirectory, "index-", ".tmp");
+
+    final var config =
+      new OFBundleIndexerConfiguration(
+        List.of(jar),
+        fragmentTmp,
+        this.baseURI,
+        this.name
+      );
+
+    try (var indexer = this.indexers.createIndexer(config)) {
+      indexer.execute();
+      Files.move(fragmentTmp, fragment, ATOMIC_MOVE, REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(fragmentTmp);
+    }
+    return fragment;
+  }
+
+  private Document merge(
+    final List<Path> fragments)
+    throws IOException
+  {
+    final var builder =
+      RSIndexDocuments.createDocumentBuilder();
+
+    Document merged = null;
+    Element mergedRoot = null;
+
+    for (final var fragment : fragments) {
+      final var document =
+        RSIndexDocuments.parse(builder, fragment);
+      final var root =
+        document.getDocumentElement();
+
+      if (merged == null) {
+        merged = builder.newDocument();
+        mergedRoot = (Element) merged.importNode(root, false);
+        merged.appendChild(mergedRoot);
+      }
+
+      final var children = root.getChildNodes();
+      for (int index = 0; index < children.getLength(); ++index) {
+        mergedRoot.appendChild(merged.importNode(children.item(index), true));
+      }
+    }
+
+    if (merged == null) {
+      return RSIndexDocuments.createEmpty(builder, this.name);
+    }
+    return merged;
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.obrcontrol.internal;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Optional;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Functions to read, canonicalize, and write OBR index documents.
+ *
+ * A canonical index has its resources sorted by identity, version, and
+ * content URL, and (unless timestamps are requested) has no
+ * {@code increment} attribute. Whitespace-only text is removed when an
+ * index is parsed, and indexes are always written with the same fixed
+ * indentation of two spaces per level, so that they remain readable;
+ * whatever whitespace an index contains is therefore determined entirely by
+ * its structure. Attributes are written in the order maintained by the JDK
+ * DOM implementation, which is sorted by name. Two canonical indexes
+ * describing the same bundles are therefore byte-for-byte identical.
+ */
+
+final class RSIndexDocuments
+{
+  private static final String ATTRIBUTE_INCREMENT = "increment";
+  private static final String ATTRIBUTE_NAME = "name";
+  private static final String ELEMENT_REPOSITORY = "repository";
+  private static final String NAMESPACE_REPOSITORY =
+    "http://www.osgi.org/xmlns/repository/v1.0.0";
+
+  private static final Comparator<ResourceKey> RESOURCE_ORDER =
+    Comparator.comparing(ResourceKey::identity)
+      .thenComparing(ResourceKey::version)
+      .thenComparing(ResourceKey::url);
+
+  private RSIndexDocuments()
+  {
+
+  }
+
+  /**
+   * @return A new namespace-aware document builder that rejects DTDs
+   *
+   * @throws IOException On errors
+   */
+
+  static DocumentBuilder createDocumentBuilder()
+    throws IOException
+  {
+    try {
+      final var factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      factory.setFeature(
+        "http://apache.org/xml/features/disallow-doctype-decl", true);
+      return factory.newDocumentBuilder();
+    } catch (final ParserConfigurationException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Create an index document that contains no resources.
+   *
+   * @param builder The document builder
+   * @param name    The repository name
+   *
+   * @return An empty index document
+   */
+
+  static Document createEmpty(
+    final DocumentBuilder builder,
+    final String name)
+  {
+    final var document =
+      builder.newDocument();
+    final var root =
+      document.createElementNS(NAMESPACE_REPOSITORY, ELEMENT_REPOSITORY);
+
+    root.setAttribute(ATTRIBUTE_NAME, name);
+    root.setAttribute(
+      ATTRIBUTE_INCREMENT,
+      Long.toString(System.currentTimeMillis())
+    );
+    document.appendChild(root);
+    return document;
+  }
+
+  /**
+   * Parse the given file, removing insignificant whitespace.
+   *
+   * @param builder The document builder
+   * @param file    The file
+   *
+   * @return The parsed document
+   *
+   * @throws IOException On errors
+   */
+
+  static Document parse(
+    final DocumentBuilder builder,
+    final Path file)
+    throws IOException
+  {
+    try {
+      final var document = builder.parse(file.toFile());
+      removeWhitespace(document.getDocumentElement());
+      return document;
+    } catch (final SAXException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static void removeWhitespace(
+    final Node node)
+  {
+    final var children = node.getChildNodes();
+    for (int index = children.getLength() - 1; index >= 0; --index) {
+      final var child = children.item(index);
+      if (child.getNodeType() == Node.TEXT_NODE
+          && child.getTextContent().isBlank()) {
+        node.removeChild(child);
+      } else {
+        removeWhitespace(child);
+      }
+    }
+  }
+
+  /**
+   * Canonicalize the given index document in place.
+   *
+   * @param document   The document
+   * @param timestamps {@code true} if volatile timestamp attributes should
+   *                   be retained
+   */
+
+  static void canonicalize(
+    final Document document,
+    final boolean timestamps)
+  {
+    final var root = document.getDocumentElement();
+    if (!timestamps) {
+      root.removeAttribute(ATTRIBUTE_INCREMENT);
+    }
+
+    final var resources = new ArrayList<Element>();
+    final var children = root.getChildNodes();
+    for (int index = children.getLength() - 1; index >= 0; --index) {
+      final var child = children.item(index);
+      if (child instanceof final Element element
+          && "resource".equals(element.getLocalName())) {
+        resources.add(element);
+        root.removeChild(element);
+      }
+    }
+
+    resources.sort(Comparator.comparing(
+      RSIndexDocuments::resourceKeyOf,
+      RESOURCE_ORDER
+    ));
+
+    for (final var resource : resources) {
+      root.appendChild(resource);
+    }
+  }
+
+  private static ResourceKey resourceKeyOf(
+    final Element resource)
+  {
+    return new ResourceKey(
+      attributeOf(resource, "osgi.identity", "osgi.identity").orElse(""),
+      attributeOf(resource, "osgi.identity", "version").orElse(""),
+      attributeOf(resource, "osgi.content", "url").orElse("")
+    );
+  }
+
+  private static Optional<String> attributeOf(
+    final Element resource,
+    final String namespace,
+    final String name)
+  {
+    final var capabilities = resource.getChildNodes();
+    for (int c = 0; c < capabilities.getLength(); ++c) {
+      if (capabilities.item(c) instanceof final Element capability
+          && "capability".equals(capability.getLocalName())
+          && namespace.equals(capability.getAttribute("namespace"))) {
+        final var attributes = capability.getChildNodes();
+        for (int a = 0; a < attributes.getLength(); ++a) {
+          if (attributes.item(a) instanceof final Element attribute
+              && "attribute".equals(attribute.getLocalName())
+              && name.equals(attribute.getAttribute("name"))) {
+            return Optional.of(attribute.getAttribute("value"));
+          }
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Write the given document to the given file, indented by two spaces per
+   * level.
+   *
+   * @param document The document
+   * @param file     The output file
+   *
+   * @throws IOException On errors
+   */
+
+  static void write(
+    final Document document,
+    final Path file)
+    throws IOException
+  {
+    try {
+      final var transformer =
+        TransformerFactory.newInstance()
+          .newTransformer();
+
+      transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+      transformer.setOutputProperty(
+        "{http://xml.apache.org/xslt}indent-amount", "2");
+
+      try (var stream =
+             Files.newOutputStream(file, CREATE, TRUNCATE_EXISTING, WRITE)) {
+        transformer.transform(new DOMSource(document), new StreamResult(stream));
+      }
+    } catch (final TransformerException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private record ResourceKey(
+    String identity,
+    String version,
+    String url)
+  {
+
+  }
+}
@@ -20,26 +20,54 @@ package com.io7m.rivershark.obrcontrol.internal;
 import com.io7m.jdeferthrow.core.ExceptionTracker;
 import com.io7m.oatfield.api.OFBundleIndexerConfiguration;
 import com.io7m.oatfield.vanilla.OFBundleIndexers;
-import com.io7m.oatfield.vanilla.OFBundleReaders;
+import com.io7m.rivershark.obrcontrol.RSBundleIdentifiers;
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSIdentifiedBundle;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.rivershark.obrcontrol.api.RSRepositorySource;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryStatistics;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryType;
-import com.io7m.verona.core.Version;
-import com.io7m.verona.core.VersionParser;
+import org.w3c.dom.Document;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
@@ -53,41 +81,115 @@ public final class RSRepository implements RSRepositoryType
     CREATE, TRUNCATE_EXISTING, WRITE,
   };
 
+  private static final int BUFFER_SIZE = 65536;
+
+  private static final Pattern VALID_CHANNEL_NAME =
+    Pattern.compile("[A-Za-z0-9][A-Za-z0-9_\\-]*");
+
+  private static final String CHANNEL_SUFFIX = ".txt";
+
+  /**
+   * A view of the mapped generation file as a single big-endian long.
+   */
+
+  private static final VarHandle GENERATION =
+    MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  private static final long GENERATION_SIZE = 8L;
+  private static final long GENERATION_POLL_MINIMUM_MS = 1L;
+  private static final long GENERATION_POLL_MAXIMUM_MS = 64L;
+
+  /**
+   * The locks that serialize access to each repository within this JVM.
+   * File locks are held on behalf of the whole JVM, and attempting to lock
+   * a file that another channel in the same JVM has already locked fails
+   * with an {@link java.nio.channels.OverlappingFileLockException} rather
+   * than waiting, so repository instances that share a directory must
+   * first agree amongst themselves. The locks are keyed by the real path of
+   * the repository's lock file.
+   */
+
+  private static final ConcurrentHashMap<Path, ReentrantLock> LOCAL_LOCKS =
+    new ConcurrentHashMap<>();
+
   private final RSRepositoryConfiguration configuration;
   private final OFBundleIndexers indexers;
-  private final OFBundleReaders readers;
   private final Path fileIndex;
   private final Path fileIndexTmp;
+  private final Path fileIndexHash;
   private final Path fileLock;
   private final Path fileBundles;
+  private final Path fileStaging;
+  private final Path fileFragments;
+  private final Path fileChannels;
   private final FileChannel channel;
+  private final ReentrantLock localLock;
+  private final MappedByteBuffer generation;
+  private final RSRepositoryCounters counters;
 
   private RSRepository(
     final RSRepositoryConfiguration inConfiguration,
     final OFBundleIndexers inIndexers,
-    final OFBundleReaders inReaders,
-    final Path inFileIndex,
-    final Path inFileIndexTmp,
-    final Path inFileLock,
-    final Path inFileBundles,
-    final FileChannel inChannel)
+    final FileChannel inChannel,
+    final ReentrantLock inLocalLock,
+    final MappedByteBuffer inGeneration)
   {
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
     this.indexers =
       Objects.requireNonNull(inIndexers, "indexers");
-    this.readers =
-      Objects.requireNonNull(inReaders, "readers");
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.localLock =
+      Objects.requireNonNull(inLocalLock, "localLock");
+    this.generation =
+      Objects.requireNonNull(inGeneration, "generation");
+    this.counters =
+      new RSRepositoryCounters();
+
+    final var directory =
+      inConfiguration.directory();
+
+    this.fileLock =
+      lockFileOf(directory);
     this.fileIndex =
-      Objects.requireNonNull(inFileIndex, "fileIndex");
+      directory.resolve("obr.xml");
     this.fileIndexTmp =
-      Objects.requireNonNull(inFileIndexTmp, "inFileIndexTmp");
-    this.fileLock =
-      Objects.requireNonNull(inFileLock, "fileLock");
+      directory.resolve("obr.xml.tmp");
+    this.fileIndexHash =
+      directory.resolve("obr.xml.sha256");
     this.fileBundles =
-      Objects.requireNonNull(inFileBundles, "fileBundles");
-    this.channel =
-      Objects.requireNonNull(inChannel, "channel");
+      bundleDirectoryOf(directory);
+    this.fileStaging =
+      stagingDirectoryOf(directory);
+    this.fileFragments =
+      directory.resolve("index");
+    this.fileChannels =
+      directory.resolve("channels");
+  }
+
+  private static Path lockFileOf(
+    final Path directory)
+  {
+    return directory.resolve("obr.lock");
+  }
+
+  private static Path generationFileOf(
+    final Path directory)
+  {
+    return directory.resolve("obr.generation");
+  }
+
+  private static Path bundleDirectoryOf(
+    final Path directory)
+  {
+    return directory.resolve("bundles");
+  }
+
+  private static Path stagingDirectoryOf(
+    final Path directory)
+  {
+    return directory.resolve("staging");
   }
 
   /**
@@ -95,7 +197,6 @@ public final class RSRepository implements RSRepositoryType
    *
    * @param configuration The configuration
    * @param indexers      The bundle indexers
-   * @param readers The bundle readers
    *
    * @return A repository
    *
@@ -104,36 +205,42 @@ public final class RSRepository implements RSRepositoryType
 
   public static RSRepositoryType create(
     final RSRepositoryConfiguration configuration,
-    final OFBundleIndexers indexers,
-    final OFBundleReaders readers)
+    final OFBundleIndexers indexers)
     throws RSRepositoryException
   {
     try {
       final var directory =
         configuration.directory();
-      final var fileLock =
-        directory.resolve("obr.lock");
-      final var fileIndex =
-        directory.resolve("obr.xml");
-      final var fileIndexTmp =
-        directory.resolve("obr.xml.tmp");
-      final var fileBundles =
-        directory.resolve("bundles");
 
-      Files.createDirectories(fileBundles);
+      Files.createDirectories(bundleDirectoryOf(directory));
+      Files.createDirectories(stagingDirectoryOf(directory));
 
       final var channel =
-        FileChannel.open(fileLock, OPTIONS);
+        FileChannel.open(lockFileOf(directory), OPTIONS);
+      final var localLock =
+        LOCAL_LOCKS.computeIfAbsent(
+          lockFileOf(directory).toRealPath(),
+          k -> new ReentrantLock()
+        );
+
+      /*
+       * Mapping a region beyond the end of the file extends the file with
+       * zeroes, so a new repository starts at generation zero. The mapping
+       * remains valid after the file channel is closed.
+       */
+
+      final MappedByteBuffer generation;
+      try (var generationChannel =
+             FileChannel.open(generationFileOf(directory), CREATE, READ, WRITE)) {
+        generation = generationChannel.map(READ_WRITE, 0L, GENERATION_SIZE);
+      }
 
       return new RSRepository(
         configuration,
         indexers,
-        readers,
-        fileIndex,
-        fileIndexTmp,
-        fileLock,
-        fileBundles,
-        channel
+        channel,
+        localLock,
+        generation
       );
     } catch (final IOException e) {
       throw new RSRepositoryException(e.getMessage(), e);
@@ -148,42 +255,187 @@ public final class RSRepository implements RSRepositoryType
       .endsWith(".jar");
   }
 
-  private Map<Path, Identifier> checkBundles(
-    final Collection<Path> files)
+  private static void checkChannelName(
+    final String name)
+    throws RSRepositoryException
+  {
+    Objects.requireNonNull(name, "name");
+
+    if (!VALID_CHANNEL_NAME.matcher(name).matches()) {
+      throw new RSRepositoryException(
+        String.format(
+          "Channel name '%s' must match the pattern '%s'",
+          name,
+          VALID_CHANNEL_NAME.pattern())
+      );
+    }
+  }
+
+  private static void deleteQuietly(
+    final Path file)
+  {
+    try {
+      Files.deleteIfExists(file);
+    } catch (final IOException e) {
+      // Best effort.
+    }
+  }
+
+  private static void writeAtomically(
+    final Path file,
+    final String text)
+    throws IOException
+  {
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    Files.writeString(fileTmp, text, UTF_8, OPTIONS);
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  /**
+   * Stream all of the given sources into the staging directory. Every source
+   * is consumed even if earlier sources fail, so that all errors are reported
+   * at once. If any source fails, all staged files are deleted.
+   */
+
+  private <T> List<Staged> stageAll(
+    final Collection<T> sources,
+    final StagerType<T> stager)
     throws RSRepositoryException
   {
-    final var mapBundles =
-      new HashMap<Path, Identifier>();
+    final var staged =
+      new ArrayList<Staged>(sources.size());
     final var exceptions =
       new ExceptionTracker<RSRepositoryException>();
 
-    for (final var file : files) {
+    for (final var source : sources) {
       try {
-        try (var reader = this.readers.createReader(file)) {
-          final var versionOpt = reader.bundleVersion();
-          if (versionOpt.isEmpty()) {
-            throw new RSRepositoryException(
-              String.format(
-                "File '%s' is not an OSGi bundle (missing osgi.identity and/or version)",
-                file)
-            );
-          }
+        staged.add(stager.stage(source));
+      } catch (final RSRepositoryException e) {
+        exceptions.addException(e);
+      } catch (final Exception e) {
+        exceptions.addException(new RSRepositoryException(e.getMessage(), e));
+      }
+    }
+
+    try {
+      exceptions.throwIfNecessary();
+    } catch (final RSRepositoryException e) {
+      for (final var s : staged) {
+        deleteQuietly(s.file());
+      }
+      throw e;
+    }
+    return staged;
+  }
+
+  /**
+   * Stream a single source into the staging directory, and then identify
+   * the staged file. The staged file is later moved into place without
+   * being copied again.
+   */
+
+  private Staged stage(
+    final RSRepositorySource source)
+    throws Exception
+  {
+    final var data = this.stageData(source);
+    try {
+      return new Staged(
+        data.file(),
+        identify(source, data.file()),
+        data.hash(),
+        data.size()
+      );
+    } catch (final Exception e) {
+      deleteQuietly(data.file());
+      throw e;
+    }
+  }
+
+  /**
+   * Stream a bundle that has already been identified into the staging
+   * directory. The manifest is not read, but the data must match the hash
+   * that the caller supplied.
+   */
+
+  private Staged stageIdentified(
+    final RSIdentifiedBundle bundle)
+    throws Exception
+  {
+    final var data =
+      this.stageData(RSRepositorySource.ofFile(bundle.file()));
+
+    if (!Objects.equals(data.hash(), bundle.hash())) {
+      deleteQuietly(data.file());
+      throw new RSRepositoryException(
+        String.format(
+          "File '%s' has hash %s, but was identified with hash %s",
+          bundle.file(),
+          data.hash(),
+          bundle.hash())
+      );
+    }
+    return new Staged(data.file(), bundle.identifier(), data.hash(), data.size());
+  }
+
+  /**
+   * Stream a single source into the staging directory, hashing it as it is
+   * written.
+   */
 
-          final var identifier =
-            new Identifier(
-              reader.bundleSymbolicName(),
-              VersionParser.parseOSGi(versionOpt.get())
-            );
+  private StagedData stageData(
+    final RSRepositorySource source)
+    throws IOException
+  {
+    final var timeThen =
+      System.nanoTime();
+    final var digest =
+      RSBundleHashes.createDigest();
+    final var fileTmp =
+      Files.createTempFile(this.fileStaging, "bundle-", ".jar.tmp");
 
-          mapBundles.put(file, identifier);
+    try {
+      long size = 0L;
+      try (var input = source.opener().open();
+           var output = FileChannel.open(fileTmp, OPTIONS)) {
+        final var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (input.read(buffer) != -1) {
+          buffer.flip();
+          digest.update(buffer.duplicate());
+          while (buffer.hasRemaining()) {
+            size += output.write(buffer);
+          }
+          buffer.clear();
         }
-      } catch (final Exception e) {
-        exceptions.addException(new RSRepositoryException(e.getMessage(), e));
+        output.force(false);
       }
+
+      final var hash =
+        HexFormat.of().formatHex(digest.digest());
+
+      this.counters.onDataCopied(size, System.nanoTime() - timeThen);
+      return new StagedData(fileTmp, hash, size);
+    } catch (final IOException e) {
+      deleteQuietly(fileTmp);
+      throw e;
     }
+  }
 
-    exceptions.throwIfNecessary();
-    return mapBundles;
+  private static RSBundleIdentifier identify(
+    final RSRepositorySource source,
+    final Path file)
+    throws Exception
+  {
+    return RSBundleIdentifiers.identify(file, source.name())
+      .orElseThrow(() -> {
+        return new RSRepositoryException(
+          String.format(
+            "File '%s' is not an OSGi bundle (it does not contain a jar manifest with a Bundle-SymbolicName)",
+            source.name())
+        );
+      });
   }
 
   @Override
@@ -193,81 +445,828 @@ public final class RSRepository implements RSRepositoryType
   {
     Objects.requireNonNull(files, "files");
 
+    this.installSources(
+      files.stream()
+        .map(RSRepositorySource::ofFile)
+        .toList()
+    );
+  }
+
+  @Override
+  public void installSources(
+    final Collection<RSRepositorySource> sources)
+    throws RSRepositoryException
+  {
+    Objects.requireNonNull(sources, "sources");
+    this.installInto(null, sources);
+  }
+
+  @Override
+  public void installIntoChannel(
+    final String channelName,
+    final Collection<RSRepositorySource> sources)
+    throws RSRepositoryException
+  {
+    checkChannelName(channelName);
+    Objects.requireNonNull(sources, "sources");
+    this.installInto(channelName, sources);
+  }
+
+  private void installInto(
+    final String channelName,
+    final Collection<RSRepositorySource> sources)
+    throws RSRepositoryException
+  {
+    try {
+      Files.createDirectories(this.fileBundles);
+      Files.createDirectories(this.fileStaging);
+    } catch (final IOException e) {
+      // Best effort.
+    }
+
+    final var staged = this.stageAll(sources, this::stage);
+    try (var ignored = this.lock()) {
+      this.commitStaged(
+        staged,
+        membersOf(channelName, staged.stream().map(Staged::identifier).toList())
+      );
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    } finally {
+      for (final var s : staged) {
+        deleteQuietly(s.file());
+      }
+    }
+  }
+
+  @Override
+  public void installIntoChannels(
+    final Map<String, ? extends Collection<RSRepositorySource>> sourcesByChannel)
+    throws RSRepositoryException
+  {
+    Objects.requireNonNull(sourcesByChannel, "sourcesByChannel");
+
+    final var sources = new ArrayList<RSRepositorySource>();
+    for (final var entry : sourcesByChannel.entrySet()) {
+      if (!entry.getKey().isEmpty()) {
+        checkChannelName(entry.getKey());
+      }
+      sources.addAll(entry.getValue());
+    }
+
     try {
       Files.createDirectories(this.fileBundles);
+      Files.createDirectories(this.fileStaging);
     } catch (final IOException e) {
       // Best effort.
     }
 
-    final var checked = this.checkBundles(files);
-    try (var ignored = this.channel.lock()) {
-      for (final var entry : checked.entrySet()) {
-        this.installBundleFile(entry.getKey(), entry.getValue());
+    /*
+     * Everything is staged in a single pass. The staged files are in the
+     * same order as the sources, so the members of each channel are the
+     * consecutive runs of staged files.
+     */
+
+    final var staged = this.stageAll(sources, this::stage);
+    final var members = new TreeMap<String, List<RSBundleIdentifier>>();
+    var offset = 0;
+    for (final var entry : sourcesByChannel.entrySet()) {
+      final var count = entry.getValue().size();
+      if (!entry.getKey().isEmpty()) {
+        members.computeIfAbsent(entry.getKey(), k -> new ArrayList<>())
+          .addAll(staged.subList(offset, offset + count)
+                    .stream()
+                    .map(Staged::identifier)
+                    .toList());
+      }
+      offset += count;
+    }
+
+    try (var ignored = this.lock()) {
+      this.commitStaged(staged, members);
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    } finally {
+      for (final var s : staged) {
+        deleteQuietly(s.file());
+      }
+    }
+  }
+
+  private static Map<String, List<RSBundleIdentifier>> membersOf(
+    final String channelName,
+    final List<RSBundleIdentifier> members)
+  {
+    if (channelName == null) {
+      return Map.of();
+    }
+    return Map.of(channelName, members);
+  }
+
+  @Override
+  public void installIdentified(
+    final Collection<RSIdentifiedBundle> bundles)
+    throws RSRepositoryException
+  {
+    Objects.requireNonNull(bundles, "bundles");
+    this.installIdentifiedInto(null, bundles);
+  }
+
+  @Override
+  public void installIdentifiedIntoChannel(
+    final String channelName,
+    final Collection<RSIdentifiedBundle> bundles)
+    throws RSRepositoryException
+  {
+    checkChannelName(channelName);
+    Objects.requireNonNull(bundles, "bundles");
+    this.installIdentifiedInto(channelName, bundles);
+  }
+
+  private void installIdentifiedInto(
+    final String channelName,
+    final Collection<RSIdentifiedBundle> bundles)
+    throws RSRepositoryException
+  {
+    final var required = new ArrayList<RSIdentifiedBundle>(bundles.size());
+    try {
+      Files.createDirectories(this.fileBundles);
+      Files.createDirectories(this.fileStaging);
+
+      for (final var bundle : bundles) {
+        if (this.isInstalled(bundle)) {
+          this.counters.onBundleSkipped();
+        } else {
+          required.add(bundle);
+        }
+      }
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+
+    final var staged = this.stageAll(required, this::stageIdentified);
+    try (var ignored = this.lock()) {
+      this.commitStaged(
+        staged,
+        membersOf(
+          channelName,
+          bundles.stream().map(RSIdentifiedBundle::identifier).toList())
+      );
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    } finally {
+      for (final var s : staged) {
+        deleteQuietly(s.file());
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if the repository already holds the given bundle
+   * with the same hash and size
+   */
+
+  private boolean isInstalled(
+    final RSIdentifiedBundle bundle)
+    throws IOException
+  {
+    final var file =
+      this.fileBundles.resolve(bundle.identifier().fileName());
+    final var fileHash =
+      RSBundleHashes.sidecarOf(file);
+
+    return Files.isRegularFile(file)
+           && Files.isRegularFile(fileHash)
+           && Objects.equals(
+      Files.readString(fileHash, UTF_8).trim(), bundle.hash())
+           && Files.size(file) == Files.size(bundle.file());
+  }
+
+  /**
+   * Move the staged files into place, add the given bundles to the given
+   * channels, and regenerate any affected indexes. Must be called with the
+   * repository lock held.
+   */
+
+  private void commitStaged(
+    final List<Staged> staged,
+    final Map<String, List<RSBundleIdentifier>> membersByChannel)
+    throws IOException, RSRepositoryException
+  {
+    final var changed = new HashSet<RSBundleIdentifier>();
+    for (final var s : staged) {
+      if (this.installStagedFile(s)) {
+        this.counters.onBundleCopied();
+        changed.add(s.identifier());
+      } else {
+        this.counters.onBundleSkipped();
       }
+    }
 
+    var committed = !changed.isEmpty();
+    if (committed || !Files.isRegularFile(this.fileIndex)) {
       this.generateIndex();
+      committed = true;
+    }
+
+    final var reindex = new HashSet<String>();
+    for (final var entry : membersByChannel.entrySet()) {
+      if (this.addToChannel(entry.getKey(), entry.getValue())) {
+        reindex.add(entry.getKey());
+      }
+    }
+    this.reindexChannels(reindex, changed);
+
+    if (committed || !reindex.isEmpty()) {
+      this.bumpGeneration();
+    }
+  }
+
+  /**
+   * Add the given bundles to the given channel.
+   *
+   * @return {@code true} if the channel index must be regenerated
+   */
+
+  private boolean addToChannel(
+    final String channelName,
+    final List<RSBundleIdentifier> bundles)
+    throws IOException
+  {
+    final var members = this.readMembers(channelName);
+    final var membersChanged = members.addAll(bundles);
+
+    if (membersChanged
+        || !Files.isRegularFile(this.channelIndexOf(channelName))) {
+      this.writeMembers(channelName, members);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Reindex the given channels, and every channel that contains a bundle
+   * whose content has changed.
+   */
+
+  private void reindexChannels(
+    final Set<String> channelNames,
+    final Set<RSBundleIdentifier> changed)
+    throws IOException, RSRepositoryException
+  {
+    for (final var name : this.channelsLocked()) {
+      final var members = this.readMembers(name);
+      if (channelNames.contains(name)
+          || !Collections.disjoint(members, changed)) {
+        this.generateChannelIndex(name, members);
+      }
+    }
+  }
+
+  @Override
+  public void promote(
+    final String fromChannel,
+    final String toChannel,
+    final Collection<RSBundleIdentifier> bundles)
+    throws RSRepositoryException
+  {
+    checkChannelName(fromChannel);
+    checkChannelName(toChannel);
+    Objects.requireNonNull(bundles, "bundles");
+
+    try (var ignored = this.lock()) {
+      final var sourceMembers =
+        this.readMembers(fromChannel);
+      final var exceptions =
+        new ExceptionTracker<RSRepositoryException>();
+
+      for (final var bundle : bundles) {
+        if (!sourceMembers.contains(bundle)) {
+          exceptions.addException(new RSRepositoryException(
+            String.format(
+              "Bundle '%s' is not a member of channel '%s'",
+              bundle,
+              fromChannel)
+          ));
+        }
+      }
+      exceptions.throwIfNecessary();
+
+      final var targetMembers = this.readMembers(toChannel);
+      if (targetMembers.addAll(bundles)
+          || !Files.isRegularFile(this.channelIndexOf(toChannel))) {
+        this.writeMembers(toChannel, targetMembers);
+        this.generateChannelIndex(toChannel, targetMembers);
+        this.bumpGeneration();
+      }
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void removeFromChannel(
+    final String channelName,
+    final Collection<RSBundleIdentifier> bundles)
+    throws RSRepositoryException
+  {
+    checkChannelName(channelName);
+    Objects.requireNonNull(bundles, "bundles");
+
+    try (var ignored = this.lock()) {
+      final var members = this.readMembers(channelName);
+      if (members.removeAll(bundles)) {
+        this.writeMembers(channelName, members);
+        this.generateChannelIndex(channelName, members);
+        this.bumpGeneration();
+      }
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public long generation()
+  {
+    return (long) GENERATION.getVolatile(this.generation, 0);
+  }
+
+  @Override
+  public OptionalLong awaitGeneration(
+    final long after,
+    final Duration timeout)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    final var deadline =
+      System.nanoTime() + timeout.toNanos();
+    var delay =
+      GENERATION_POLL_MINIMUM_MS;
+
+    while (true) {
+      final var current = this.generation();
+      if (current > after) {
+        return OptionalLong.of(current);
+      }
+
+      final var remaining = deadline - System.nanoTime();
+      if (remaining <= 0L) {
+        return OptionalLong.empty();
+      }
+
+      Thread.sleep(Math.min(delay, Math.max(1L, remaining / 1_000_000L)));
+      delay = Math.min(delay * 2L, GENERATION_POLL_MAXIMUM_MS);
+    }
+  }
+
+  @Override
+  public void reindex()
+    throws RSRepositoryException
+  {
+    try (var ignored = this.lock()) {
+      Files.createDirectories(this.fileBundles);
+
+      var changed = this.generateIndex();
+      for (final var name : this.channelsLocked()) {
+        changed |= this.generateChannelIndex(name, this.readMembers(name));
+      }
+      if (changed) {
+        this.bumpGeneration();
+      }
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void verify()
+    throws RSRepositoryException
+  {
+    final var exceptions =
+      new ExceptionTracker<RSRepositoryException>();
+
+    try (var ignored = this.lock()) {
+      final var files = new ArrayList<Path>();
+      if (Files.isDirectory(this.fileBundles)) {
+        try (var stream = Files.list(this.fileBundles)) {
+          stream.filter(RSRepository::isJarFile)
+            .sorted()
+            .forEach(files::add);
+        }
+      }
+      if (Files.isRegularFile(this.fileIndex)) {
+        files.add(this.fileIndex);
+      }
+      for (final var name : this.channelsLocked()) {
+        final var index = this.channelIndexOf(name);
+        if (Files.isRegularFile(index)) {
+          files.add(index);
+        }
+      }
+
+      for (final var file : files) {
+        try {
+          verifyFile(file);
+        } catch (final RSRepositoryException e) {
+          exceptions.addException(e);
+        }
+      }
+    } catch (final IOException e) {
+      exceptions.addException(new RSRepositoryException(e.getMessage(), e));
+    }
+
+    exceptions.throwIfNecessary();
+  }
+
+  private static void verifyFile(
+    final Path file)
+    throws RSRepositoryException
+  {
+    try {
+      final var sidecar = RSBundleHashes.sidecarOf(file);
+      if (!Files.isRegularFile(sidecar)) {
+        throw new RSRepositoryException(
+          String.format("File '%s' has no recorded hash", file)
+        );
+      }
+
+      final var expected =
+        Files.readString(sidecar, UTF_8).trim();
+      final var received =
+        RSBundleHashes.hashOf(file);
+
+      if (!Objects.equals(expected, received)) {
+        throw new RSRepositoryException(
+          String.format(
+            "File '%s' has hash %s, but the recorded hash is %s",
+            file,
+            received,
+            expected)
+        );
+      }
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Acquire the repository lock, recording the time spent waiting for it.
+   * The lock shared by all instances of the repository within this JVM is
+   * acquired first, and then the file lock that excludes other processes.
+   */
+
+  private HeldLock lock()
+    throws IOException
+  {
+    final var timeThen = System.nanoTime();
+    this.localLock.lock();
+    try {
+      final var held = this.channel.lock();
+      this.counters.onLockAcquired(System.nanoTime() - timeThen);
+      return new HeldLock(this.localLock, held);
+    } catch (final IOException | RuntimeException e) {
+      this.localLock.unlock();
+      throw e;
+    }
+  }
+
+  @Override
+  public RSRepositoryStatistics statistics()
+  {
+    return this.counters.snapshot();
+  }
+
+  /**
+   * Increment the generation counter. Must be called with the repository
+   * lock held, after all files belonging to a change have been written.
+   */
+
+  private void bumpGeneration()
+  {
+    final var next = this.generation() + 1L;
+    GENERATION.setVolatile(this.generation, 0, next);
+  }
+
+  @Override
+  public SortedSet<String> channels()
+    throws RSRepositoryException
+  {
+    try {
+      return Collections.unmodifiableSortedSet(this.channelsLocked());
     } catch (final IOException e) {
       throw new RSRepositoryException(e.getMessage(), e);
     }
   }
 
-  private void generateIndex()
+  @Override
+  public SortedSet<RSBundleIdentifier> channelBundles(
+    final String channelName)
     throws RSRepositoryException
   {
+    checkChannelName(channelName);
+
+    try {
+      return Collections.unmodifiableSortedSet(this.readMembers(channelName));
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+  }
+
+  private SortedSet<String> channelsLocked()
+    throws IOException
+  {
+    final var names = new TreeSet<String>();
+    if (!Files.isDirectory(this.fileChannels)) {
+      return names;
+    }
+
+    try (var stream = Files.list(this.fileChannels)) {
+      stream.map(p -> p.getFileName().toString())
+        .filter(n -> n.endsWith(CHANNEL_SUFFIX))
+        .map(n -> n.substring(0, n.length() - CHANNEL_SUFFIX.length()))
+        .filter(n -> VALID_CHANNEL_NAME.matcher(n).matches())
+        .forEach(names::add);
+    }
+    return names;
+  }
+
+  private Path channelIndexOf(
+    final String channelName)
+  {
+    return this.configuration.directory()
+      .resolve("obr-%s.xml".formatted(channelName));
+  }
+
+  /**
+   * Read the members of a channel. The membership file contains one
+   * {@code name:version} identifier per line.
+   */
+
+  private SortedSet<RSBundleIdentifier> readMembers(
+    final String channelName)
+    throws IOException
+  {
+    final var file =
+      this.fileChannels.resolve(channelName + CHANNEL_SUFFIX);
+    final var members =
+      new TreeSet<RSBundleIdentifier>();
+
+    if (!Files.isRegularFile(file)) {
+      return members;
+    }
+
+    for (final var line : Files.readAllLines(file, UTF_8)) {
+      final var trimmed = line.trim();
+      if (trimmed.isEmpty()) {
+        continue;
+      }
+      try {
+        members.add(RSBundleIdentifier.parse(trimmed));
+      } catch (final IllegalArgumentException e) {
+        throw new IOException(
+          String.format("%s: %s", file, e.getMessage()), e);
+      }
+    }
+    return members;
+  }
+
+  private void writeMembers(
+    final String channelName,
+    final Set<RSBundleIdentifier> members)
+    throws IOException
+  {
+    Files.createDirectories(this.fileChannels);
+
+    final var text = new StringBuilder(members.size() * 64);
+    for (final var member : members) {
+      text.append(member);
+      text.append('\n');
+    }
+
+    writeAtomically(
+      this.fileChannels.resolve(channelName + CHANNEL_SUFFIX),
+      text.toString()
+    );
+  }
+
+  private RSFragmentIndexer createFragmentIndexer()
+  {
+    return new RSFragmentIndexer(
+      this.indexers,
+      this.fileFragments,
+      this.configuration.directory().toUri(),
+      this.configuration.name(),
+      this.configuration.indexParallelism()
+    );
+  }
+
+  /**
+   * Generate the index for a single channel. Bundles that have already been
+   * described for any index are not read again.
+   */
+
+  private boolean generateChannelIndex(
+    final String channelName,
+    final Set<RSBundleIdentifier> members)
+    throws RSRepositoryException
+  {
+    final var jars =
+      new ArrayList<Path>(members.size());
+    final var exceptions =
+      new ExceptionTracker<RSRepositoryException>();
+
+    for (final var member : members) {
+      final var file = this.fileBundles.resolve(member.fileName());
+      if (Files.isRegularFile(file)) {
+        jars.add(file.toAbsolutePath());
+      } else {
+        exceptions.addException(new RSRepositoryException(
+          String.format(
+            "Channel '%s' refers to bundle '%s', which is not present in the repository",
+            channelName,
+            member)
+        ));
+      }
+    }
+    exceptions.throwIfNecessary();
+
+    final var timeThen = System.nanoTime();
+    try {
+      final var index =
+        this.channelIndexOf(channelName);
+      final var document =
+        this.createFragmentIndexer().execute(jars);
+
+      return this.writeIndex(
+        document,
+        index,
+        index.resolveSibling(index.getFileName() + ".tmp"),
+        RSBundleHashes.sidecarOf(index)
+      );
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    } finally {
+      this.counters.onIndexGenerated(System.nanoTime() - timeThen);
+    }
+  }
+
+  @Override
+  public void installArchive(
+    final Path archive)
+    throws RSRepositoryException
+  {
+    Objects.requireNonNull(archive, "archive");
+
+    try (var zip = FileSystems.newFileSystem(archive)) {
+      final var sources = new ArrayList<RSRepositorySource>();
+      for (final var root : zip.getRootDirectories()) {
+        try (var stream = Files.walk(root)) {
+          stream.filter(Files::isRegularFile)
+            .filter(RSRepository::isJarFile)
+            .sorted()
+            .forEach(entry -> {
+              sources.add(new RSRepositorySource(
+                "%s!%s".formatted(archive, entry),
+                () -> Files.newByteChannel(entry)
+              ));
+            });
+        }
+      }
+      this.installSources(sources);
+    } catch (final IOException e) {
+      throw new RSRepositoryException(e.getMessage(), e);
+    }
+  }
+
+  private boolean generateIndex()
+    throws RSRepositoryException
+  {
+    final var timeThen = System.nanoTime();
     try (var stream = Files.list(this.fileBundles)) {
       final var jars =
         stream.filter(RSRepository::isJarFile)
           .map(Path::toAbsolutePath)
+          .sorted()
           .toList();
 
-      final var config =
-        new OFBundleIndexerConfiguration(
-          jars,
-          this.fileIndexTmp,
-          this.configuration.directory().toUri(),
-          this.configuration.name()
-        );
+      final var parallelism =
+        this.configuration.indexParallelism();
+      final var fragmentIndexer =
+        this.createFragmentIndexer();
 
-      try (var indexer = this.indexers.createIndexer(config)) {
-        indexer.execute();
+      final Document document;
+      if (parallelism > 1 && jars.size() > 1) {
+        document = fragmentIndexer.execute(jars);
+      } else {
+        final var config =
+          new OFBundleIndexerConfiguration(
+            jars,
+            this.fileIndexTmp,
+            this.configuration.directory().toUri(),
+            this.configuration.name()
+          );
+
+        try (var indexer = this.indexers.createIndexer(config)) {
+          indexer.execute();
+        }
+
+        document = RSIndexDocuments.parse(
+          RSIndexDocuments.createDocumentBuilder(),
+          this.fileIndexTmp
+        );
       }
 
-      Files.move(
-        this.fileIndexTmp,
+      fragmentIndexer.retainOnly(jars);
+      return this.writeIndex(
+        document,
         this.fileIndex,
-        ATOMIC_MOVE,
-        REPLACE_EXISTING
+        this.fileIndexTmp,
+        this.fileIndexHash
       );
     } catch (final IOException e) {
       throw new RSRepositoryException(e.getMessage(), e);
+    } finally {
+      this.counters.onIndexGenerated(System.nanoTime() - timeThen);
     }
   }
 
-  private void installBundleFile(
-    final Path file,
-    final Identifier value)
+  /**
+   * Write an index file, unless an identical file already exists.
+   *
+   * @return {@code true} if the index file was changed
+   */
+
+  private boolean writeIndex(
+    final Document document,
+    final Path index,
+    final Path indexTmp,
+    final Path indexHash)
+    throws IOException
+  {
+    RSIndexDocuments.canonicalize(
+      document,
+      this.configuration.indexTimestamps()
+    );
+    RSIndexDocuments.write(document, indexTmp);
+
+    /*
+     * If the canonical index is identical to the existing index, leave
+     * the existing file (and its modification time) untouched.
+     */
+
+    if (Files.isRegularFile(index)
+        && Files.mismatch(indexTmp, index) == -1L) {
+      Files.delete(indexTmp);
+      return false;
+    }
+
+    final var digest = RSBundleHashes.createDigest();
+    try (var input = Files.newInputStream(indexTmp)) {
+      input.transferTo(new DigestOutputStream(
+        OutputStream.nullOutputStream(), digest));
+    }
+
+    Files.deleteIfExists(indexHash);
+    Files.move(indexTmp, index, ATOMIC_MOVE, REPLACE_EXISTING);
+    writeAtomically(indexHash, HexFormat.of().formatHex(digest.digest()));
+    return true;
+  }
+
+  /**
+   * Move a staged file into the bundle directory. A {@code .sha256} file is
+   * kept next to each bundle so that reinstalling identical content can be
+   * detected without reading the existing bundle.
+   *
+   * @return {@code true} if the bundle directory was changed
+   */
+
+  private boolean installStagedFile(
+    final Staged staged)
     throws IOException
   {
     final var name =
-      String.format("%s-%s.jar", value.name, value.version.toString());
-    final var nameTmp =
-      String.format("%s-%s.jar.tmp", value.name, value.version);
+      staged.identifier().fileName();
 
-    final var fileOutTmp =
-      this.fileBundles.resolve(nameTmp);
     final var fileOut =
       this.fileBundles.resolve(name);
+    final var fileHash =
+      this.fileBundles.resolve(name + ".sha256");
 
     Files.createDirectories(this.fileBundles);
 
-    try (var output = Files.newOutputStream(fileOutTmp, OPTIONS)) {
-      try (var input = Files.newInputStream(file)) {
-        input.transferTo(output);
+    if (Files.isRegularFile(fileOut) && Files.isRegularFile(fileHash)) {
+      final var existing = Files.readString(fileHash, UTF_8).trim();
+      if (Objects.equals(existing, staged.hash())
+          && Files.size(fileOut) == staged.size()) {
+        return false;
       }
-      output.flush();
     }
 
-    Files.move(fileOutTmp, fileOut, ATOMIC_MOVE, REPLACE_EXISTING);
+    Files.deleteIfExists(fileHash);
+    Files.move(staged.file(), fileOut, ATOMIC_MOVE, REPLACE_EXISTING);
+    writeAtomically(fileHash, staged.hash());
+    return true;
   }
 
   @Override
@@ -276,9 +1275,48 @@ public final class RSRepository implements RSRepositoryType
 
   }
 
-  private record Identifier(
-    String name,
-    Version version)
+  /**
+   * A held repository lock. Closing it releases the file lock and then the
+   * JVM-wide lock.
+   */
+
+  private record HeldLock(
+    ReentrantLock localLock,
+    FileLock fileLock)
+    implements AutoCloseable
+  {
+    @Override
+    public void close()
+      throws IOException
+    {
+      try {
+        this.fileLock.close();
+      } finally {
+        this.localLock.unlock();
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface StagerType<T>
+  {
+    Staged stage(T source)
+      throws Exception;
+  }
+
+  private record StagedData(
+    Path file,
+    String hash,
+    long size)
+  {
+
+  }
+
+  private record Staged(
+    Path file,
+    RSBundleIdentifier identifier,
+    String hash,
+    long size)
   {
 
   }
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.rivershark.obrcontrol.internal;
+
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryStatistics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters from which repository statistics are produced.
+ */
+
+final class RSRepositoryCounters
+{
+  private final LongAdder bundlesCopied;
+  private final LongAdder bundlesSkipped;
+  private final LongAdder bytesCopied;
+  private final LongAdder indexesGenerated;
+  private final LongAdder copyNanos;
+  private final LongAdder indexNanos;
+  private final LongAdder locksAcquired;
+  private final LongAdder lockWaitNanos;
+
+  RSRepositoryCounters()
+  {
+    this.bundlesCopied = new LongAdder();
+    this.bundlesSkipped = new LongAdder();
+    this.bytesCopied = new LongAdder();
+    this.indexesGenerated = new LongAdder();
+    this.copyNanos = new LongAdder();
+    this.indexNanos = new LongAdder();
+    this.locksAcquired = new LongAdder();
+    this.lockWaitNanos = new LongAdder();
+  }
+
+  void onBundleCopied()
+  {
+    this.bundlesCopied.increment();
+  }
+
+  void onBundleSkipped()
+  {
+    this.bundlesSkipped.increment();
+  }
+
+  void onDataCopied(
+    final long size,
+    final long nanos)
+  {
+    this.bytesCopied.add(size);
+    this.copyNanos.add(nanos);
+  }
+
+  void onIndexGenerated(
+    final long nanos)
+  {
+    this.indexesGenerated.increment();
+    this.indexNanos.add(nanos);
+  }
+
+  void onLockAcquired(
+    final long nanos)
+  {
+    this.locksAcquired.increment();
+    this.lockWaitNanos.add(nanos);
+  }
+
+  RSRepositoryStatistics snapshot()
+  {
+    return new RSRepositoryStatistics(
+      this.bundlesCopied.sum(),
+      this.bundlesSkipped.sum(),
+      this.bytesCopied.sum(),
+      this.indexesGenerated.sum(),
+      this.locksAcquired.sum(),
+      Duration.ofNanos(this.copyNanos.sum()),
+      Duration.ofNanos(this.indexNanos.sum()),
+      Duration.ofNanos(this.lockWaitNanos.sum())
+    );
+  }
+}
@@ -29,6 +29,7 @@ module com.io7m.rivershark.obrcontrol
   requires com.io7m.oatfield.api;
   requires com.io7m.oatfield.vanilla;
   requires com.io7m.verona.core;
+  requires java.xml;
   requires org.osgi.resource;
 
   exports com.io7m.rivershark.obrcontrol;
@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests;
+
+import com.io7m.rivershark.cmdline.MainExitless;
+import com.io7m.rivershark.cmdline.internal.RSBatchParser;
+import com.io7m.rivershark.cmdline.internal.RSBatchWork;
+import com.io7m.rivershark.obrcontrol.RSRepositories;
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import com.io7m.rivershark.obrcontrol.api.RSRepositorySource;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class RSBatchTest
+{
+  private Path directory;
+  private Path reposDirectory;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      RSTestDirectories.createTempDirectory();
+    this.reposDirectory =
+      this.directory.resolve("repos");
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    RSTestDirectories.deleteDirectory(this.directory);
+  }
+
+  @Test
+  public void testSplit()
+    throws Exception
+  {
+    assertEquals(
+      List.of("install", "r", "a.jar", "b.jar"),
+      RSBatchParser.split("install  r\ta.jar b.jar", 1));
+    assertEquals(
+      List.of("install", "r", "/x/my bundle.jar", ""),
+      RSBatchParser.split("install r \"/x/my bundle.jar\" \"\"", 1));
+    assertEquals(
+      List.of("install", "r", "a\"b\\c.jar"),
+      RSBatchParser.split("install r \"a\\\"b\\\\c.jar\"", 1));
+    assertEquals(
+      List.of("install", "r", "C:\\x.jar"),
+      RSBatchParser.split("install r C:\\x.jar", 1));
+
+    final var ex = assertThrows(IOException.class, () -> {
+      RSBatchParser.split("install r \"a.jar", 23);
+    });
+    assertTrue(ex.getMessage().contains("Line 23"));
+  }
+
+  @Test
+  public void testParseGroups()
+    throws Exception
+  {
+    final var work = parse("""
+      # A comment.
+
+      install r0 a.jar
+      install r1 channel=stable b.jar
+      install r0 channel=stable c.jar "d e.jar"
+      install ./r0 f.jar
+      reindex r1
+      verify r0
+      """);
+
+    final var r0 = Path.of("r0").toAbsolutePath();
+    final var r1 = Path.of("r1").toAbsolutePath();
+    assertEquals(List.of(r0, r1), List.copyOf(work.keySet()));
+
+    final var work0 = work.get(r0);
+    assertEquals(List.of("", "stable"), List.copyOf(work0.installs().keySet()));
+    assertEquals(
+      List.of(Path.of("a.jar").toAbsolutePath(), Path.of("f.jar").toAbsolutePath()),
+      work0.installs().get(""));
+    assertEquals(
+      List.of(Path.of("c.jar").toAbsolutePath(), Path.of("d e.jar").toAbsolutePath()),
+      work0.installs().get("stable"));
+    assertFalse(work0.reindex());
+    assertTrue(work0.verify());
+
+    final var work1 = work.get(r1);
+    assertEquals(
+      List.of(Path.of("b.jar").toAbsolutePath()),
+      work1.installs().get("stable"));
+    assertTrue(work1.reindex());
+    assertFalse(work1.verify());
+  }
+
+  @Test
+  public void testParseErrors()
+  {
+    final var ex0 = assertThrows(IOException.class, () -> {
+      parse("install r0 a.jar\ncompress r0\n");
+    });
+    assertTrue(ex0.getMessage().contains("Line 2"));
+    assertTrue(ex0.getMessage().contains("compress"));
+
+    final var ex1 = assertThrows(IOException.class, () -> {
+      parse("verify\n");
+    });
+    assertTrue(ex1.getMessage().contains("Line 1"));
+  }
+
+  /**
+   * Installs into several channels of one repository are committed at once:
+   * the generation advances once, rather than once per line or per channel,
+   * and paths containing spaces are accepted when quoted.
+   */
+
+  @Test
+  public void testBatchCoalesces()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0", "example 0.jar");
+    final var file1 =
+      this.createBundle("com.io7m.example1", "1.0.0", "example1.jar");
+    final var file2 =
+      this.createBundle("com.io7m.example2", "1.0.0", "example2.jar");
+
+    this.runBatch("""
+      install "%1$s" "%2$s"
+      install "%1$s" channel=stable "%3$s"
+      install "%1$s" channel=testing "%3$s" "%4$s"
+      verify "%1$s"
+      """.formatted(this.reposDirectory, file0, file1, file2));
+
+    try (var repository = this.open("Rivershark")) {
+      assertEquals(1L, repository.generation());
+      assertEquals(
+        List.of(new RSBundleIdentifier("com.io7m.example1", "1.0.0")),
+        List.copyOf(repository.channelBundles("stable")));
+      assertEquals(2, repository.channelBundles("testing").size());
+      assertTrue(
+        Files.readString(this.reposDirectory.resolve("obr.xml"))
+          .contains("com.io7m.example0-1.0.0.jar"));
+    }
+  }
+
+  /**
+   * A reindex requested alongside installations is still performed, so
+   * indexes that the installation does not touch are regenerated.
+   */
+
+  @Test
+  public void testBatchReindexWithInstalls()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0", "example0.jar");
+    final var file1 =
+      this.createBundle("com.io7m.example1", "1.0.0", "example1.jar");
+
+    try (var repository = this.open("Rivershark")) {
+      repository.installIntoChannel(
+        "stable", List.of(RSRepositorySource.ofFile(file0)));
+    }
+
+    final var channelIndex = this.reposDirectory.resolve("obr-stable.xml");
+    Files.delete(channelIndex);
+
+    this.runBatch("""
+      install "%1$s" "%2$s"
+      reindex "%1$s"
+      """.formatted(this.reposDirectory, file1));
+
+    assertTrue(Files.isRegularFile(channelIndex));
+  }
+
+  /**
+   * The repository title given with --name is used for the indexes written
+   * by the batch.
+   */
+
+  @Test
+  public void testBatchName()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0", "example0.jar");
+
+    this.runBatch(
+      "install \"%s\" \"%s\"\n".formatted(this.reposDirectory, file0),
+      "--name",
+      "Custom Title");
+
+    assertTrue(
+      Files.readString(this.reposDirectory.resolve("obr.xml"))
+        .contains("Custom Title"));
+  }
+
+  private static Map<Path, RSBatchWork> parse(
+    final String text)
+    throws IOException
+  {
+    return RSBatchParser.parse(new BufferedReader(new StringReader(text)));
+  }
+
+  private void runBatch(
+    final String operations,
+    final String... extra)
+    throws IOException
+  {
+    final var file = this.directory.resolve("batch.txt");
+    Files.writeString(file, operations);
+
+    final var arguments = new ArrayList<String>();
+    arguments.add("batch");
+    arguments.add("--file");
+    arguments.add(file.toString());
+    arguments.addAll(List.of(extra));
+    MainExitless.main(arguments.toArray(new String[0]));
+  }
+
+  private RSRepositoryType open(
+    final String name)
+    throws Exception
+  {
+    return new RSRepositories().open(
+      RSRepositoryConfiguration.builder(this.reposDirectory)
+        .setName(name)
+        .build()
+    );
+  }
+
+  private Path createBundle(
+    final String name,
+    final String version,
+    final String fileName)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-ManifestVersion", "2");
+    attributes.putValue("Bundle-SymbolicName", name);
+    attributes.putValue("Bundle-Version", version);
+
+    final var file = this.directory.resolve(fileName);
+    try (var output = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      output.flush();
+    }
+    return file;
+  }
+}
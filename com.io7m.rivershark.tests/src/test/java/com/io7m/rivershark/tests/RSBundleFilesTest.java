@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests;
+
+import com.io7m.rivershark.cmdline.MainExitless;
+import com.io7m.rivershark.cmdline.internal.RSBundleFiles;
+import com.io7m.rivershark.obrcontrol.RSRepositories;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class RSBundleFilesTest
+{
+  private Path directory;
+  private Path root;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      RSTestDirectories.createTempDirectory();
+    this.root =
+      this.directory.resolve("root");
+
+    Files.createDirectories(this.root.resolve("lib/x"));
+    Files.createDirectories(this.root.resolve("test"));
+    for (final var name : List.of(
+      "b.jar",
+      "a.jar",
+      "README.txt",
+      "lib/c.jar",
+      "lib/x/d.jar",
+      "test/e.jar",
+      "test/e-tests.jar")) {
+      Files.writeString(this.root.resolve(name), name);
+    }
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    RSTestDirectories.deleteDirectory(this.directory);
+  }
+
+  /**
+   * Only jar files are found by default, recursively, in sorted order.
+   */
+
+  @Test
+  public void testDefaultJars()
+    throws Exception
+  {
+    assertEquals(
+      this.resolveAll(
+        "a.jar",
+        "b.jar",
+        "lib/c.jar",
+        "lib/x/d.jar",
+        "test/e-tests.jar",
+        "test/e.jar"),
+      RSBundleFiles.find(
+        List.of(), List.of(this.root), true, List.of(), List.of())
+    );
+  }
+
+  /**
+   * Files named directly come first, in the order given, followed by the
+   * files of each directory in the order the directories were given.
+   */
+
+  @Test
+  public void testOrdering()
+    throws Exception
+  {
+    final var named0 = this.directory.resolve("z.jar");
+    final var named1 = this.directory.resolve("y.jar");
+
+    final var found =
+      RSBundleFiles.find(
+        List.of(named0, named1),
+        List.of(this.root.resolve("test"), this.root.resolve("lib")),
+        true,
+        List.of(),
+        List.of()
+      );
+
+    assertEquals(
+      List.of(
+        named0,
+        named1,
+        this.root.resolve("test/e-tests.jar"),
+        this.root.resolve("test/e.jar"),
+        this.root.resolve("lib/c.jar"),
+        this.root.resolve("lib/x/d.jar")),
+      found
+    );
+  }
+
+  /**
+   * Non-recursive searches only consider the immediate contents of each
+   * directory.
+   */
+
+  @Test
+  public void testNonRecursive()
+    throws Exception
+  {
+    assertEquals(
+      this.resolveAll("a.jar", "b.jar"),
+      RSBundleFiles.find(
+        List.of(), List.of(this.root), false, List.of(), List.of())
+    );
+  }
+
+  /**
+   * A file matched by both an include and an exclude glob is excluded.
+   */
+
+  @Test
+  public void testExcludeWins()
+    throws Exception
+  {
+    assertEquals(
+      this.resolveAll("a.jar", "lib/c.jar", "lib/x/d.jar", "test/e.jar"),
+      RSBundleFiles.find(
+        List.of(),
+        List.of(this.root),
+        true,
+        List.of("*.jar"),
+        List.of("b.jar", "*-tests.jar"))
+    );
+  }
+
+  /**
+   * Globs match either the file name or the path relative to the searched
+   * directory.
+   */
+
+  @Test
+  public void testRelativeGlobs()
+    throws Exception
+  {
+    assertEquals(
+      this.resolveAll("lib/c.jar", "lib/x/d.jar"),
+      RSBundleFiles.find(
+        List.of(), List.of(this.root), true, List.of("lib/**.jar"), List.of())
+    );
+    assertEquals(
+      this.resolveAll("README.txt"),
+      RSBundleFiles.find(
+        List.of(), List.of(this.root), true, List.of("*.txt"), List.of())
+    );
+    assertEquals(
+      this.resolveAll("a.jar", "b.jar", "test/e-tests.jar", "test/e.jar"),
+      RSBundleFiles.find(
+        List.of(), List.of(this.root), true, List.of(), List.of("lib/**"))
+    );
+  }
+
+  /**
+   * Bundles found in a directory are installed by the command.
+   */
+
+  @Test
+  public void testInstallDirectory()
+    throws Exception
+  {
+    final var bundles = this.directory.resolve("bundles");
+    Files.createDirectories(bundles.resolve("nested"));
+    createBundle(bundles.resolve("b0.jar"), "com.io7m.example0");
+    createBundle(bundles.resolve("nested/b1.jar"), "com.io7m.example1");
+    createBundle(bundles.resolve("b2-sources.jar"), "com.io7m.example2");
+
+    final var repos = this.directory.resolve("repos");
+    MainExitless.main(new String[]{
+      "install-bundles",
+      "--repository", repos.toString(),
+      "--directory", bundles.toString(),
+      "--exclude", "*-sources.jar",
+      "--daemon", "false",
+    });
+
+    final var index = Files.readString(repos.resolve("obr.xml"));
+    assertTrue(index.contains("com.io7m.example0-1.0.0.jar"));
+    assertTrue(index.contains("com.io7m.example1-1.0.0.jar"));
+    assertFalse(index.contains("com.io7m.example2"));
+
+    try (var repository = new RSRepositories().open(
+      RSRepositoryConfiguration.builder(repos).build())) {
+      assertEquals(1L, repository.generation());
+    }
+  }
+
+  private List<Path> resolveAll(
+    final String... names)
+  {
+    return List.of(names)
+      .stream()
+      .map(this.root::resolve)
+      .toList();
+  }
+
+  private static void createBundle(
+    final Path file,
+    final String name)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-ManifestVersion", "2");
+    attributes.putValue("Bundle-SymbolicName", name);
+    attributes.putValue("Bundle-Version", "1.0.0");
+
+    try (var output = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      output.flush();
+    }
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests;
+
+import com.io7m.rivershark.cmdline.internal.RSDaemon;
+import com.io7m.rivershark.cmdline.internal.RSDaemonClient;
+import com.io7m.rivershark.cmdline.internal.RSDaemonOptions;
+import com.io7m.rivershark.cmdline.internal.RSDaemonProtocol;
+import com.io7m.rivershark.obrcontrol.RSRepositories;
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.rivershark.obrcontrol.api.RSRepositoryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = SECONDS)
+public final class RSDaemonTest
+{
+  private Path directory;
+  private Path reposDirectory;
+  private Path socket;
+  private RSRepositoryConfiguration configuration;
+  private RSRepositoryType repository;
+  private CompletableFuture<Void> daemon;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      RSTestDirectories.createTempDirectory();
+    this.reposDirectory =
+      this.directory.resolve("repos");
+    this.socket =
+      RSDaemonProtocol.socketOf(this.reposDirectory);
+
+    this.configuration =
+      RSRepositoryConfiguration.builder(this.reposDirectory)
+        .setName("Example")
+        .setIndexParallelism(2)
+        .build();
+    this.repository =
+      new RSRepositories().open(this.configuration);
+
+    final var server =
+      new RSDaemon(
+        LoggerFactory.getLogger(RSDaemonTest.class),
+        this.configuration,
+        this.repository,
+        this.socket
+      );
+
+    this.daemon = CompletableFuture.runAsync(() -> {
+      try {
+        server.run();
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    try {
+      try (var client = this.connect()) {
+        client.request(List.of("stop"));
+      }
+      this.daemon.get();
+    } finally {
+      this.repository.close();
+      RSTestDirectories.deleteDirectory(this.directory);
+    }
+  }
+
+  /**
+   * Fields round trip through the line encoding, and fields that would
+   * break the line structure are rejected.
+   */
+
+  @Test
+  public void testProtocolRoundTrip()
+  {
+    final var fields = List.of("install", "", "/a b/c.jar", "x:y");
+    final var line = RSDaemonProtocol.encode(fields);
+    assertFalse(line.contains("\n"));
+    assertEquals(fields, RSDaemonProtocol.decode(line));
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      RSDaemonProtocol.encode(List.of("install", "a\tb"));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      RSDaemonProtocol.encode(List.of("install", "a\nb"));
+    });
+    assertEquals("a b c", RSDaemonProtocol.sanitize("a\tb\nc"));
+  }
+
+  /**
+   * Installing through the daemon installs into the repository it holds
+   * open, including into channels, and advances the generation.
+   */
+
+  @Test
+  public void testInstall()
+    throws Exception
+  {
+    final var bundle0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+    final var bundle1 =
+      this.createBundle("com.io7m.example1", "1.0.0");
+
+    try (var client = this.connect()) {
+      final var generation = client.generation();
+
+      client.install(Optional.empty(), List.of(bundle0));
+      assertTrue(client.generation() > generation);
+      assertTrue(Files.isRegularFile(
+        this.reposDirectory.resolve("bundles/com.io7m.example0-1.0.0.jar")));
+
+      client.install(Optional.of("stable"), List.of(bundle1));
+      assertEquals(
+        List.of("stable"),
+        client.request(List.of("query-channels")));
+      assertEquals(
+        List.of(new RSBundleIdentifier("com.io7m.example1", "1.0.0").toString()),
+        client.request(List.of("query-channel", "stable")));
+
+      client.verify();
+    }
+  }
+
+  /**
+   * Errors are reported to the client, and the connection remains usable.
+   */
+
+  @Test
+  public void testErrors()
+    throws Exception
+  {
+    try (var client = this.connect()) {
+      final var ex0 = assertThrows(RSRepositoryException.class, () -> {
+        client.request(List.of("nonexistent"));
+      });
+      assertTrue(ex0.getMessage().contains("Unrecognized request"));
+
+      final var ex1 = assertThrows(RSRepositoryException.class, () -> {
+        client.request(List.of("query-channel"));
+      });
+      assertTrue(ex1.getMessage().contains("missing argument"));
+
+      final var ex2 = assertThrows(RSRepositoryException.class, () -> {
+        client.install(
+          Optional.empty(),
+          List.of(this.directory.resolve("nonexistent.jar")));
+      });
+      assertTrue(ex2.getMessage().contains("nonexistent.jar"));
+
+      client.generation();
+    }
+  }
+
+  /**
+   * Concurrent clients are all served, and their modifications are
+   * serialized rather than failing on the repository lock.
+   */
+
+  @Test
+  public void testConcurrentInstalls()
+    throws Exception
+  {
+    final var bundles = new ArrayList<Path>();
+    for (int index = 0; index < 8; ++index) {
+      bundles.add(this.createBundle("com.io7m.example" + index, "1.0.0"));
+    }
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final var futures = new ArrayList<Future<?>>();
+      for (final var bundle : bundles) {
+        futures.add(executor.submit(() -> {
+          try (var client = this.connect()) {
+            client.install(Optional.of("stable"), List.of(bundle));
+          }
+          return null;
+        }));
+      }
+      for (final var future : futures) {
+        future.get();
+      }
+    }
+
+    assertEquals(8, this.repository.channelBundles("stable").size());
+  }
+
+  /**
+   * The daemon reports the configuration of its repository, and clients
+   * that ask for different options are refused rather than silently served
+   * with the daemon's options.
+   */
+
+  @Test
+  public void testConfiguration()
+    throws Exception
+  {
+    try (var client = this.connect()) {
+      final var served = client.configuration();
+      assertEquals(
+        this.reposDirectory.toAbsolutePath(),
+        served.directory());
+      assertEquals("Example", served.name());
+      assertEquals(2, served.indexParallelism());
+      assertFalse(served.indexTimestamps());
+
+      client.checkCompatible(new RSDaemonOptions(
+        this.reposDirectory,
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty()
+      ));
+      client.checkCompatible(new RSDaemonOptions(
+        this.reposDirectory,
+        Optional.of("Example"),
+        Optional.of(Integer.valueOf(2)),
+        Optional.of(Boolean.FALSE)
+      ));
+
+      final var ex0 = assertThrows(RSRepositoryException.class, () -> {
+        client.checkCompatible(new RSDaemonOptions(
+          this.reposDirectory,
+          Optional.of("Other"),
+          Optional.of(Integer.valueOf(4)),
+          Optional.of(Boolean.TRUE)
+        ));
+      });
+      assertTrue(ex0.getMessage().contains("--name 'Other'"));
+      assertTrue(ex0.getMessage().contains("--index-parallelism 4"));
+      assertTrue(ex0.getMessage().contains("--index-timestamps true"));
+
+      final var ex1 = assertThrows(RSRepositoryException.class, () -> {
+        client.checkCompatible(new RSDaemonOptions(
+          this.directory.resolve("other"),
+          Optional.empty(),
+          Optional.empty(),
+          Optional.empty()
+        ));
+      });
+      assertTrue(ex1.getMessage().contains("repository"));
+    }
+  }
+
+  /**
+   * A second daemon refuses to replace the socket of a running daemon.
+   */
+
+  @Test
+  public void testAlreadyRunning()
+    throws Exception
+  {
+    this.connect().close();
+
+    final var ex = assertThrows(IOException.class, () -> {
+      new RSDaemon(
+        LoggerFactory.getLogger(RSDaemonTest.class),
+        this.configuration,
+        this.repository,
+        this.socket
+      ).run();
+    });
+    assertTrue(ex.getMessage().contains("already listening"));
+  }
+
+  /**
+   * No daemon is found on a socket that nothing is listening on.
+   */
+
+  @Test
+  public void testConnectNothing()
+  {
+    assertEquals(
+      Optional.empty(),
+      RSDaemonClient.connect(this.directory.resolve("nonexistent.socket")));
+  }
+
+  private RSDaemonClient connect()
+    throws InterruptedException, ExecutionException
+  {
+    while (true) {
+      final var client = RSDaemonClient.connect(this.socket);
+      if (client.isPresent()) {
+        return client.get();
+      }
+      if (this.daemon.isDone()) {
+        this.daemon.get();
+        throw new IllegalStateException("The daemon stopped");
+      }
+      Thread.sleep(10L);
+    }
+  }
+
+  private Path createBundle(
+    final String name,
+    final String version)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-ManifestVersion", "2");
+    attributes.putValue("Bundle-SymbolicName", name);
+    attributes.putValue("Bundle-Version", version);
+
+    final var file = this.directory.resolve(name + ".jar");
+    try (var output = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      output.flush();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests;
+
+import com.io7m.rivershark.launcher.api.RSLaunchPlan;
+import com.io7m.rivershark.launcher.api.RSLaunchPlanBundle;
+import com.io7m.rivershark.launcher.api.RSLaunchPlanFile;
+import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import com.io7m.rivershark.launcher.api.RSLauncherParameters;
+import com.io7m.rivershark.launcher.felix.internal.RSFelixFingerprint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class RSFelixFingerprintTest
+{
+  private Path directory;
+  private Path bundle;
+  private Path storage;
+  private Path fingerprintFile;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      RSTestDirectories.createTempDirectory();
+    this.bundle =
+      this.directory.resolve("b0.jar");
+    this.storage =
+      this.directory.resolve("runtime/framework");
+    this.fingerprintFile =
+      this.directory.resolve("runtime/framework.fingerprint");
+
+    Files.writeString(this.bundle, "AAAA");
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    RSTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private RSLauncherConfiguration.Builder builder()
+  {
+    return RSLauncherConfiguration.builder(this.directory.resolve("runtime"))
+      .addParameter(RSLauncherParameters.WARM_START, "true")
+      .addOSGIBundle(this.bundle);
+  }
+
+  private RSFelixFingerprint.WarmStart warmStart(
+    final RSLauncherConfiguration configuration)
+    throws Exception
+  {
+    return RSFelixFingerprint.warmStart(
+      configuration, Optional.empty(), this.storage, this.fingerprintFile);
+  }
+
+  /**
+   * The fingerprint is stable, and changes with the parameters, the start
+   * levels, and the content of files even if their sizes are unchanged.
+   */
+
+  @Test
+  public void testComputeChanges()
+    throws Exception
+  {
+    final var configuration = this.builder().build();
+    final var f0 = RSFelixFingerprint.compute(configuration, Optional.empty());
+    assertEquals(
+      f0, RSFelixFingerprint.compute(configuration, Optional.empty()));
+
+    assertNotEquals(f0, RSFelixFingerprint.compute(
+      this.builder().addParameter("x", "y").build(), Optional.empty()));
+    assertNotEquals(f0, RSFelixFingerprint.compute(
+      this.builder().setStartLevel(3).build(), Optional.empty()));
+
+    Files.writeString(this.bundle, "BBBB");
+    assertNotEquals(
+      f0, RSFelixFingerprint.compute(configuration, Optional.empty()));
+  }
+
+  /**
+   * The hashes recorded in a launch plan are used in place of hashing the
+   * files again.
+   */
+
+  @Test
+  public void testComputeUsesPlan()
+    throws Exception
+  {
+    final var configuration = this.builder().build();
+    final var direct =
+      RSFelixFingerprint.compute(configuration, Optional.empty());
+
+    final var recorded = RSLaunchPlanFile.of(this.bundle);
+    final var plan =
+      new RSLaunchPlan(
+        "digest",
+        configuration,
+        List.of(),
+        List.of(new RSLaunchPlanBundle(recorded, "com.io7m.b0", "1.0.0")));
+    assertEquals(direct, RSFelixFingerprint.compute(configuration, Optional.of(plan)));
+
+    final var stale =
+      new RSLaunchPlan(
+        "digest",
+        configuration,
+        List.of(),
+        List.of(new RSLaunchPlanBundle(
+          new RSLaunchPlanFile(
+            recorded.file(),
+            recorded.size(),
+            recorded.lastModified(),
+            "0".repeat(64)),
+          "com.io7m.b0",
+          "1.0.0")));
+    assertNotEquals(
+      direct, RSFelixFingerprint.compute(configuration, Optional.of(stale)));
+  }
+
+  /**
+   * Storage is never reused when warm starts are not enabled.
+   */
+
+  @Test
+  public void testWarmStartDisabled()
+    throws Exception
+  {
+    final var configuration =
+      RSLauncherConfiguration.builder(this.directory.resolve("runtime"))
+        .addOSGIBundle(this.bundle)
+        .build();
+
+    Files.createDirectories(this.storage);
+    RSFelixFingerprint.write(
+      this.fingerprintFile,
+      RSFelixFingerprint.compute(configuration, Optional.empty()));
+
+    final var decision = this.warmStart(configuration);
+    assertEquals(Optional.empty(), decision.value());
+    assertFalse(decision.reuse());
+  }
+
+  /**
+   * Storage is reused only after a successful start recorded a matching
+   * fingerprint, and the recorded fingerprint is removed as soon as a
+   * start begins, so a start that fails is never followed by reuse.
+   */
+
+  @Test
+  public void testWarmStartReuse()
+    throws Exception
+  {
+    final var configuration = this.builder().build();
+
+    final var first = this.warmStart(configuration);
+    assertTrue(first.value().isPresent());
+    assertFalse(first.reuse());
+
+    Files.createDirectories(this.storage);
+    RSFelixFingerprint.write(this.fingerprintFile, first.value().get());
+
+    final var second = this.warmStart(configuration);
+    assertEquals(first.value(), second.value());
+    assertTrue(second.reuse());
+    assertFalse(Files.exists(this.fingerprintFile));
+
+    final var third = this.warmStart(configuration);
+    assertFalse(third.reuse());
+  }
+
+  /**
+   * A change to any input, or missing storage, invalidates the recorded
+   * fingerprint.
+   */
+
+  @Test
+  public void testWarmStartInvalidated()
+    throws Exception
+  {
+    final var configuration = this.builder().build();
+    Files.createDirectories(this.storage);
+
+    final var first = this.warmStart(configuration);
+    RSFelixFingerprint.write(this.fingerprintFile, first.value().get());
+    Files.writeString(this.bundle, "BBBB");
+    assertFalse(this.warmStart(configuration).reuse());
+
+    final var second = this.warmStart(configuration);
+    RSFelixFingerprint.write(this.fingerprintFile, second.value().get());
+    assertFalse(
+      this.warmStart(this.builder().addParameter("x", "y").build()).reuse());
+
+    final var third = this.warmStart(configuration);
+    RSFelixFingerprint.write(this.fingerprintFile, third.value().get());
+    RSTestDirectories.deleteDirectory(this.storage);
+    assertFalse(this.warmStart(configuration).reuse());
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests;
+
+import com.io7m.rivershark.launcher.felix.internal.RSFelixWaves;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class RSFelixWavesTest
+{
+  private static List<List<String>> wavesOf(
+    final List<String> nodes,
+    final Map<String, Set<String>> graph)
+  {
+    return RSFelixWaves.waves(nodes, n -> graph.getOrDefault(n, Set.of()));
+  }
+
+  private static boolean isCyclic(
+    final List<String> wave,
+    final Map<String, Set<String>> graph)
+  {
+    return RSFelixWaves.isCyclic(wave, n -> graph.getOrDefault(n, Set.of()));
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    assertEquals(List.of(), wavesOf(List.of(), Map.of()));
+  }
+
+  @Test
+  public void testIndependent()
+  {
+    final var graph = Map.<String, Set<String>>of();
+    final var waves = wavesOf(List.of("c", "a", "b"), graph);
+    assertEquals(List.of(List.of("c", "a", "b")), waves);
+    assertFalse(isCyclic(waves.get(0), graph));
+  }
+
+  @Test
+  public void testDiamond()
+  {
+    final var graph = Map.of(
+      "b", Set.of("a"),
+      "c", Set.of("a"),
+      "d", Set.of("b", "c")
+    );
+
+    final var waves = wavesOf(List.of("d", "c", "b", "a"), graph);
+    assertEquals(
+      List.of(List.of("a"), List.of("c", "b"), List.of("d")),
+      waves);
+    for (final var wave : waves) {
+      assertFalse(isCyclic(wave, graph));
+    }
+  }
+
+  /**
+   * Dependencies on nodes outside the set (such as fragments, or bundles
+   * that are already started), and on the node itself, do not hold a node
+   * back.
+   */
+
+  @Test
+  public void testIgnoredDependencies()
+  {
+    final var graph = Map.of(
+      "a", Set.of("a", "external"),
+      "b", Set.of("a", "b")
+    );
+
+    final var waves = wavesOf(List.of("a", "b"), graph);
+    assertEquals(List.of(List.of("a"), List.of("b")), waves);
+    assertFalse(isCyclic(List.of("a"), graph));
+  }
+
+  /**
+   * Once only nodes involved in (or depending on) a cycle remain, they are
+   * all placed in one final wave in their original order, and that wave is
+   * the only cyclic one. Nodes that do not depend on the cycle are still
+   * placed in earlier waves.
+   */
+
+  @Test
+  public void testCyclicFallback()
+  {
+    final var graph = Map.of(
+      "a", Set.of("b"),
+      "b", Set.of("a"),
+      "c", Set.of("a"),
+      "e", Set.of("d")
+    );
+
+    final var waves = wavesOf(List.of("a", "b", "c", "d", "e"), graph);
+    assertEquals(
+      List.of(List.of("d"), List.of("e"), List.of("a", "b", "c")),
+      waves);
+
+    assertFalse(isCyclic(waves.get(0), graph));
+    assertFalse(isCyclic(waves.get(1), graph));
+    assertTrue(isCyclic(waves.get(2), graph));
+  }
+
+  /**
+   * A node that merely depends on a cycle makes the final wave cyclic only
+   * because of the cycle's members; on its own it is not cyclic.
+   */
+
+  @Test
+  public void testCyclicRequiresMutualMembers()
+  {
+    final var graph = Map.of(
+      "a", Set.of("b"),
+      "b", Set.of("a"),
+      "c", Set.of("a")
+    );
+
+    assertTrue(isCyclic(List.of("a", "b"), graph));
+    assertFalse(isCyclic(List.of("c"), graph));
+    assertTrue(isCyclic(List.of("c", "a"), graph));
+  }
+
+  /**
+   * For any acyclic graph, every node appears in exactly one wave, every
+   * node's dependencies are in strictly earlier waves, no wave is cyclic,
+   * and each node is in the earliest wave that its dependencies allow.
+   */
+
+  @Property(tries = 200)
+  public void testAcyclicWaves(
+    final @ForAll @Size(max = 24) List<@IntRange(min = 0, max = 1000) Integer> seeds)
+  {
+    final var nodes = new ArrayList<String>();
+    final var graph = new HashMap<String, Set<String>>();
+    for (int index = 0; index < seeds.size(); ++index) {
+      final var node = "n" + index;
+      final var dependencies = new HashSet<String>();
+      final var seed = seeds.get(index).intValue();
+      for (int earlier = 0; earlier < index; ++earlier) {
+        if ((seed + earlier) % 3 == 0) {
+          dependencies.add("n" + earlier);
+        }
+      }
+      nodes.add(node);
+      graph.put(node, dependencies);
+    }
+
+    final var waves = wavesOf(nodes, graph);
+    final var waveOf = new HashMap<String, Integer>();
+    for (int index = 0; index < waves.size(); ++index) {
+      assertFalse(isCyclic(waves.get(index), graph));
+      for (final var node : waves.get(index)) {
+        assertEquals(null, waveOf.put(node, Integer.valueOf(index)));
+      }
+    }
+    assertEquals(nodes.size(), waveOf.size());
+
+    for (final var node : nodes) {
+      var earliest = 0;
+      for (final var dependency : graph.get(node)) {
+        assertTrue(waveOf.get(dependency) < waveOf.get(node));
+        earliest = Math.max(earliest, waveOf.get(dependency) + 1);
+      }
+      assertEquals(earliest, waveOf.get(node).intValue());
+    }
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests;
+
+import com.io7m.rivershark.launcher.api.RSLaunchBundleIdentity;
+import com.io7m.rivershark.launcher.api.RSLaunchPlan;
+import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class RSLaunchPlanTest
+{
+  private Path directory;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = RSTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    RSTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private Path jar(
+    final String name,
+    final String symbolicName)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (symbolicName != null) {
+      attributes.putValue("Bundle-SymbolicName", symbolicName);
+      attributes.putValue("Bundle-Version", "1.2.3");
+    }
+
+    final var file = this.directory.resolve(name);
+    try (var output =
+           new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      output.flush();
+    }
+    return file;
+  }
+
+  private Path configuration(
+    final RSLauncherConfiguration configuration)
+    throws IOException
+  {
+    final var file = this.directory.resolve("rivershark.conf");
+    try (var output = Files.newOutputStream(file)) {
+      configuration.toProperties().store(output, "");
+    }
+    return file;
+  }
+
+  /**
+   * A plan is compiled and cached, and then reused verbatim.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testCompileCached()
+    throws Exception
+  {
+    final var file =
+      this.configuration(
+        RSLauncherConfiguration.builder(this.directory.resolve("runtime"))
+          .addJavaModule(this.jar("m0.jar", null))
+          .addOSGIBundle(this.jar("b0.jar", "com.io7m.b0;singleton:=true"))
+          .addOSGIBundle(this.jar("b1.jar", "com.io7m.b1"))
+          .build()
+      );
+
+    final var plan0 = RSLaunchPlan.loadOrCompile(file);
+    assertEquals(1, plan0.modules().size());
+    assertEquals(2, plan0.bundles().size());
+    assertEquals("com.io7m.b0", plan0.bundles().get(0).symbolicName());
+    assertEquals("1.2.3", plan0.bundles().get(0).version());
+    assertEquals("com.io7m.b1", plan0.bundles().get(1).symbolicName());
+    assertTrue(Files.isRegularFile(RSLaunchPlan.cacheFileOf(plan0.configuration())));
+
+    final var cacheFile = RSLaunchPlan.cacheFileOf(plan0.configuration());
+    Files.setLastModifiedTime(cacheFile, FileTime.from(Instant.EPOCH));
+
+    final var plan1 = RSLaunchPlan.loadOrCompile(file);
+    assertEquals(plan0, plan1);
+    assertEquals(
+      FileTime.from(Instant.EPOCH),
+      Files.getLastModifiedTime(cacheFile));
+  }
+
+  /**
+   * Changing a file invalidates the cached plan.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testCompileChanged()
+    throws Exception
+  {
+    final var bundle = this.jar("b0.jar", "com.io7m.b0");
+    final var file =
+      this.configuration(
+        RSLauncherConfiguration.builder(this.directory.resolve("runtime"))
+          .addOSGIBundle(bundle)
+          .build()
+      );
+
+    final var plan0 = RSLaunchPlan.loadOrCompile(file);
+    this.jar("b0.jar", "com.io7m.b0x");
+    Files.setLastModifiedTime(bundle, FileTime.from(Instant.EPOCH));
+
+    final var plan1 = RSLaunchPlan.loadOrCompile(file);
+    assertNotEquals(plan0, plan1);
+    assertEquals("com.io7m.b0x", plan1.bundles().get(0).symbolicName());
+  }
+
+  /**
+   * All validation failures are reported together.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testCompileInvalid()
+    throws Exception
+  {
+    final var file =
+      this.configuration(
+        RSLauncherConfiguration.builder(this.directory.resolve("runtime"))
+          .addJavaModule(this.directory.resolve("missing.jar"))
+          .addOSGIBundle(this.jar("b0.jar", null))
+          .addOSGIBundle(this.jar("b1.jar", "com.io7m.b1"))
+          .addOSGIBundle(this.jar("b2.jar", "com.io7m.b1"))
+          .build()
+      );
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        RSLaunchPlan.loadOrCompile(file);
+      });
+
+    assertTrue(ex.getMessage().contains("missing.jar"), ex.getMessage());
+    assertEquals(2, ex.getSuppressed().length);
+  }
+
+  /**
+   * Bundle identities follow OSGi: a missing version is 0.0.0, omitted
+   * version components are zero, and an empty symbolic name is an error.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testBundleIdentity()
+    throws Exception
+  {
+    assertEquals(
+      new RSLaunchBundleIdentity("com.io7m.b0", "0.0.0"),
+      RSLaunchBundleIdentity.of(this.jarWith("b0.jar", "com.io7m.b0", null)));
+    assertEquals(
+      new RSLaunchBundleIdentity("com.io7m.b1", "1.0.0"),
+      RSLaunchBundleIdentity.of(this.jarWith("b1.jar", "com.io7m.b1", "1.0")));
+    assertEquals(
+      new RSLaunchBundleIdentity("com.io7m.b2", "1.2.3-beta"),
+      RSLaunchBundleIdentity.of(
+        this.jarWith("b2.jar", "com.io7m.b2;singleton:=true", "1.2.3.beta")));
+
+    final var empty = this.jarWith("b3.jar", " ", "1.0.0");
+    final var ex0 =
+      assertThrows(IOException.class, () -> RSLaunchBundleIdentity.of(empty));
+    assertTrue(ex0.getMessage().contains("empty"), ex0.getMessage());
+
+    final var bad = this.jarWith("b4.jar", "com.io7m.b4", "x");
+    final var ex1 =
+      assertThrows(IOException.class, () -> RSLaunchBundleIdentity.of(bad));
+    assertTrue(ex1.getMessage().contains("unparseable"), ex1.getMessage());
+  }
+
+  private Path jarWith(
+    final String name,
+    final String symbolicName,
+    final String version)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-SymbolicName", symbolicName);
+    if (version != null) {
+      attributes.putValue("Bundle-Version", version);
+    }
+
+    final var file = this.directory.resolve(name);
+    try (var output =
+           new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      output.flush();
+    }
+    return file;
+  }
+}
@@ -16,7 +16,10 @@
 
 package com.io7m.rivershark.tests;
 
+import com.io7m.rivershark.launcher.api.RSLauncherActivationPolicy;
+import com.io7m.rivershark.launcher.api.RSLauncherBundle;
 import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import com.io7m.rivershark.launcher.api.RSLauncherDirectory;
 import com.io7m.sunburst.model.SBPackageIdentifier;
 import com.io7m.verona.core.Version;
 import org.junit.jupiter.api.AfterEach;
@@ -26,9 +29,14 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class RSLauncherConfigurationTest
 {
@@ -91,6 +99,185 @@ public final class RSLauncherConfigurationTest
     this.roundTrip(configuration);
   }
 
+  @Test
+  public void testStartLevels()
+    throws Exception
+  {
+    final var configuration =
+      RSLauncherConfiguration.builder(this.directory)
+        .setStartLevel(3)
+        .addOSGIBundle(this.directory.resolve("bundle-0.jar"))
+        .addOSGIBundle(
+          new RSLauncherBundle(
+            this.directory.resolve("bundle-1.jar"),
+            OptionalInt.of(2),
+            RSLauncherActivationPolicy.DECLARED))
+        .addOSGIBundle(
+          new RSLauncherBundle(
+            this.directory.resolve("bundle-2.jar"),
+            OptionalInt.of(4),
+            RSLauncherActivationPolicy.EAGER))
+        .build();
+
+    this.roundTrip(configuration);
+  }
+
+  @Test
+  public void testStartLevelsInvalid()
+    throws Exception
+  {
+    final var file =
+      this.directory.resolve("rivershark.conf");
+
+    Files.writeString(file, """
+      rivershark.runtimeDirectory=/tmp
+      rivershark.startLevel=0
+      rivershark.bundles.0=/tmp/bundle-0.jar
+      rivershark.bundles.0.startLevel=x
+      rivershark.bundles.1=/tmp/bundle-1.jar
+      rivershark.bundles.1.activationPolicy=sometimes
+      """);
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        RSLauncherConfiguration.parseFile(file);
+      });
+
+    assertTrue(ex.getMessage().contains("rivershark.startLevel"));
+    assertEquals(2, ex.getSuppressed().length);
+  }
+
+  @Test
+  public void testDirectories()
+    throws Exception
+  {
+    final var bundles = this.directory.resolve("bundles");
+    Files.createDirectories(bundles.resolve("sub"));
+    Files.writeString(bundles.resolve("c.jar"), "");
+    Files.writeString(bundles.resolve("a.jar"), "");
+    Files.writeString(bundles.resolve("b.jar"), "");
+    Files.writeString(bundles.resolve("x.txt"), "");
+    Files.writeString(bundles.resolve("sub").resolve("d.jar"), "");
+    Files.writeString(bundles.resolve("sub").resolve("e-sources.jar"), "");
+
+    final var configuration =
+      RSLauncherConfiguration.builder(this.directory)
+        .addOSGIBundle(bundles.resolve("b.jar"))
+        .addOSGIBundleDirectory(
+          new RSLauncherDirectory(
+            bundles, "*.jar", Optional.of("*-sources.jar"), true))
+        .addJavaModuleDirectory(RSLauncherDirectory.of(bundles))
+        .build()
+        .expand();
+
+    assertEquals(
+      List.of(
+        bundles.resolve("b.jar"),
+        bundles.resolve("a.jar"),
+        bundles.resolve("c.jar"),
+        bundles.resolve("sub").resolve("d.jar")
+      ),
+      configuration.osgiBundles()
+    );
+    assertEquals(
+      List.of(
+        bundles.resolve("a.jar"),
+        bundles.resolve("b.jar"),
+        bundles.resolve("c.jar")
+      ),
+      configuration.javaModules()
+    );
+
+    this.roundTrip(configuration);
+  }
+
+  /**
+   * Building a configuration never scans directories, so building is
+   * repeatable and cannot fail on I/O; directories are only scanned by an
+   * explicit expansion.
+   */
+
+  @Test
+  public void testBuildWithoutScanning()
+    throws Exception
+  {
+    final var bundles = this.directory.resolve("bundles");
+    final var builder =
+      RSLauncherConfiguration.builder(this.directory)
+        .addOSGIBundle(this.directory.resolve("x.jar"))
+        .addOSGIBundleDirectory(RSLauncherDirectory.of(bundles));
+
+    final var configuration0 = builder.build();
+    assertEquals(
+      List.of(this.directory.resolve("x.jar")),
+      configuration0.osgiBundles());
+    assertThrows(IOException.class, configuration0::expand);
+
+    Files.createDirectories(bundles);
+    Files.writeString(bundles.resolve("a.jar"), "");
+
+    final var configuration1 = builder.build();
+    assertEquals(configuration0, configuration1);
+
+    final var expanded = configuration1.expand();
+    assertEquals(
+      List.of(this.directory.resolve("x.jar"), bundles.resolve("a.jar")),
+      expanded.osgiBundles());
+    assertEquals(expanded, expanded.expand());
+    assertEquals(configuration1, builder.build());
+  }
+
+  @Test
+  public void testDirectoriesMissing()
+    throws Exception
+  {
+    final var file =
+      this.directory.resolve("rivershark.conf");
+
+    Files.writeString(file, """
+      rivershark.runtimeDirectory=/tmp
+      rivershark.bundles.dir.0=%s
+      rivershark.modules.dir.0=%s
+      """.formatted(
+      this.directory.resolve("nonexistent-0"),
+      this.directory.resolve("nonexistent-1")));
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        RSLauncherConfiguration.parseFile(file);
+      });
+
+    assertTrue(ex.getMessage().contains("nonexistent-1"), ex.getMessage());
+    assertEquals(1, ex.getSuppressed().length);
+  }
+
+  @Test
+  public void testIndexGaps()
+    throws Exception
+  {
+    final var file =
+      this.directory.resolve("rivershark.conf");
+
+    Files.writeString(file, """
+      rivershark.runtimeDirectory=/tmp
+      rivershark.bundles.10=/tmp/bundle-10.jar
+      rivershark.bundles.2=/tmp/bundle-2.jar
+      rivershark.bundles.0=/tmp/bundle-0.jar
+      """);
+
+    final var configuration =
+      RSLauncherConfiguration.parseFile(file);
+
+    assertEquals(
+      List.of(
+        Path.of("/tmp/bundle-0.jar"),
+        Path.of("/tmp/bundle-2.jar"),
+        Path.of("/tmp/bundle-10.jar")
+      ),
+      configuration.osgiBundles()
+    );
+  }
+
   private void roundTrip(
     final RSLauncherConfiguration configuration)
     throws IOException
@@ -115,6 +302,16 @@ public final class RSLauncherConfigurationTest
 
     assertEquals(configuration.javaModules(), loaded.javaModules());
     assertEquals(configuration.osgiBundles(), loaded.osgiBundles());
+    assertEquals(
+      configuration.osgiBundleEntries(),
+      loaded.osgiBundleEntries());
+    assertEquals(configuration.startLevel(), loaded.startLevel());
+    assertEquals(
+      configuration.osgiBundleDirectories(),
+      loaded.osgiBundleDirectories());
+    assertEquals(
+      configuration.javaModuleDirectories(),
+      loaded.javaModuleDirectories());
     assertEquals(configuration.runtimeDirectory(), loaded.runtimeDirectory());
     assertEquals(configuration.parameters(), loaded.parameters());
   }
@@ -0,0 +1,350 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests;
+
+import com.io7m.rivershark.launcher.api.RSLaunchPlan;
+import com.io7m.rivershark.launcher.api.RSLauncherProducts;
+import com.io7m.rivershark.launcher.api.RSLauncherRepository;
+import com.io7m.rivershark.product.RSArtifactDependencyJPMS;
+import com.io7m.rivershark.product.RSArtifactDependencyOSGi;
+import com.io7m.rivershark.product.RSArtifactDependencyType;
+import com.io7m.rivershark.product.RSHash;
+import com.io7m.rivershark.product.RSProduct;
+import com.io7m.verona.core.Version;
+import com.io7m.verona.core.VersionParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static com.io7m.rivershark.launcher.api.RSLauncherRepositoryLayout.MAVEN;
+import static com.io7m.rivershark.launcher.api.RSLauncherRepositoryLayout.OBR;
+import static com.io7m.rivershark.product.RSHashAlgorithm.SHA2_256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class RSLauncherProductsTest
+{
+  private static final Version VERSION = Version.of(1, 2, 3);
+
+  private Path directory;
+  private Path maven;
+  private Path obr;
+  private Path runtime;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = RSTestDirectories.createTempDirectory();
+    this.maven = this.directory.resolve("maven");
+    this.obr = this.directory.resolve("obr");
+    this.runtime = this.directory.resolve("runtime");
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    RSTestDirectories.deleteDirectory(this.directory);
+  }
+
+  private static RSHash jar(
+    final Path file,
+    final String symbolicName)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (symbolicName != null) {
+      attributes.putValue("Bundle-SymbolicName", symbolicName);
+      attributes.putValue("Bundle-Version", VERSION.toString());
+    }
+
+    Files.createDirectories(file.getParent());
+    try (var output =
+           new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      output.flush();
+    }
+    try (var input = Files.newInputStream(file)) {
+      return RSHash.hashOf(SHA2_256, input);
+    }
+  }
+
+  private RSHash mavenJar(
+    final String group,
+    final String artifact,
+    final String symbolicName)
+    throws IOException
+  {
+    return this.mavenJar(group, artifact, VERSION.toString(), symbolicName);
+  }
+
+  private RSHash mavenJar(
+    final String group,
+    final String artifact,
+    final String version,
+    final String symbolicName)
+    throws IOException
+  {
+    return jar(
+      this.maven.resolve(group.replace('.', '/'))
+        .resolve(artifact)
+        .resolve(version)
+        .resolve("%s-%s.jar".formatted(artifact, version)),
+      symbolicName
+    );
+  }
+
+  private RSLaunchPlan resolve(
+    final RSArtifactDependencyType... dependencies)
+    throws IOException
+  {
+    return RSLauncherProducts.resolve(
+      new RSProduct(
+        "com.io7m.example",
+        VERSION,
+        Map.of(),
+        List.of(dependencies)),
+      List.of(
+        new RSLauncherRepository(this.obr, OBR),
+        new RSLauncherRepository(this.maven, MAVEN)
+      ),
+      this.runtime,
+      Map.of("x", "y")
+    );
+  }
+
+  /**
+   * Artifacts are resolved from an OBR repository by hash, and from a Maven
+   * repository by coordinates. The resulting plan is cached.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testResolveCached()
+    throws Exception
+  {
+    final var moduleHash =
+      this.mavenJar("com.io7m.ex", "com.io7m.ex.m0", null);
+    final var bundleHash =
+      jar(this.obr.resolve("bundles/unrelated-name.jar"), "com.io7m.ex.b0");
+
+    Files.writeString(
+      this.obr.resolve("bundles/unrelated-name.jar.sha256"),
+      HexFormat.of().formatHex(bundleHash.value()) + "\n");
+
+    final var dependencies = new RSArtifactDependencyType[]{
+      new RSArtifactDependencyJPMS(
+        "com.io7m.ex", "com.io7m.ex.m0", VERSION, Optional.of(moduleHash)),
+      new RSArtifactDependencyOSGi(
+        "com.io7m.ex", "com.io7m.ex.b0", VERSION, Optional.of(bundleHash)),
+    };
+
+    final var plan0 = this.resolve(dependencies);
+    assertEquals(1, plan0.modules().size());
+    assertEquals(1, plan0.bundles().size());
+    assertEquals("com.io7m.ex.b0", plan0.bundles().get(0).symbolicName());
+    assertEquals(
+      this.obr.resolve("bundles/unrelated-name.jar").toAbsolutePath(),
+      plan0.bundles().get(0).file().file());
+    assertEquals("y", plan0.configuration().parameters().get("x"));
+
+    final var cacheFile = RSLaunchPlan.cacheFileOf(plan0.configuration());
+    Files.setLastModifiedTime(cacheFile, FileTime.from(Instant.EPOCH));
+
+    final var plan1 = this.resolve(dependencies);
+    assertEquals(plan0, plan1);
+    assertEquals(
+      FileTime.from(Instant.EPOCH),
+      Files.getLastModifiedTime(cacheFile));
+  }
+
+  /**
+   * Unresolvable artifacts and hash mismatches are all reported.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testResolveInvalid()
+    throws Exception
+  {
+    this.mavenJar("com.io7m.ex", "com.io7m.ex.b0", "com.io7m.ex.b0");
+    this.mavenJar("com.io7m.ex", "com.io7m.ex.b1", "com.io7m.ex.b1");
+
+    final var wrong =
+      new RSHash(SHA2_256, new byte[32]);
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.resolve(
+          new RSArtifactDependencyOSGi(
+            "com.io7m.ex", "com.io7m.ex.b0", VERSION, Optional.of(wrong)),
+          new RSArtifactDependencyOSGi(
+            "com.io7m.ex", "com.io7m.ex.b1", VERSION, Optional.of(wrong)),
+          new RSArtifactDependencyOSGi(
+            "com.io7m.ex", "com.io7m.ex.missing", VERSION, Optional.empty())
+        );
+      });
+
+    assertTrue(
+      ex.getMessage().contains("com.io7m.ex.missing"),
+      ex.getMessage());
+
+    final var ex2 =
+      assertThrows(IOException.class, () -> {
+        this.resolve(
+          new RSArtifactDependencyOSGi(
+            "com.io7m.ex", "com.io7m.ex.b0", VERSION, Optional.of(wrong)),
+          new RSArtifactDependencyOSGi(
+            "com.io7m.ex", "com.io7m.ex.b1", VERSION, Optional.of(wrong))
+        );
+      });
+
+    assertTrue(ex2.getMessage().contains("Hash mismatch"), ex2.getMessage());
+    assertEquals(1, ex2.getSuppressed().length);
+  }
+
+  /**
+   * Artifacts without a hash are never resolved from an OBR repository, even
+   * if the repository holds a file named after the artifact's coordinates.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testResolveUnhashedSkipsOBR()
+    throws Exception
+  {
+    final var obrHash =
+      jar(this.obr.resolve("bundles/com.io7m.ex.b2-%s.jar".formatted(VERSION)),
+          "com.io7m.ex.other");
+    Files.writeString(
+      this.obr.resolve("bundles/com.io7m.ex.b2-%s.jar.sha256".formatted(VERSION)),
+      HexFormat.of().formatHex(obrHash.value()) + "\n");
+
+    this.mavenJar("com.io7m.ex", "com.io7m.ex.b2", "com.io7m.ex.b2");
+
+    final var plan = this.resolve(
+      new RSArtifactDependencyOSGi(
+        "com.io7m.ex", "com.io7m.ex.b2", VERSION, Optional.empty())
+    );
+
+    assertEquals(1, plan.bundles().size());
+    assertEquals("com.io7m.ex.b2", plan.bundles().get(0).symbolicName());
+    assertTrue(
+      plan.bundles().get(0).file().file().startsWith(this.maven),
+      plan.bundles().get(0).file().file().toString());
+  }
+
+  /**
+   * An artifact without a hash that only exists in an OBR repository cannot
+   * be resolved, and the error says why.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testResolveUnhashedOnlyInOBR()
+    throws Exception
+  {
+    final var name =
+      "bundles/com.io7m.ex.b3-%s.jar".formatted(VERSION);
+    final var hash =
+      jar(this.obr.resolve(name), "com.io7m.ex.b3");
+    Files.writeString(
+      this.obr.resolve(name + ".sha256"),
+      HexFormat.of().formatHex(hash.value()) + "\n");
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.resolve(
+          new RSArtifactDependencyOSGi(
+            "com.io7m.ex", "com.io7m.ex.b3", VERSION, Optional.empty())
+        );
+      });
+
+    assertTrue(ex.getMessage().contains("com.io7m.ex.b3"), ex.getMessage());
+    assertTrue(ex.getMessage().contains("have a hash"), ex.getMessage());
+  }
+
+  /**
+   * Maven versions that are not of the form x.y.z are resolved even though
+   * their parsed form differs from the name of their directory.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testResolveMavenVersions()
+    throws Exception
+  {
+    this.mavenJar("com.io7m.ex", "com.io7m.ex.m0", "31.1-jre", null);
+    this.mavenJar("com.io7m.ex", "com.io7m.ex.m1", "1.0-SNAPSHOT", null);
+    this.mavenJar("com.io7m.ex", "com.io7m.ex.m2", "2.3", null);
+
+    final var plan = this.resolve(
+      new RSArtifactDependencyJPMS(
+        "com.io7m.ex",
+        "com.io7m.ex.m0",
+        VersionParser.parseLax("31.1-jre"),
+        Optional.empty()),
+      new RSArtifactDependencyJPMS(
+        "com.io7m.ex",
+        "com.io7m.ex.m1",
+        VersionParser.parseLax("1.0-SNAPSHOT"),
+        Optional.empty()),
+      new RSArtifactDependencyJPMS(
+        "com.io7m.ex",
+        "com.io7m.ex.m2",
+        VersionParser.parseLax("2.3"),
+        Optional.empty())
+    );
+
+    final var files =
+      plan.modules()
+        .stream()
+        .map(m -> m.file().getFileName().toString())
+        .sorted()
+        .toList();
+
+    assertEquals(
+      List.of(
+        "com.io7m.ex.m0-31.1-jre.jar",
+        "com.io7m.ex.m1-1.0-SNAPSHOT.jar",
+        "com.io7m.ex.m2-2.3.jar"),
+      files
+    );
+  }
+}
@@ -17,9 +17,13 @@
 
 package com.io7m.rivershark.tests;
 
+import com.io7m.rivershark.obrcontrol.RSBundleIdentifiers;
 import com.io7m.rivershark.obrcontrol.RSRepositories;
+import com.io7m.rivershark.obrcontrol.api.RSBundleIdentifier;
+import com.io7m.rivershark.obrcontrol.api.RSIdentifiedBundle;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryConfiguration;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryException;
+import com.io7m.rivershark.obrcontrol.api.RSRepositorySource;
 import com.io7m.rivershark.obrcontrol.api.RSRepositoryType;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -28,9 +32,28 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -118,4 +141,585 @@ public final class RSRepositoriesTest
       Files.exists(this.reposDirectory.resolve("obr.xml"))
     );
   }
+
+  @Test
+  public void testInstallStreamOK0()
+    throws Exception
+  {
+    try (var stream = RSRepositoriesTest.class.getResourceAsStream(
+      "/com/io7m/rivershark/tests/com.io7m.junreachable.core-4.0.0.jar")) {
+      this.repository.installSources(
+        List.of(RSRepositorySource.ofInputStream("junreachable", stream))
+      );
+    }
+
+    assertTrue(
+      Files.exists(
+        this.reposDirectory.resolve("bundles")
+          .resolve("com.io7m.junreachable.core-4.0.0.jar"))
+    );
+    assertTrue(
+      Files.exists(this.reposDirectory.resolve("obr.xml"))
+    );
+  }
+
+  @Test
+  public void testInstallArchiveOK0()
+    throws Exception
+  {
+    final var file =
+      RSTestDirectories.resourceOf(
+        RSRepositoriesTest.class,
+        this.directory,
+        "com.io7m.junreachable.core-4.0.0.jar");
+
+    final var archive =
+      this.directory.resolve("instance.zip");
+
+    try (var output = new ZipOutputStream(Files.newOutputStream(archive))) {
+      output.putNextEntry(new ZipEntry("lib/bundles/junreachable.jar"));
+      Files.copy(file, output);
+      output.closeEntry();
+      output.putNextEntry(new ZipEntry("README.txt"));
+      output.closeEntry();
+    }
+
+    this.repository.installArchive(archive);
+
+    assertTrue(
+      Files.exists(
+        this.reposDirectory.resolve("bundles")
+          .resolve("com.io7m.junreachable.core-4.0.0.jar"))
+    );
+  }
+
+  @Test
+  public void testInstallParallelOK0()
+    throws Exception
+  {
+    final var parallelDirectory =
+      this.directory.resolve("repos-parallel");
+
+    final var files = new ArrayList<Path>();
+    for (int index = 0; index < 8; ++index) {
+      files.add(this.createBundle("com.io7m.example" + index, "1.0." + index));
+    }
+
+    try (var parallel = this.repositories.open(
+      RSRepositoryConfiguration.builder(parallelDirectory)
+        .setIndexParallelism(4)
+        .build())) {
+      parallel.install(files);
+    }
+
+    final var index =
+      Files.readString(parallelDirectory.resolve("obr.xml"));
+
+    for (int i = 0; i < 8; ++i) {
+      assertTrue(index.contains("com.io7m.example" + i + "-1.0." + i + ".jar"));
+    }
+  }
+
+  /**
+   * Separate instances of the same repository within one JVM wait for each
+   * other rather than failing on the shared file lock.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testInstallConcurrentInstances0()
+    throws Exception
+  {
+    final var configuration =
+      RSRepositoryConfiguration.builder(this.reposDirectory)
+        .build();
+
+    final var tasks = new ArrayList<CompletableFuture<Void>>();
+    for (int index = 0; index < 8; ++index) {
+      final var file =
+        this.createBundle("com.io7m.example" + index, "1.0." + index);
+      tasks.add(CompletableFuture.runAsync(() -> {
+        try (var instance = this.repositories.open(configuration)) {
+          instance.install(List.of(file));
+        } catch (final RSRepositoryException e) {
+          throw new IllegalStateException(e);
+        }
+      }));
+    }
+
+    CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).get();
+
+    final var index =
+      Files.readString(this.reposDirectory.resolve("obr.xml"));
+
+    for (int i = 0; i < 8; ++i) {
+      assertTrue(index.contains("com.io7m.example" + i + "-1.0." + i + ".jar"));
+    }
+  }
+
+  @Test
+  public void testIndexReproducible0()
+    throws Exception
+  {
+    final var files = new ArrayList<Path>();
+    for (int index = 0; index < 8; ++index) {
+      files.add(this.createBundle("com.io7m.example" + index, "1.0." + index));
+    }
+
+    final var directory0 = this.directory.resolve("repos-0");
+    final var directory1 = this.directory.resolve("repos-1");
+
+    try (var repository0 = this.repositories.open(
+      RSRepositoryConfiguration.builder(directory0)
+        .build())) {
+      repository0.install(files);
+    }
+
+    Collections.reverse(files);
+
+    try (var repository1 = this.repositories.open(
+      RSRepositoryConfiguration.builder(directory1)
+        .setIndexParallelism(3)
+        .build())) {
+      repository1.install(files.subList(0, 4));
+      repository1.install(files.subList(4, 8));
+    }
+
+    final var index0 = directory0.resolve("obr.xml");
+    final var index1 = directory1.resolve("obr.xml");
+    assertArrayEquals(Files.readAllBytes(index0), Files.readAllBytes(index1));
+    assertEquals(
+      Files.readString(directory0.resolve("obr.xml.sha256")),
+      Files.readString(directory1.resolve("obr.xml.sha256"))
+    );
+
+    final var time = Files.getLastModifiedTime(index0);
+    try (var repository0 = this.repositories.open(
+      RSRepositoryConfiguration.builder(directory0)
+        .build())) {
+      repository0.install(files);
+    }
+    assertEquals(time, Files.getLastModifiedTime(index0));
+  }
+
+  @Test
+  public void testChannelPromoteOK0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+    final var file1 =
+      this.createBundle("com.io7m.example1", "1.0.0");
+
+    this.repository.installIntoChannel(
+      "candidate",
+      List.of(
+        RSRepositorySource.ofFile(file0),
+        RSRepositorySource.ofFile(file1)
+      )
+    );
+
+    final var bundle0 =
+      new RSBundleIdentifier("com.io7m.example0", "1.0.0");
+    final var bundle1 =
+      new RSBundleIdentifier("com.io7m.example1", "1.0.0");
+
+    this.repository.promote("candidate", "stable", List.of(bundle0));
+
+    assertEquals(
+      List.of("candidate", "stable"),
+      List.copyOf(this.repository.channels())
+    );
+    assertEquals(
+      List.of(bundle0, bundle1),
+      List.copyOf(this.repository.channelBundles("candidate"))
+    );
+    assertEquals(
+      List.of(bundle0),
+      List.copyOf(this.repository.channelBundles("stable"))
+    );
+
+    final var index =
+      Files.readString(this.reposDirectory.resolve("obr.xml"));
+    final var candidate =
+      Files.readString(this.reposDirectory.resolve("obr-candidate.xml"));
+    final var stable =
+      Files.readString(this.reposDirectory.resolve("obr-stable.xml"));
+
+    assertTrue(index.contains("com.io7m.example0-1.0.0.jar"));
+    assertTrue(index.contains("com.io7m.example1-1.0.0.jar"));
+    assertTrue(candidate.contains("com.io7m.example0-1.0.0.jar"));
+    assertTrue(candidate.contains("com.io7m.example1-1.0.0.jar"));
+    assertTrue(stable.contains("com.io7m.example0-1.0.0.jar"));
+    assertFalse(stable.contains("com.io7m.example1-1.0.0.jar"));
+
+    this.repository.removeFromChannel("candidate", List.of(bundle0));
+    assertEquals(
+      List.of(bundle1),
+      List.copyOf(this.repository.channelBundles("candidate"))
+    );
+    assertFalse(
+      Files.readString(this.reposDirectory.resolve("obr-candidate.xml"))
+        .contains("com.io7m.example0-1.0.0.jar")
+    );
+  }
+
+  @Test
+  public void testChannelPromoteNotMember0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+
+    this.repository.installIntoChannel(
+      "candidate",
+      List.of(RSRepositorySource.ofFile(file0))
+    );
+
+    final var ex = assertThrows(RSRepositoryException.class, () -> {
+      this.repository.promote(
+        "candidate",
+        "stable",
+        List.of(new RSBundleIdentifier("com.io7m.example1", "1.0.0"))
+      );
+    });
+    assertTrue(ex.getMessage().contains("not a member"));
+    assertFalse(Files.exists(this.reposDirectory.resolve("obr-stable.xml")));
+  }
+
+  @Test
+  public void testChannelNameInvalid0()
+  {
+    assertThrows(RSRepositoryException.class, () -> {
+      this.repository.installIntoChannel("../x", List.of());
+    });
+  }
+
+  @Test
+  public void testGeneration0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+
+    assertEquals(0L, this.repository.generation());
+    assertEquals(
+      OptionalLong.empty(),
+      this.repository.awaitGeneration(0L, Duration.ofMillis(10L))
+    );
+
+    this.repository.install(List.of(file0));
+    assertEquals(1L, this.repository.generation());
+
+    this.repository.install(List.of(file0));
+    assertEquals(1L, this.repository.generation());
+
+    try (var observer = this.repositories.open(
+      RSRepositoryConfiguration.builder(this.reposDirectory)
+        .build())) {
+      assertEquals(1L, observer.generation());
+
+      final var waiting =
+        CompletableFuture.supplyAsync(() -> {
+          try {
+            return observer.awaitGeneration(1L, Duration.ofSeconds(30L));
+          } catch (final InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+
+      this.repository.installIntoChannel(
+        "stable",
+        List.of(RSRepositorySource.ofFile(file0))
+      );
+
+      assertEquals(OptionalLong.of(2L), waiting.get());
+      assertEquals(2L, observer.generation());
+    }
+  }
+
+  @Test
+  public void testInstallIdentifiedOK0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+    final var bundle0 =
+      new RSIdentifiedBundle(
+        file0,
+        new RSBundleIdentifier("com.io7m.example0", "1.0.0"),
+        hashOf(file0)
+      );
+
+    this.repository.installIdentified(List.of(bundle0));
+    assertEquals(1L, this.repository.generation());
+
+    final var bundles = this.reposDirectory.resolve("bundles");
+    final var installed = bundles.resolve("com.io7m.example0-1.0.0.jar");
+    assertArrayEquals(Files.readAllBytes(file0), Files.readAllBytes(installed));
+    assertTrue(
+      Files.readString(this.reposDirectory.resolve("obr.xml"))
+        .contains("com.io7m.example0-1.0.0.jar")
+    );
+
+    final var time = Files.getLastModifiedTime(installed);
+    this.repository.installIdentifiedIntoChannel("stable", List.of(bundle0));
+    assertEquals(time, Files.getLastModifiedTime(installed));
+    assertEquals(
+      List.of(bundle0.identifier()),
+      List.copyOf(this.repository.channelBundles("stable"))
+    );
+  }
+
+  @Test
+  public void testStatistics0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+
+    this.repository.install(List.of(file0));
+    this.repository.install(List.of(file0));
+
+    final var statistics = this.repository.statistics();
+    assertEquals(1L, statistics.bundlesCopied());
+    assertEquals(1L, statistics.bundlesSkipped());
+    assertEquals(2L * Files.size(file0), statistics.bytesCopied());
+    assertEquals(1L, statistics.indexesGenerated());
+    assertEquals(2L, statistics.locksAcquired());
+  }
+
+  @Test
+  public void testInstallIntoChannels0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+    final var file1 =
+      this.createBundle("com.io7m.example1", "1.0.0");
+    final var file2 =
+      this.createBundle("com.io7m.example2", "1.0.0");
+
+    final var sources = new LinkedHashMap<String, List<RSRepositorySource>>();
+    sources.put("", List.of(RSRepositorySource.ofFile(file0)));
+    sources.put("stable", List.of(RSRepositorySource.ofFile(file1)));
+    sources.put("testing", List.of(
+      RSRepositorySource.ofFile(file1),
+      RSRepositorySource.ofFile(file2)));
+
+    this.repository.installIntoChannels(sources);
+
+    assertEquals(1L, this.repository.generation());
+    assertEquals(3L, this.repository.statistics().bundlesCopied());
+    assertEquals(3L, this.repository.statistics().indexesGenerated());
+    assertEquals(
+      List.of(new RSBundleIdentifier("com.io7m.example1", "1.0.0")),
+      List.copyOf(this.repository.channelBundles("stable")));
+    assertEquals(
+      List.of(
+        new RSBundleIdentifier("com.io7m.example1", "1.0.0"),
+        new RSBundleIdentifier("com.io7m.example2", "1.0.0")),
+      List.copyOf(this.repository.channelBundles("testing")));
+
+    final var index =
+      Files.readString(this.reposDirectory.resolve("obr.xml"));
+    assertTrue(index.contains("com.io7m.example0-1.0.0.jar"));
+    assertTrue(index.contains("com.io7m.example2-1.0.0.jar"));
+
+    this.repository.installIntoChannels(sources);
+    assertEquals(1L, this.repository.generation());
+  }
+
+  @Test
+  public void testInstallIntoChannelsBadChannel0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+
+    assertThrows(RSRepositoryException.class, () -> {
+      this.repository.installIntoChannels(
+        Map.of("not a channel", List.of(RSRepositorySource.ofFile(file0))));
+    });
+    assertEquals(0L, this.repository.generation());
+  }
+
+  @Test
+  public void testReindex0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+
+    this.repository.installIntoChannel(
+      "stable", List.of(RSRepositorySource.ofFile(file0)));
+    assertEquals(1L, this.repository.generation());
+
+    final var index = this.reposDirectory.resolve("obr.xml");
+    final var channelIndex = this.reposDirectory.resolve("obr-stable.xml");
+    Files.delete(index);
+    Files.delete(channelIndex);
+
+    this.repository.reindex();
+    assertTrue(Files.readString(index).contains("com.io7m.example0-1.0.0.jar"));
+    assertTrue(Files.isRegularFile(channelIndex));
+    assertEquals(2L, this.repository.generation());
+
+    this.repository.reindex();
+    assertEquals(2L, this.repository.generation());
+  }
+
+  @Test
+  public void testVerify0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+
+    this.repository.install(List.of(file0));
+    this.repository.verify();
+
+    Files.write(
+      this.reposDirectory.resolve("bundles")
+        .resolve("com.io7m.example0-1.0.0.jar"),
+      new byte[]{0x0, 0x1, 0x2},
+      StandardOpenOption.APPEND
+    );
+
+    final var ex = assertThrows(RSRepositoryException.class, () -> {
+      this.repository.verify();
+    });
+    assertTrue(ex.getMessage().contains("com.io7m.example0-1.0.0.jar"));
+  }
+
+  @Test
+  public void testInstallIdentifiedWrongHash0()
+    throws Exception
+  {
+    final var file0 =
+      this.createBundle("com.io7m.example0", "1.0.0");
+    final var bundle0 =
+      new RSIdentifiedBundle(
+        file0,
+        new RSBundleIdentifier("com.io7m.example0", "1.0.0"),
+        "0".repeat(64)
+      );
+
+    final var ex = assertThrows(RSRepositoryException.class, () -> {
+      this.repository.installIdentified(List.of(bundle0));
+    });
+    assertTrue(ex.getMessage().contains("was identified with hash"));
+    assertFalse(
+      Files.exists(
+        this.reposDirectory.resolve("bundles")
+          .resolve("com.io7m.example0-1.0.0.jar"))
+    );
+  }
+
+  /**
+   * A bundle that declares no version has version 0.0.0.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testInstallNoVersion0()
+    throws Exception
+  {
+    final var file = this.createBundle("com.io7m.example0", null);
+    this.repository.install(List.of(file));
+
+    assertTrue(
+      Files.exists(
+        this.reposDirectory.resolve("bundles")
+          .resolve("com.io7m.example0-0.0.0.jar"))
+    );
+  }
+
+  /**
+   * A bundle that declares an unparseable version is rejected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testInstallBadVersion0()
+    throws Exception
+  {
+    final var file = this.createBundle("com.io7m.example0", "x.y.z");
+
+    final var ex =
+      assertThrows(RSRepositoryException.class, () -> {
+        this.repository.install(List.of(file));
+      });
+
+    assertTrue(ex.getMessage().contains("Bundle-Version"), ex.getMessage());
+  }
+
+  /**
+   * Bundle identification follows OSGi: files without a symbolic name are
+   * not bundles, and a missing version is 0.0.0.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testIdentify0()
+    throws Exception
+  {
+    assertEquals(
+      Optional.of(new RSBundleIdentifier("com.io7m.example0", "1.2.3")),
+      RSBundleIdentifiers.identify(
+        this.createBundle("com.io7m.example0;singleton:=true", "1.2.3"))
+    );
+    assertEquals(
+      Optional.of(new RSBundleIdentifier("com.io7m.example1", "0.0.0")),
+      RSBundleIdentifiers.identify(
+        this.createBundle("com.io7m.example1", null))
+    );
+    assertEquals(
+      Optional.of(new RSBundleIdentifier("com.io7m.example2", "1.0.0")),
+      RSBundleIdentifiers.identify(
+        this.createBundle("com.io7m.example2", "1.0"))
+    );
+    assertEquals(
+      Optional.empty(),
+      RSBundleIdentifiers.identify(
+        RSTestDirectories.resourceOf(
+          RSRepositoriesTest.class, this.directory, "empty.jar"))
+    );
+    assertThrows(RSRepositoryException.class, () -> {
+      RSBundleIdentifiers.identify(this.createBundle(";singleton:=true", "1"));
+    });
+  }
+
+  private static String hashOf(
+    final Path file)
+    throws Exception
+  {
+    final var digest = MessageDigest.getInstance("SHA-256");
+    return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(file)));
+  }
+
+  private Path createBundle(
+    final String name,
+    final String version)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-ManifestVersion", "2");
+    attributes.putValue("Bundle-SymbolicName", name);
+    if (version != null) {
+      attributes.putValue("Bundle-Version", version);
+    }
+
+    final var file = this.directory.resolve(name + ".jar");
+    try (var output = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      output.flush();
+    }
+    return file;
+  }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests.maven;
+
+import com.io7m.rivershark.launcher.api.RSLauncherConfiguration;
+import com.soebes.itf.jupiter.extension.MavenGoal;
+import com.soebes.itf.jupiter.extension.MavenJupiterExtension;
+import com.soebes.itf.jupiter.extension.MavenTest;
+import com.soebes.itf.jupiter.maven.MavenExecutionResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@MavenJupiterExtension
+public final class RSAssembleInstanceMojoIT
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(RSAssembleInstanceMojoIT.class);
+
+  @MavenGoal("package")
+  @MavenGoal("${project.groupId}:com.io7m.rivershark.maven_plugin:${project.version}:assembleInstance")
+  @MavenTest
+  void testAssemble(
+    final MavenExecutionResult result)
+    throws Exception
+  {
+    showOutput(result);
+    assertTrue(result.isSuccessful());
+
+    final var instance =
+      result.getMavenProjectResult()
+        .getTargetProjectDirectory()
+        .toPath()
+        .resolve("target")
+        .resolve("instance");
+
+    assertTrue(Files.isDirectory(instance.resolve("lib").resolve("runtime")));
+    assertTrue(Files.isDirectory(instance.resolve("lib").resolve("bundles")));
+    assertTrue(Files.isDirectory(instance.resolve("lib").resolve("modules")));
+
+    final var configuration =
+      RSLauncherConfiguration.parseFile(instance.resolve("launcher.properties"));
+
+    assertEquals(instance.resolve("var"), configuration.runtimeDirectory());
+    assertEquals(0, configuration.osgiBundles().size());
+    assertEquals(0, configuration.javaModules().size());
+  }
+
+  private static void showOutput(
+    final MavenExecutionResult result)
+    throws IOException
+  {
+    final var mavenLog = result.getMavenLog();
+    LOG.trace("stdout: {}", Files.readString(mavenLog.getStdout()));
+    LOG.trace("stderr: {}", Files.readString(mavenLog.getStderr()));
+  }
+}
@@ -26,8 +26,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @MavenJupiterExtension
@@ -149,6 +152,141 @@ public final class RSInstallMojoIT
     );
   }
 
+  @MavenGoal("package")
+  @MavenGoal("${project.groupId}:com.io7m.rivershark.maven_plugin:${project.version}:installOBR")
+  @MavenGoal("${project.groupId}:com.io7m.rivershark.maven_plugin:${project.version}:installOBR")
+  @SystemProperty(value = "rivershark.repositoryDirectory", content = "target/tmp-rivershark-repos")
+  @MavenTest
+  void testIncremental(
+    final MavenExecutionResult result)
+    throws Exception
+  {
+    showOutput(result);
+    assertTrue(result.isSuccessful());
+
+    final var target =
+      result.getMavenProjectResult()
+        .getTargetProjectDirectory()
+        .toPath()
+        .resolve("target");
+
+    assertTrue(
+      Files.exists(
+        target.resolve("rivershark")
+          .resolve("installOBR.fingerprint")
+      )
+    );
+    assertTrue(
+      Files.readString(result.getMavenLog().getStdout())
+        .contains("dependency set is unchanged; skipping installation")
+    );
+  }
+
+  @MavenGoal("package")
+  @MavenGoal("${project.groupId}:com.io7m.rivershark.maven_plugin:${project.version}:installOBR")
+  @SystemProperty(value = "rivershark.repositoryDirectory", content = "target/tmp-rivershark-repos")
+  @SystemProperty(value = "rivershark.installAtEnd", content = "true")
+  @MavenTest
+  void testInstallAtEnd(
+    final MavenExecutionResult result)
+    throws Exception
+  {
+    showOutput(result);
+    assertTrue(result.isSuccessful());
+
+    final var target =
+      result.getMavenProjectResult()
+        .getTargetProjectDirectory()
+        .toPath()
+        .resolve("target");
+
+    assertTrue(
+      Files.exists(
+        target.resolve("tmp-rivershark-repos")
+          .resolve("bundles")
+          .resolve("com.io7m.tests-1.0.0.jar")
+      )
+    );
+    assertTrue(
+      Files.exists(
+        target.resolve("tmp-rivershark-repos")
+          .resolve("obr.xml")
+      )
+    );
+  }
+
+  /**
+   * In a multi-module build, module "a" installs immediately, and modules
+   * "b" and "c" install at the end. The deferred installations are
+   * performed by the last module as a single installation that writes the
+   * index once.
+   *
+   * @param result The result
+   *
+   * @throws Exception On errors
+   */
+
+  @MavenGoal("package")
+  @SystemProperty(value = "rivershark.repositoryDirectory", content = "target/tmp-rivershark-repos")
+  @MavenTest
+  void testInstallAtEndMultiModule(
+    final MavenExecutionResult result)
+    throws Exception
+  {
+    showOutput(result);
+    assertTrue(result.isSuccessful());
+
+    final var root =
+      result.getMavenProjectResult()
+        .getTargetProjectDirectory()
+        .toPath();
+    final var repository =
+      root.resolve("target")
+        .resolve("tmp-rivershark-repos");
+
+    for (final var module : List.of("a", "b", "c")) {
+      assertTrue(
+        Files.exists(
+          repository.resolve("bundles")
+            .resolve("com.io7m.tests.%s-1.0.0.jar".formatted(module))
+        )
+      );
+    }
+    assertTrue(Files.exists(repository.resolve("obr.xml")));
+
+    final var stdout =
+      Files.readString(result.getMavenLog().getStdout());
+    assertEquals(
+      1L,
+      stdout.lines()
+        .filter(l -> l.contains("installation deferred until the end of the build"))
+        .count()
+    );
+
+    final var reportA = reportOf(root.resolve("a"));
+    assertTrue(reportA.contains("\"indexGeneration\": { \"count\": 1,"), reportA);
+    assertTrue(reportA.contains("\"copy\": { \"count\": 1,"), reportA);
+
+    final var reportB = reportOf(root.resolve("b"));
+    assertFalse(reportB.contains("\"indexGeneration\""), reportB);
+    assertFalse(reportB.contains("\"copy\""), reportB);
+
+    final var reportC = reportOf(root.resolve("c"));
+    assertTrue(reportC.contains("\"indexGeneration\": { \"count\": 1,"), reportC);
+    assertTrue(reportC.contains("\"copy\": { \"count\": 2,"), reportC);
+  }
+
+  private static String reportOf(
+    final Path module)
+    throws IOException
+  {
+    return Files.readString(
+      module.resolve("target")
+        .resolve("rivershark")
+        .resolve("installOBR-report.json")
+    );
+  }
+
   private static void showOutput(
     final MavenExecutionResult result)
     throws IOException
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.rivershark.tests.maven;
+
+import com.io7m.rivershark.product.RSArtifactDependencyOSGi;
+import com.io7m.rivershark.product.xml.RSProductParsers;
+import com.soebes.itf.jupiter.extension.MavenGoal;
+import com.soebes.itf.jupiter.extension.MavenJupiterExtension;
+import com.soebes.itf.jupiter.extension.MavenTest;
+import com.soebes.itf.jupiter.maven.MavenExecutionResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@MavenJupiterExtension
+public final class RSProductMojoIT
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(RSProductMojoIT.class);
+
+  @MavenGoal("package")
+  @MavenGoal("${project.groupId}:com.io7m.rivershark.maven_plugin:${project.version}:generateProduct")
+  @MavenTest
+  void testGenerate(
+    final MavenExecutionResult result)
+    throws Exception
+  {
+    showOutput(result);
+    assertTrue(result.isSuccessful());
+
+    final var target =
+      result.getMavenProjectResult()
+        .getTargetProjectDirectory()
+        .toPath()
+        .resolve("target")
+        .resolve("rivershark");
+
+    final var file = target.resolve("product.xml");
+    assertTrue(Files.exists(target.resolve("generateProduct-report.json")));
+
+    try (var input = Files.newInputStream(file)) {
+      final var product =
+        new RSProductParsers().parse(file.toUri(), input);
+
+      assertEquals("tests", product.id());
+      assertEquals(1, product.artifactDependencies().size());
+
+      final var dependency =
+        assertInstanceOf(
+          RSArtifactDependencyOSGi.class,
+          product.artifactDependencies().get(0)
+        );
+      assertEquals("com.io7m.tests", dependency.group());
+      assertEquals("tests", dependency.artifact());
+      assertTrue(dependency.hash().isPresent());
+    }
+  }
+
+  private static void showOutput(
+    final MavenExecutionResult result)
+    throws IOException
+  {
+    final var mavenLog = result.getMavenLog();
+    LOG.trace("stdout: {}", Files.readString(mavenLog.getStdout()));
+    LOG.trace("stderr: {}", Files.readString(mavenLog.getStderr()));
+  }
+}